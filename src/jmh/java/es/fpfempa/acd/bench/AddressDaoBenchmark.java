@@ -0,0 +1,80 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.AddressDao;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Customer;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de AddressDao (lecturas y ciclo crear/actualizar/eliminar)
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddressDaoBenchmark {
+
+    @Benchmark
+    public Address findById(DatabaseState state) {
+        Integer orderId = state.randomOrderId();
+        Integer addressId = state.randomAddressIdForOrder(orderId);
+        EntityManager em = state.newEntityManager();
+        try {
+            return new AddressDao(em).findById(addressId);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public List<Address> findByCustomerId(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new AddressDao(em).findByCustomerId(state.randomCustomerId());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public List<Address> findByCustomer(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new AddressDao(em).findByCustomer(em.getReference(Customer.class, state.randomCustomerId()));
+        } finally {
+            em.close();
+        }
+    }
+
+    // create + update + delete en una sola operación para que la tabla no crezca durante la medición
+    @Benchmark
+    public Address createUpdateDelete(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            AddressDao dao = new AddressDao(em);
+            Address address = new Address();
+            address.setCustomer(em.getReference(Customer.class, state.randomCustomerId()));
+            address.setLine1("Calle del Benchmark, 1");
+            address.setCity("Madrid");
+            address.setCountry("ES");
+            dao.create(address);
+            address.setLine1("Calle del Benchmark, 2");
+            dao.update(address);
+            dao.delete(address.getId());
+            return address;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.AddressDao;
+import es.fpfempa.acd.dao.CustomerDao;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Importación de rowsPerOp clientes con 2 direcciones cada uno: create() uno a uno frente a createAll() por lotes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkInsertBenchmark {
+
+    private static final AtomicLong EMAIL_SEQ = new AtomicLong();
+
+    @Param("1000")
+    public int rowsPerOp;
+
+    @Param({"25", "100"})
+    public int batchSize;
+
+    @Benchmark
+    public int createOneByOne(DatabaseState state) {
+        List<Customer> customers = newCustomers();
+        state.emProvider.runWithEntityManager(em -> {
+            CustomerDao customerDao = new CustomerDao(em);
+            AddressDao addressDao = new AddressDao(em);
+            for (Customer customer : customers) {
+                customerDao.create(customer);
+                for (Address address : newAddresses(customer)) {
+                    addressDao.create(address);
+                }
+            }
+        });
+        return customers.size();
+    }
+
+    @Benchmark
+    public int createAllBatched(DatabaseState state) {
+        List<Customer> customers = newCustomers();
+        state.emProvider.runWithEntityManager(em -> {
+            new CustomerDao(em).createAll(customers, batchSize);
+            List<Address> addresses = new ArrayList<>();
+            for (Customer customer : customers) {
+                addresses.addAll(newAddresses(customer));
+            }
+            new AddressDao(em).createAll(addresses, batchSize);
+        });
+        return customers.size();
+    }
+
+    private List<Customer> newCustomers() {
+        List<Customer> customers = new ArrayList<>(rowsPerOp);
+        Instant now = Instant.now();
+        for (int i = 0; i < rowsPerOp; i++) {
+            Customer customer = new Customer();
+            customer.setEmail("import-" + EMAIL_SEQ.incrementAndGet() + "@example.com");
+            customer.setFullName("Cliente Importado " + i);
+            customer.setCreatedAt(now);
+            customers.add(customer);
+        }
+        return customers;
+    }
+
+    private static List<Address> newAddresses(Customer customer) {
+        List<Address> addresses = new ArrayList<>(2);
+        for (int i = 0; i < 2; i++) {
+            Address address = new Address();
+            address.setCustomer(customer);
+            address.setLine1("Calle Importada " + i);
+            address.setCity("Madrid");
+            address.setCountry("ES");
+            addresses.add(address);
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,83 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.catalog.CatalogIndex;
+import es.fpfempa.acd.catalog.CatalogProduct;
+import es.fpfempa.acd.dao.ProductDao;
+import es.fpfempa.acd.entities.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Navegación por categorías y búsqueda por SKU: con CatalogIndex (memoria) y con ProductDao (consulta a la BD).
+ * El juego de datos tiene customers / 10 productos en 20 categorías; -p customers=10000 para 1000 productos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private CatalogIndex index;
+    private int products;
+
+    @Setup(Level.Trial)
+    public void loadIndex(DatabaseState state) {
+        index = new CatalogIndex(state.emProvider, Duration.ofHours(1));
+        index.reload();
+        products = Math.max(50, state.customers / 10);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeIndex() {
+        index.close();
+    }
+
+    private static int randomCategoryId() {
+        return 1 + ThreadLocalRandom.current().nextInt(20);
+    }
+
+    private String randomSku() {
+        return String.format("SKU-%06d", ThreadLocalRandom.current().nextInt(products));
+    }
+
+    @Benchmark
+    public List<CatalogProduct> browseIndex() {
+        return index.browse(randomCategoryId(), true, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Product> browseDao(DatabaseState state) {
+        return state.emProvider.withEntityManager(em ->
+                new ProductDao(em).findActiveByCategory(randomCategoryId(), 0, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public Optional<CatalogProduct> skuIndex() {
+        return index.findBySku(randomSku());
+    }
+
+    @Benchmark
+    public Optional<Product> skuDao(DatabaseState state) {
+        return state.emProvider.withEntityManager(em -> new ProductDao(em).findOptionalBySku(randomSku()));
+    }
+}
@@ -0,0 +1,108 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.importer.BulkImporter;
+import es.fpfempa.acd.importer.ImportResult;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importación con BulkImporter de customers clientes, 2 direcciones y 3 pedidos por cliente, desde CSV a una base vacía.
+ * Cada iteración es una importación completa (SingleShotTime) en una base nueva; parallelism son los bloques a la vez.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvImportBenchmark {
+
+    private static final String[][] CITIES = {{"Madrid", "España"}, {"Lyon", "France"}, {"Porto", "PRT"}, {"Berlin", "DE"}};
+
+    @Param("20000")
+    public int customers;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param("262144")
+    public int chunkBytes;
+
+    private Path directory;
+    private BenchmarkDatabase db;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        directory = Files.createTempDirectory("acd-import");
+        try (BufferedWriter customersCsv = Files.newBufferedWriter(directory.resolve("customers.csv"));
+             BufferedWriter addressesCsv = Files.newBufferedWriter(directory.resolve("addresses.csv"));
+             BufferedWriter ordersCsv = Files.newBufferedWriter(directory.resolve("orders.csv"))) {
+            customersCsv.write("email,full_name,created_at\n");
+            addressesCsv.write("customer_email,line1,city,country,is_default\n");
+            ordersCsv.write("customer_email,order_date,status,total_amount,shipping_line1,shipping_city,shipping_country\n");
+            for (int c = 0; c < customers; c++) {
+                String email = "importado" + c + "@example.com";
+                customersCsv.write(email + ",\"Cliente, " + c + "\",2024-01-01T10:00:00Z\n");
+                for (int a = 0; a < 2; a++) {
+                    String[] city = CITIES[(c + a) % CITIES.length];
+                    addressesCsv.write(email + ",\"Calle " + (c % 300) + ", " + (a + 1) + "\"," + city[0] + "," + city[1] + "," + (a == 0 ? 1 : 0) + "\n");
+                }
+                for (int o = 0; o < 3; o++) {
+                    String[] city = CITIES[(c + o % 2) % CITIES.length];
+                    ordersCsv.write(email + ",2024-03-" + String.format("%02d", 1 + o) + "T12:00:00Z,PAID," + (10 + o) + ".50,"
+                            + "\"Calle " + (c % 300) + ", " + (o % 2 + 1) + "\"," + city[0] + "," + city[1] + "\n");
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyDatabase() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(0, 0, 0, 0));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeDatabase() {
+        db.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        for (String name : new String[]{"customers.csv", "addresses.csv", "orders.csv"}) {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long importAll() {
+        BulkImporter importer = new BulkImporter(new EntityManagerProvider(db.getEntityManagerFactory()),
+                parallelism, chunkBytes, 50);
+        long rows = 0;
+        for (ImportResult result : new ImportResult[]{
+                importer.importCustomers(directory.resolve("customers.csv")),
+                importer.importAddresses(directory.resolve("addresses.csv")),
+                importer.importOrders(directory.resolve("orders.csv"))}) {
+            rows += result.inserted();
+        }
+        return rows;
+    }
+}
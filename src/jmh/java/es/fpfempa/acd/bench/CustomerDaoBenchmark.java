@@ -0,0 +1,130 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.CustomerDao;
+import es.fpfempa.acd.entities.Customer;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks de CustomerDao. findAll recorre la tabla entera, así que su coste crece con -p customers
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerDaoBenchmark {
+
+    @Benchmark
+    public Customer findById(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new CustomerDao(em).findById(state.randomCustomerId());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Customer findByEmail(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new CustomerDao(em).findByEmail(state.randomCustomerEmail());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Customer findByIdWithAddresses(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new CustomerDao(em).findByIdWithAddresses(state.randomCustomerId());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public List<Customer> findAll(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new CustomerDao(em).findAll();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public long streamAll(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try (Stream<Customer> customers = new CustomerDao(em).streamAll()) {
+            return customers.count();
+        } finally {
+            em.close();
+        }
+    }
+
+    // recorrido completo por páginas de 500 usando keyset
+    @Benchmark
+    public long findPageAfterFullScan(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            CustomerDao dao = new CustomerDao(em);
+            long total = 0;
+            Integer lastId = null;
+            List<Customer> page;
+            while (!(page = dao.findPageAfter(lastId, 500)).isEmpty()) {
+                total += page.size();
+                lastId = page.get(page.size() - 1).getId();
+                em.clear();
+            }
+            return total;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Customer update(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            CustomerDao dao = new CustomerDao(em);
+            Customer customer = dao.findById(state.randomCustomerId());
+            customer.setFullName(customer.getFullName());
+            dao.update(customer);
+            return customer;
+        } finally {
+            em.close();
+        }
+    }
+
+    // create + delete en una sola operación para que la tabla no crezca durante la medición
+    @Benchmark
+    public Customer createDelete(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            CustomerDao dao = new CustomerDao(em);
+            Customer customer = new Customer();
+            customer.setEmail("bench-" + System.nanoTime() + "@example.com");
+            customer.setFullName("Cliente Benchmark");
+            customer.setCreatedAt(Instant.now());
+            dao.create(customer);
+            dao.delete(customer.getId());
+            return customer;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estado compartido por todos los hilos de un benchmark: la base de datos sembrada.
+ * El tamaño se cambia desde la línea de comandos, p. ej. -p customers=10000 -p ordersPerCustomer=20
+ */
+@State(Scope.Benchmark)
+public class DatabaseState {
+
+    @Param("1000")
+    public int customers;
+
+    @Param("3")
+    public int addressesPerCustomer;
+
+    @Param("5")
+    public int ordersPerCustomer;
+
+    @Param("3")
+    public int itemsPerOrder;
+
+    public BenchmarkDatabase db;
+
+    public EntityManagerProvider emProvider;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(customers, addressesPerCustomer, ordersPerCustomer, itemsPerOrder));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    public EntityManager newEntityManager() {
+        return db.getEntityManagerFactory().createEntityManager();
+    }
+
+    public Integer randomCustomerId() {
+        return db.customerId(ThreadLocalRandom.current().nextInt(db.customerCount()));
+    }
+
+    public String randomCustomerEmail() {
+        return db.customerEmail(ThreadLocalRandom.current().nextInt(db.customerCount()));
+    }
+
+    public Integer randomOrderId() {
+        return db.orderId(ThreadLocalRandom.current().nextInt(db.orderCount()));
+    }
+
+    public List<Integer> randomOrderIds(int count) {
+        List<Integer> orderIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orderIds.add(randomOrderId());
+        }
+        return orderIds;
+    }
+
+    /**
+     * Número de página aleatorio dentro de la tabla de pedidos
+     */
+    public int randomPage(int pageSize) {
+        return ThreadLocalRandom.current().nextInt(Math.max(1, db.orderCount() / pageSize));
+    }
+
+    /**
+     * Devuelve una dirección del mismo cliente que el pedido, o null si no tiene direcciones
+     */
+    public Integer randomAddressIdForOrder(Integer orderId) {
+        List<Integer> addressIds = db.addressIdsOf(db.customerIdOfOrder(orderId));
+        if (addressIds.isEmpty()) {
+            return null;
+        }
+        return addressIds.get(ThreadLocalRandom.current().nextInt(addressIds.size()));
+    }
+}
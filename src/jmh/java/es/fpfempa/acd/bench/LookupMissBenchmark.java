@@ -0,0 +1,109 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.CustomerDao;
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.entities.Order;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.NoResultException;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsquedas que no encuentran nada (emails que no existen, como en el login).
+ * *SingleResult es la forma anterior (getSingleResult + capturar la excepción) y *Optional la actual.
+ * Cada operación abre y cierra su EntityManager, como hacen los servicios, así que la diferencia es la excepción
+ * (creación y traza de pila) sobre el coste fijo de la consulta.
+ * Para ver la memoria reservada por operación: -prof gc (gc.alloc.rate.norm)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupMissBenchmark {
+
+    // 1000 emails distintos que no existen, para que la caché de consultas tenga sitio para todos
+    private static String missingEmail() {
+        return "nadie" + ThreadLocalRandom.current().nextInt(1000) + "@example.com";
+    }
+
+    private static Integer missingOrderId() {
+        return -1 - ThreadLocalRandom.current().nextInt(1000);
+    }
+
+    @Benchmark
+    public Customer emailMissSingleResult(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            TypedQuery<Customer> query = em.createNamedQuery("Customer.findByEmail", Customer.class);
+            query.setParameter("email", missingEmail());
+            query.setHint(HibernateHints.HINT_CACHEABLE, true);
+            try {
+                return query.getSingleResult();
+            } catch (NoResultException e) {
+                return null;
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Optional<Customer> emailMissOptional(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new CustomerDao(em).findOptionalByEmail(missingEmail());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Order orderMissSingleResult(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            TypedQuery<Order> query = em.createNamedQuery("Order.findByIdConDetalles", Order.class);
+            query.setParameter("orderId", missingOrderId());
+            try {
+                return query.getSingleResult();
+            } catch (NoResultException e) {
+                return null;
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Optional<Order> orderMissOptional(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new OrderDao(em).findOptionalByIdConDetalles(missingOrderId());
+        } finally {
+            em.close();
+        }
+    }
+
+    // el caso de acierto, para comprobar que no empeora
+    @Benchmark
+    public Optional<Customer> emailHitOptional(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new CustomerDao(em).findOptionalByEmail(state.randomCustomerEmail());
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.entities.OrderItem;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga del pedido completo: navegación perezosa (N+1) frente a OrderDao.findAggregateById.
+ * Que el agregado se carga siempre con 2 consultas lo comprueba OrderDaoStatementCountTest en mvn test.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderAggregateBenchmark {
+
+    @Benchmark
+    public int lazyNavigation(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return touchAggregate(new OrderDao(em).findById(state.randomOrderId()));
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public int findAggregateById(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return touchAggregate(new OrderDao(em).findAggregateById(state.randomOrderId()));
+        } finally {
+            em.close();
+        }
+    }
+
+    // recorre lo mismo que pintaría la pantalla de un pedido completo
+    private static int touchAggregate(Order order) {
+        int touched = order.getCustomer().getFullName().length();
+        if (order.getEmployee() != null) {
+            touched += order.getEmployee().getName().length();
+        }
+        if (order.getShippingAddress() != null) {
+            touched += order.getShippingAddress().getCity().length();
+        }
+        if (order.getPayment() != null) {
+            touched += order.getPayment().getMethod().length();
+        }
+        if (order.getShipment() != null) {
+            touched += order.getShipment().getTrackingNo().length();
+        }
+        for (OrderItem item : order.getOrderItems()) {
+            touched += item.getProduct().getSku().length();
+            touched += item.getProduct().getCategories().size();
+        }
+        return touched;
+    }
+}
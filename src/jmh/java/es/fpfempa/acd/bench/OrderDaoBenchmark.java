@@ -0,0 +1,119 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.OrderLookupResult;
+import es.fpfempa.acd.dao.OrderSummary;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Order;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de OrderDao. Cada invocación usa un EntityManager nuevo para no medir la caché de primer nivel.
+ * Throughput da operaciones/s y SampleTime los percentiles de latencia (p50, p90, p99...).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderDaoBenchmark {
+
+    @Benchmark
+    public Order findById(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new OrderDao(em).findById(state.randomOrderId());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Order findByIdConDetalles(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new OrderDao(em).findByIdConDetalles(state.randomOrderId());
+        } finally {
+            em.close();
+        }
+    }
+
+    // una página de 200 pedidos: 200 consultas sueltas frente a una búsqueda por lotes
+    @Benchmark
+    public int findByIdConDetallesPageLoop(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            OrderDao dao = new OrderDao(em);
+            int found = 0;
+            for (Integer orderId : state.randomOrderIds(200)) {
+                if (dao.findByIdConDetalles(orderId) != null) {
+                    found++;
+                }
+            }
+            return found;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public OrderLookupResult findByIdsConDetallesPage(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new OrderDao(em).findByIdsConDetalles(state.randomOrderIds(200));
+        } finally {
+            em.close();
+        }
+    }
+
+    // listado de 50 pedidos: entidades con cliente y dirección frente a la proyección de resumen
+    @Benchmark
+    public List<Order> entityPage(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return em.createQuery("SELECT o FROM Order o JOIN FETCH o.customer LEFT JOIN FETCH o.shippingAddress " +
+                            "ORDER BY o.orderDate DESC, o.id DESC", Order.class)
+                    .setFirstResult(state.randomPage(50) * 50)
+                    .setMaxResults(50)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public List<OrderSummary> findSummaries(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new OrderDao(em).findSummaries(state.randomPage(50), 50);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Order update(DatabaseState state) {
+        Integer orderId = state.randomOrderId();
+        Integer addressId = state.randomAddressIdForOrder(orderId);
+        EntityManager em = state.newEntityManager();
+        try {
+            OrderDao dao = new OrderDao(em);
+            Order order = dao.findById(orderId);
+            order.setShippingAddress(addressId == null ? null : em.getReference(Address.class, addressId));
+            dao.update(order);
+            return order;
+        } finally {
+            em.close();
+        }
+    }
+}
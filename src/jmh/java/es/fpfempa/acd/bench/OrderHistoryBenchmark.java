@@ -0,0 +1,96 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.OrderHistoryEntry;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Historial de un cliente con muchos pedidos: la página "page" por claves (OrderDao.findHistoryPageAfter)
+ * frente a la misma página con OFFSET. Antes de medir se le añaden historyDepth pedidos a un cliente
+ * con un INSERT ... SELECT de H2 (crearlos como entidades tardaría minutos).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderHistoryBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param("200000")
+    public int historyDepth;
+
+    @Param({"0", "5000"})
+    public int page;
+
+    private Integer customerId;
+    private OrderHistoryEntry pageStart;
+
+    @Setup(Level.Trial)
+    public void addHistory(DatabaseState state) {
+        customerId = state.randomCustomerId();
+        state.emProvider.runWithEntityManager(em -> {
+            em.getTransaction().begin();
+            em.createNativeQuery("INSERT INTO acd_shop_db.orders (order_id, version, customer_id, order_date, status, total_amount) " +
+                            "SELECT (SELECT MAX(order_id) FROM acd_shop_db.orders) + x, 0, ?1, " +
+                            "DATEADD(MINUTE, -x, CURRENT_TIMESTAMP), 'DELIVERED', 10.00 FROM SYSTEM_RANGE(1, ?2)")
+                    .setParameter(1, customerId)
+                    .setParameter(2, historyDepth)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        });
+        // última entrada de la página anterior a la que se mide, recorriendo el historial como lo haría un cliente
+        pageStart = state.emProvider.withEntityManager(em -> {
+            OrderDao dao = new OrderDao(em);
+            OrderHistoryEntry last = null;
+            for (int i = 0; i < page; i++) {
+                List<OrderHistoryEntry> entries = dao.findHistoryPageAfter(customerId, last, PAGE_SIZE);
+                last = entries.get(entries.size() - 1);
+            }
+            return last;
+        });
+    }
+
+    @Benchmark
+    public List<OrderHistoryEntry> keyset(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return new OrderDao(em).findHistoryPageAfter(customerId, pageStart, PAGE_SIZE);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public List<OrderHistoryEntry> offset(DatabaseState state) {
+        EntityManager em = state.newEntityManager();
+        try {
+            return em.createQuery("SELECT new es.fpfempa.acd.dao.OrderHistoryEntry(o.id, o.orderDate, o.status, o.totalAmount, a.city) " +
+                            "FROM Order o LEFT JOIN o.shippingAddress a WHERE o.customer.id = :customerId " +
+                            "ORDER BY o.customer.id, o.orderDate DESC, o.id DESC", OrderHistoryEntry.class)
+                    .setParameter("customerId", customerId)
+                    .setFirstResult(page * PAGE_SIZE)
+                    .setMaxResults(PAGE_SIZE)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+}
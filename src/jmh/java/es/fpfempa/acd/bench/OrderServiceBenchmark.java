@@ -0,0 +1,127 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.UpdateConflictException;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.services.AsyncOrderService;
+import es.fpfempa.acd.services.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks de OrderService, con el mismo recorrido que hace Main al cambiar la dirección de un pedido.
+ * El servicio abre un EntityManager por operación, así que se puede medir también con varios hilos (-t 8)
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderServiceBenchmark {
+
+    private OrderService orderService;
+
+    private AsyncOrderService asyncOrderService;
+
+    @Setup
+    public void setUp(DatabaseState state) {
+        orderService = new OrderService(state.emProvider);
+        asyncOrderService = new AsyncOrderService(orderService, state.emProvider.getMaximumPoolSize());
+    }
+
+    @TearDown
+    public void tearDown() {
+        asyncOrderService.close();
+    }
+
+    @Benchmark
+    public Order getOrderDetails(DatabaseState state) {
+        return orderService.getOrderDetails(state.randomOrderId());
+    }
+
+    @Benchmark
+    public List<Address> getCustomerAddresses(DatabaseState state) {
+        Order order = orderService.getOrderDetails(state.randomOrderId());
+        return orderService.getCustomerAddresses(order.getCustomer());
+    }
+
+    // flujo completo de Main: cargar el pedido, elegir una dirección existente del cliente y asignarla
+    @Benchmark
+    public Order changeShippingAddress(DatabaseState state) {
+        Order order = orderService.getOrderDetails(state.randomOrderId());
+        List<Address> addresses = orderService.getCustomerAddresses(order.getCustomer());
+        Address newAddress = addresses.isEmpty() ? null : addresses.get(ThreadLocalRandom.current().nextInt(addresses.size()));
+        orderService.changeShippingAddress(order, newAddress);
+        return order;
+    }
+
+    // el mismo cambio con un único UPDATE que valida la propiedad de pedido y dirección
+    @Benchmark
+    public boolean changeShippingAddressDirect(DatabaseState state) {
+        Integer orderId = state.randomOrderId();
+        Integer addressId = state.randomAddressIdForOrder(orderId);
+        return orderService.changeShippingAddress(orderId, state.db.customerIdOfOrder(orderId), addressId);
+    }
+
+    // mismo flujo con 8 hilos a la vez compartiendo el pool de conexiones
+    @Benchmark
+    @Threads(8)
+    public Order changeShippingAddressConcurrent(DatabaseState state) {
+        return changeShippingAddress(state);
+    }
+
+    // 8 hilos cambiando siempre los mismos 10 pedidos: fuerza conflictos de versión. Cuando otro hilo ya cambió
+    // la dirección el servicio no la pisa y lanza el conflicto, que aquí cuenta como una operación terminada
+    @Benchmark
+    @Threads(8)
+    public Order changeShippingAddressHotOrders(DatabaseState state) {
+        Order order = orderService.getOrderDetails(state.db.orderId(ThreadLocalRandom.current().nextInt(10)));
+        List<Address> addresses = orderService.getCustomerAddresses(order.getCustomer());
+        Address newAddress = addresses.isEmpty() ? null : addresses.get(ThreadLocalRandom.current().nextInt(addresses.size()));
+        try {
+            orderService.changeShippingAddress(order, newAddress);
+        } catch (UpdateConflictException e) {
+            return null;
+        }
+        return order;
+    }
+
+    // 200 cambios de dirección lanzados a la vez sobre hilos virtuales; la operación termina cuando acaban todos
+    // (si dos tocan el mismo pedido, el segundo termina con el conflicto)
+    @Benchmark
+    public int changeShippingAddressAsyncBurst(DatabaseState state) {
+        List<CompletableFuture<Void>> changes = new ArrayList<>(200);
+        for (int i = 0; i < 200; i++) {
+            changes.add(asyncOrderService.getOrderDetails(state.randomOrderId())
+                    .thenCompose(order -> asyncOrderService.getCustomerAddresses(order.getCustomer())
+                            .thenCompose(addresses -> asyncOrderService.changeShippingAddress(order,
+                                    addresses.isEmpty() ? null : addresses.get(ThreadLocalRandom.current().nextInt(addresses.size())))))
+                    .exceptionally(e -> {
+                        if (e.getCause() instanceof UpdateConflictException) {
+                            return null;
+                        }
+                        throw new CompletionException(e.getCause());
+                    }));
+        }
+        CompletableFuture.allOf(changes.toArray(CompletableFuture[]::new)).join();
+        return changes.size();
+    }
+}
@@ -0,0 +1,117 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.entities.Customer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de preparar una consulta en cada llamada: createQuery con el JPQL (como hacían antes los DAO)
+ * frente a createNamedQuery, con la caché de planes de Hibernate activada y desactivada.
+ * Con planCache=false se analiza el JPQL y se traduce a SQL en cada llamada, también con las @NamedQuery
+ * (Hibernate 6 las vuelve a crear a partir de su texto), así que el ahorro lo da la caché de planes.
+ * Los create* solo preparan la consulta; los execute* además la ejecutan (sin caché de consultas).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryPreparationBenchmark {
+
+    private static final String FIND_BY_EMAIL = "SELECT c FROM Customer c WHERE c.email = :email";
+    private static final String FIND_BY_ID_WITH_ADDRESSES = "SELECT c FROM Customer c LEFT JOIN FETCH c.addresses WHERE c.id = :customerId";
+
+    @Param({"true", "false"})
+    public boolean planCache;
+
+    @Param("1000")
+    public int customers;
+
+    private BenchmarkDatabase db;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(customers, 2, 1, 1),
+                // con plan_cache_max_size > 0 (persistence.xml) la caché se activa aunque plan_cache_enabled sea false
+                Map.of("hibernate.query.plan_cache_enabled", String.valueOf(planCache),
+                        "hibernate.query.plan_cache_max_size", planCache ? "512" : "0"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    /**
+     * Un EntityManager por hilo que se limpia en cada llamada, para no medir su apertura
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        EntityManager em;
+
+        @Setup(Level.Trial)
+        public void open(QueryPreparationBenchmark benchmark) {
+            em = benchmark.db.getEntityManagerFactory().createEntityManager();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public TypedQuery<Customer> createAdHocQuery(Session session) {
+        return session.em.createQuery(FIND_BY_EMAIL, Customer.class)
+                .setParameter("email", randomEmail());
+    }
+
+    @Benchmark
+    public TypedQuery<Customer> createNamedQuery(Session session) {
+        return session.em.createNamedQuery("Customer.findByEmail", Customer.class)
+                .setParameter("email", randomEmail());
+    }
+
+    @Benchmark
+    public List<Customer> executeAdHocFetchJoin(Session session) {
+        session.em.clear();
+        return session.em.createQuery(FIND_BY_ID_WITH_ADDRESSES, Customer.class)
+                .setParameter("customerId", randomCustomerId())
+                .getResultList();
+    }
+
+    @Benchmark
+    public List<Customer> executeNamedFetchJoin(Session session) {
+        session.em.clear();
+        return session.em.createNamedQuery("Customer.findByIdWithAddresses", Customer.class)
+                .setParameter("customerId", randomCustomerId())
+                .getResultList();
+    }
+
+    private String randomEmail() {
+        return db.customerEmail(ThreadLocalRandom.current().nextInt(db.customerCount()));
+    }
+
+    private Integer randomCustomerId() {
+        return db.customerId(ThreadLocalRandom.current().nextInt(db.customerCount()));
+    }
+}
@@ -0,0 +1,24 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.persistence.SchemaAdvisor;
+
+import java.util.List;
+
+/**
+ * Ejecuta el asesor de esquema contra una base H2 sembrada, sin necesidad de MySQL (pensado para CI):
+ * java -cp target/benchmarks.jar es.fpfempa.acd.bench.SchemaAdvisorCheck [clientes]
+ * Termina con código 1 si alguna consulta de los DAO recorre una tabla entera sin esperarlo.
+ */
+public class SchemaAdvisorCheck {
+
+    public static void main(String[] args) {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        boolean ok;
+        try (BenchmarkDatabase db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(customers, 3, 5, 3))) {
+            List<SchemaAdvisor.QueryPlan> plans = new SchemaAdvisor(db.getEntityManagerFactory()).check();
+            plans.forEach(plan -> System.out.println(plan.describe()));
+            ok = plans.stream().allMatch(SchemaAdvisor.QueryPlan::ok);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
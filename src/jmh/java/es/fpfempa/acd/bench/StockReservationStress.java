@@ -0,0 +1,115 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.dao.OrderLine;
+import es.fpfempa.acd.dao.OrderRequest;
+import es.fpfempa.acd.dao.OutOfStockException;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import es.fpfempa.acd.services.GroupCommitOrderPlacer;
+import es.fpfempa.acd.services.OrderService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de carga de OrderService.placeOrder contra una base H2: muchos hilos compran a la vez unos pocos
+ * productos con poco stock (los "calientes") hasta agotarlos, y se mide cuántos pedidos por segundo salen.
+ * java -cp target/benchmarks.jar es.fpfempa.acd.bench.StockReservationStress [hilos] [productos] [stock] [single|group]
+ * Con "group" los pedidos pasan por GroupCommitOrderPlacer y llevan a veces pago, envío y descuentos.
+ * Que no se vende ninguna unidad de más y que los totales cuadran lo comprueba StockReservationTest con mvn test.
+ * Termina con código 1 si algún pedido falló por algo que no sea falta de stock.
+ */
+public class StockReservationStress {
+
+    // un hilo para cuando ha visto tantos pedidos seguidos sin stock
+    private static final int STOP_AFTER_OUT_OF_STOCK = 20;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int hotProducts = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int initialStock = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        boolean groupCommit = args.length > 3 && args[3].equals("group");
+        boolean ok;
+        try (BenchmarkDatabase db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(200, 1, 1, 1))) {
+            EntityManagerProvider emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+            List<Integer> productIds = emProvider.withEntityManager(em ->
+                    em.createQuery("SELECT p.id FROM Product p ORDER BY p.id", Integer.class).setMaxResults(hotProducts).getResultList());
+            emProvider.runWithEntityManager(em -> {
+                em.getTransaction().begin();
+                em.createQuery("UPDATE Product p SET p.stock = :stock, p.active = true WHERE p.id IN :ids")
+                        .setParameter("stock", initialStock)
+                        .setParameter("ids", productIds)
+                        .executeUpdate();
+                em.getTransaction().commit();
+            });
+
+            OrderService orderService = new OrderService(emProvider);
+            GroupCommitOrderPlacer placer = groupCommit ? new GroupCommitOrderPlacer(emProvider) : null;
+            AtomicLong placed = new AtomicLong();
+            AtomicLong outOfStock = new AtomicLong();
+            AtomicLong failed = new AtomicLong();
+
+            long start = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int outOfStockInARow = 0;
+                    while (outOfStockInARow < STOP_AFTER_OUT_OF_STOCK) {
+                        // varias líneas en cualquier orden, a veces repitiendo producto
+                        List<OrderLine> lines = new ArrayList<>();
+                        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                            BigDecimal discount = groupCommit && random.nextBoolean() ? new BigDecimal("0.50") : BigDecimal.ZERO;
+                            lines.add(new OrderLine(productIds.get(random.nextInt(productIds.size())), 1 + random.nextInt(3), discount));
+                        }
+                        Integer customerId = db.customerId(random.nextInt(db.customerCount()));
+                        try {
+                            Order order;
+                            if (groupCommit) {
+                                int stage = random.nextInt(3);
+                                order = placer.placeOrder(new OrderRequest(customerId, null, lines,
+                                        stage > 0 ? new OrderRequest.PaymentInfo("CARD", "COMPLETED") : null,
+                                        stage > 1 ? new OrderRequest.ShipmentInfo("SEUR", "TRK" + random.nextInt(1_000_000)) : null));
+                            } else {
+                                order = orderService.placeOrder(customerId, null, lines);
+                            }
+                            placed.incrementAndGet();
+                            outOfStockInARow = 0;
+                            if (order.getId() == null) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (OutOfStockException e) {
+                            outOfStock.incrementAndGet();
+                            outOfStockInARow++;
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                            System.out.println("Fallo: " + e);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            executor.shutdown();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (placer != null) {
+                placer.close();
+                System.out.printf("group commit: %d lotes, %.1f pedidos por lote%n",
+                        placer.getBatches(), placer.getOrders() / (double) Math.max(1, placer.getBatches()));
+            }
+
+            ok = failed.get() == 0;
+            System.out.printf("%d hilos, %d productos con %d unidades: %d pedidos en %.1f s (%.0f pedidos/s), %d sin stock, %d fallos%n",
+                    threads, productIds.size(), initialStock, placed.get(), seconds, placed.get() / seconds, outOfStock.get(), failed.get());
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
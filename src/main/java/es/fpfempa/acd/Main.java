@@ -1,19 +1,26 @@
 package es.fpfempa.acd;
 
+import es.fpfempa.acd.audit.ChangeEventLog;
+import es.fpfempa.acd.audit.ChangeEventSink;
+import es.fpfempa.acd.audit.DatabaseChangeEventSink;
+import es.fpfempa.acd.audit.SegmentFileChangeEventSink;
 import es.fpfempa.acd.entities.Address;
 import es.fpfempa.acd.entities.Customer;
 import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.metrics.MetricsReporter;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import es.fpfempa.acd.persistence.SchemaAdvisor;
 import es.fpfempa.acd.services.OrderService;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityManagerFactory;
-import jakarta.persistence.Persistence;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Scanner;
 
 public class Main {
-    private static EntityManagerFactory emf;
-    private static EntityManager em;
+    private static EntityManagerProvider emProvider;
+    private static MetricsReporter metricsReporter;
+    private static ChangeEventLog changeEventLog;
     private static OrderService orderService;
     private static Scanner scanner;
 
@@ -43,19 +50,35 @@ public class Main {
     }
 
     // método para inicializar todos los recursos que se van a usar
-    // el entity Manager, el servicio de order y el scanner
+    // el proveedor de entity managers (con su pool de conexiones), el servicio de order y el scanner
     private static void inicializarRecursos() {
-        emf = Persistence.createEntityManagerFactory("acdPU");
-        em = emf.createEntityManager();
-        orderService = new OrderService(em);
+        emProvider = EntityManagerProvider.create("acdPU");
+        // registro de cambios de pedidos y direcciones: en la tabla change_events, o en ficheros con -Dacd.audit.dir
+        String auditDir = System.getProperty("acd.audit.dir");
+        ChangeEventSink sink = auditDir != null
+                ? new SegmentFileChangeEventSink(Path.of(auditDir))
+                : new DatabaseChangeEventSink(emProvider);
+        changeEventLog = ChangeEventLog.start(sink);
+        orderService = new OrderService(emProvider);
+        // métricas por JMX y resumen en el log cada acd.metrics.logIntervalSeconds (60 s por defecto)
+        metricsReporter = MetricsReporter.start(emProvider.getEntityManagerFactory(),
+                Duration.ofSeconds(Long.getLong("acd.metrics.logIntervalSeconds", 60)));
+        // con -Dacd.schemaCheck=true se comprueba al arrancar que las consultas de los DAO usan índices
+        if (Boolean.getBoolean("acd.schemaCheck")) {
+            new SchemaAdvisor(emProvider.getEntityManagerFactory()).check().stream()
+                    .filter(plan -> !plan.ok())
+                    .forEach(plan -> System.out.println("AVISO: " + plan.describe()));
+        }
         scanner = new Scanner(System.in);
     }
 
     // método para cerrarlos
     private static void cerrarRecursos() {
         if (scanner != null) scanner.close();
-        if (em != null) em.close();
-        if (emf != null) emf.close();
+        if (metricsReporter != null) metricsReporter.close();
+        // antes que emProvider: guarda los eventos pendientes, que pueden necesitar la BD
+        if (changeEventLog != null) changeEventLog.close();
+        if (emProvider != null) emProvider.close();
     }
 
     private static void mostrarMenu() {
@@ -0,0 +1,45 @@
+package es.fpfempa.acd.audit;
+
+import es.fpfempa.acd.entities.Address;
+
+import java.time.Instant;
+
+/**
+ * Un cambio ya confirmado en la BD, para el registro de auditoría
+ * @param entityType Order, Address...
+ * @param entityId ID de la fila cambiada
+ * @param action CREATE, UPDATE, DELETE, SHIPPING_ADDRESS...
+ * @param detail Texto libre con lo que cambió (se corta a MAX_DETAIL_LENGTH caracteres)
+ */
+public record ChangeEvent(Instant occurredAt, String entityType, Integer entityId, String action, String detail) {
+
+    public static final int MAX_DETAIL_LENGTH = 500;
+
+    public ChangeEvent {
+        if (detail != null && detail.length() > MAX_DETAIL_LENGTH) {
+            detail = detail.substring(0, MAX_DETAIL_LENGTH);
+        }
+    }
+
+    public static ChangeEvent of(String entityType, Integer entityId, String action, String detail) {
+        return new ChangeEvent(Instant.now(), entityType, entityId, action, detail);
+    }
+
+    /**
+     * Alta, cambio o borrado de una dirección, con sus datos tal como quedaron (o como estaban, si se borró)
+     */
+    public static ChangeEvent ofAddress(String action, Address address) {
+        return of("Address", address.getId(), action, "customer=" + address.getCustomer().getId()
+                + " " + address.getLine1() + ", " + address.getCity() + ", " + address.getCountry());
+    }
+
+    /**
+     * Nueva dirección de envío de un pedido
+     * @param previousAddressId Dirección anterior, o null si no tenía
+     * @param addressId Dirección nueva, o null si se quitó
+     */
+    public static ChangeEvent ofShippingAddress(Integer orderId, Integer previousAddressId, Integer addressId) {
+        return of("Order", orderId, "SHIPPING_ADDRESS",
+                (previousAddressId != null ? previousAddressId + " -> " : "-> ") + addressId);
+    }
+}
@@ -0,0 +1,314 @@
+package es.fpfempa.acd.audit;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de cambios de solo inserción con escritura diferida: quien cambia algo deja el evento en una cola
+ * circular sin bloqueos (EventRing) y vuelve enseguida; un hilo escritor lo guarda después por lotes
+ * en un ChangeEventSink (tabla change_events o ficheros de segmentos). Así la auditoría no alarga cada operación
+ * con otra escritura y, con muchos cambios a la vez, un solo INSERT por lotes o un solo fsync cubre cientos de eventos.
+ * Ningún evento se descarta: si la cola se llena (el destino va más lento o no responde) quien añade espera
+ * a que haya sitio, avisando en el log si pasa de blockedWarning, y si falla la escritura de un lote se reintenta
+ * hasta que funcione. close() no deja añadir más y guarda todo lo pendiente antes de volver; si el destino sigue
+ * fallando pasado su tiempo límite, deja de reintentar y escribe en el log los eventos que no se han guardado.
+ * Los DAO registran con ChangeEventLog.record(), que no hace nada hasta que se arranca un registro con start().
+ */
+public class ChangeEventLog implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(ChangeEventLog.class.getName());
+
+    public static final int DEFAULT_CAPACITY = 65_536;
+    public static final int DEFAULT_MAX_BATCH = 500;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(200);
+    public static final Duration DEFAULT_BLOCKED_WARNING = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final long RETRY_DELAY_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private static volatile ChangeEventLog current;
+
+    private final EventRing ring;
+    private final ChangeEventSink sink;
+    private final int maxBatch;
+    private final long flushIntervalNanos;
+    private final long blockedWarningNanos;
+    private final Thread writer;
+    private final AtomicLong blockedAppends = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong flushTarget = new AtomicLong();
+    // append() en curso: close() espera a que terminen antes de vaciar la cola por última vez
+    private final AtomicInteger appenders = new AtomicInteger();
+    // posiciones de la cola ya guardadas; solo la escribe el hilo escritor
+    private volatile long completed;
+    // no se admiten más eventos
+    private volatile boolean closed;
+    // el escritor guarda lo que quede y termina
+    private volatile boolean closing;
+    // close() ya no espera más: el escritor deja de reintentar
+    private volatile boolean abandoned;
+
+    /**
+     * @param capacity Eventos que caben en la cola (se redondea a potencia de 2)
+     * @param maxBatch Eventos como mucho en cada escritura
+     * @param flushInterval Cuánto se deja acumular eventos antes de escribir un lote incompleto
+     * @param blockedWarning Cuánto puede esperar append() con la cola llena antes de avisar en el log (sigue esperando)
+     */
+    public ChangeEventLog(ChangeEventSink sink, int capacity, int maxBatch, Duration flushInterval, Duration blockedWarning) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+        }
+        this.ring = new EventRing(capacity);
+        this.sink = sink;
+        this.maxBatch = maxBatch;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.blockedWarningNanos = blockedWarning.toNanos();
+        this.writer = new Thread(this::writeLoop, "acd-change-event-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Arranca el registro con los valores por defecto y lo deja como el que usa record()
+     */
+    public static ChangeEventLog start(ChangeEventSink sink) {
+        return start(new ChangeEventLog(sink, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH, DEFAULT_FLUSH_INTERVAL, DEFAULT_BLOCKED_WARNING));
+    }
+
+    /**
+     * Deja log como el registro que usa record() hasta que se cierre
+     * @throws IllegalStateException si ya hay otro en marcha
+     */
+    public static ChangeEventLog start(ChangeEventLog log) {
+        synchronized (ChangeEventLog.class) {
+            if (current != null) {
+                throw new IllegalStateException("Ya hay un registro de cambios en marcha");
+            }
+            current = log;
+        }
+        return log;
+    }
+
+    /**
+     * Registro en marcha, o null si no hay ninguno
+     */
+    public static ChangeEventLog active() {
+        return current;
+    }
+
+    /**
+     * Añade un evento al registro en marcha, si lo hay (ver append). Los DAO lo llaman después del commit,
+     * así que nunca lanza: si el registro ya no admite el evento, lo deja en el log con nivel ERROR
+     */
+    public static void record(ChangeEvent event) {
+        ChangeEventLog log = current;
+        if (log != null) {
+            try {
+                log.append(event);
+            } catch (RuntimeException e) {
+                LOG.log(Level.ERROR, "Evento sin registrar tras un cambio ya guardado: " + event + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    /**
+     * Añade un evento sin esperar a que se guarde. Solo espera si la cola está llena, hasta que haya sitio
+     * @throws IllegalStateException si el registro ya está cerrado o su hilo escritor ha terminado por un error
+     */
+    public void append(ChangeEvent event) {
+        appenders.incrementAndGet();
+        try {
+            if (closed) {
+                throw new IllegalStateException("El registro de cambios está cerrado: no se puede guardar " + event);
+            }
+            if (ring.offer(event)) {
+                // con un lote completo en la cola no se espera al siguiente intervalo
+                if (ring.size() >= maxBatch) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+            blockedAppends.incrementAndGet();
+            LockSupport.unpark(writer);
+            long warnAt = System.nanoTime() + blockedWarningNanos;
+            boolean warned = false;
+            while (!ring.offer(event)) {
+                if (!writer.isAlive() || abandoned) {
+                    throw new IllegalStateException("El registro de cambios ya no escribe: no se puede guardar " + event);
+                }
+                if (!warned && System.nanoTime() - warnAt >= 0) {
+                    LOG.log(Level.WARNING, "Registro de cambios lleno: esperando para guardar " + event
+                            + " (" + ring.size() + " pendientes)");
+                    warned = true;
+                }
+                LockSupport.parkNanos(100_000);
+            }
+        } finally {
+            appenders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Espera a que se guarde todo lo añadido antes de esta llamada
+     * @return false si no dio tiempo
+     */
+    public boolean flush(Duration timeout) {
+        long target = ring.reserved();
+        flushTarget.accumulateAndGet(target, Math::max);
+        LockSupport.unpark(writer);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (completed < target) {
+            if (System.nanoTime() - deadline >= 0 || !writer.isAlive()) {
+                return false;
+            }
+            LockSupport.parkNanos(200_000);
+        }
+        return true;
+    }
+
+    /**
+     * Eventos esperando en la cola
+     */
+    public int getPending() {
+        return ring.size();
+    }
+
+    /**
+     * Veces que append() encontró la cola llena y tuvo que esperar
+     */
+    public long getBlockedAppends() {
+        return blockedAppends.get();
+    }
+
+    /**
+     * Escrituras de lotes que fallaron (y se reintentaron)
+     */
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    private void writeLoop() {
+        List<ChangeEvent> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            // close() ya no espera: lo que quede en la cola lo escribe en el log
+            if (abandoned) {
+                return;
+            }
+            // se lee antes de vaciar la cola: lo añadido antes de close() ya está en ella
+            boolean finishing = closing;
+            ring.drainTo(batch, maxBatch - batch.size());
+            if (batch.isEmpty()) {
+                if (finishing) {
+                    return;
+                }
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                continue;
+            }
+            if (!writeBatch(batch)) {
+                spill(batch);
+                return;
+            }
+            completed += batch.size();
+            batch.clear();
+            // con pocos eventos se espera a juntar más, salvo que alguien esté esperando en flush() o se esté cerrando
+            if (ring.size() < maxBatch && flushTarget.get() <= completed && !closing) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    // reintenta hasta que se guarde: el registro no pierde eventos aunque el destino falle un rato.
+    // Solo se rinde cuando close() deja de esperar
+    private boolean writeBatch(List<ChangeEvent> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sink.write(batch);
+                return true;
+            } catch (RuntimeException e) {
+                failedWrites.incrementAndGet();
+                LOG.log(attempt == 1 ? Level.WARNING : Level.ERROR, "No se pudo guardar un lote de " + batch.size()
+                        + " eventos (intento " + attempt + "), se reintenta: " + e.getMessage());
+                LockSupport.parkNanos(RETRY_DELAY_NANOS);
+                if (abandoned) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    // lo último que queda de los eventos que no se pudieron guardar
+    private static void spill(List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            LOG.log(Level.ERROR, "Evento sin guardar al cerrar el registro de cambios: " + event);
+        }
+    }
+
+    /**
+     * Igual que close(Duration) con DEFAULT_CLOSE_TIMEOUT
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * Deja de usarse en record() y de admitir eventos, guarda todo lo que había en la cola y cierra el destino.
+     * Si el destino falla, sigue reintentando hasta timeout; después deja de esperar y escribe en el log,
+     * con nivel ERROR, cada evento que no se ha guardado, para que el cierre de la aplicación no se quede colgado
+     */
+    public void close(Duration timeout) {
+        synchronized (ChangeEventLog.class) {
+            if (current == this) {
+                current = null;
+            }
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        closed = true;
+        // quien ya estaba en append() termina de añadir; los que lleguen después ven closed
+        awaitAppenders(deadline);
+        closing = true;
+        LockSupport.unpark(writer);
+        join(deadline);
+        if (writer.isAlive()) {
+            abandoned = true;
+            LockSupport.unpark(writer);
+            // los append() que esperaban sitio ven abandoned y terminan; el escritor, al acabar el intento en curso
+            awaitAppenders(System.nanoTime() + RETRY_DELAY_NANOS);
+            join(System.nanoTime() + RETRY_DELAY_NANOS);
+            if (writer.isAlive()) {
+                // una escritura que no vuelve: el destino sigue en uso y no se cierra
+                LOG.log(Level.ERROR, "El registro de cambios no ha terminado de escribir en " + timeout
+                        + ": quedan " + ring.size() + " eventos en la cola sin guardar");
+                return;
+            }
+        }
+        // lo que quedó en la cola si el escritor se rindió o terminó por un Error del destino
+        List<ChangeEvent> unsaved = new ArrayList<>();
+        ring.drainTo(unsaved, Integer.MAX_VALUE);
+        spill(unsaved);
+        sink.close();
+    }
+
+    private void awaitAppenders(long deadline) {
+        while (appenders.get() > 0 && System.nanoTime() - deadline < 0) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private void join(long deadline) {
+        try {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                writer.join(Duration.ofNanos(remaining));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package es.fpfempa.acd.audit;
+
+import java.util.List;
+
+/**
+ * Destino de los eventos del registro de cambios. Solo lo llama el hilo escritor de ChangeEventLog, nunca a la vez
+ */
+public interface ChangeEventSink extends AutoCloseable {
+
+    /**
+     * Guarda un lote de eventos, en orden. Si lanza una excepción el lote entero se vuelve a intentar,
+     * así que una escritura a medias puede repetir eventos (nunca perderlos)
+     */
+    void write(List<ChangeEvent> events);
+
+    /**
+     * Libera lo que tenga abierto; se llama después del último write
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,27 @@
+package es.fpfempa.acd.audit;
+
+import es.fpfempa.acd.dao.ChangeEventDao;
+import es.fpfempa.acd.entities.ChangeEventRecord;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+
+import java.util.List;
+
+/**
+ * Guarda los eventos en la tabla change_events: una transacción por lote, así que un lote se guarda entero o nada
+ */
+public class DatabaseChangeEventSink implements ChangeEventSink {
+
+    private final EntityManagerProvider emProvider;
+
+    public DatabaseChangeEventSink(EntityManagerProvider emProvider) {
+        this.emProvider = emProvider;
+    }
+
+    @Override
+    public void write(List<ChangeEvent> events) {
+        List<ChangeEventRecord> records = events.stream()
+                .map(e -> new ChangeEventRecord(e.occurredAt(), e.entityType(), e.entityId(), e.action(), e.detail()))
+                .toList();
+        emProvider.runWithEntityManager(em -> new ChangeEventDao(em).insertAll(records));
+    }
+}
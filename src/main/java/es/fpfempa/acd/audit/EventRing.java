@@ -0,0 +1,94 @@
+package es.fpfempa.acd.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola circular acotada de muchos productores y un solo consumidor, sin bloqueos.
+ * Cada productor reserva una posición con un CAS sobre head y después publica el evento en su hueco;
+ * el consumidor lee en orden desde tail mientras encuentre huecos publicados y los vacía.
+ * Un hueco reservado pero aún sin publicar para al consumidor hasta que se publica, así que el orden
+ * de salida es el de reserva.
+ */
+final class EventRing {
+
+    private final AtomicReferenceArray<ChangeEvent> slots;
+    private final int capacity;
+    private final int mask;
+    // siguiente posición que reservará un productor
+    private final AtomicLong head = new AtomicLong();
+    // siguiente posición que leerá el consumidor
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity Eventos como mucho; se redondea a la siguiente potencia de 2
+     */
+    EventRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor que 0");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Añade un evento si hay sitio
+     * @return false si la cola está llena
+     */
+    boolean offer(ChangeEvent event) {
+        while (true) {
+            long position = head.get();
+            if (position - tail.get() >= capacity) {
+                return false;
+            }
+            if (head.compareAndSet(position, position + 1)) {
+                slots.set((int) (position & mask), event);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Pasa a target hasta max eventos, en orden (solo desde el hilo consumidor)
+     * @return Eventos pasados
+     */
+    int drainTo(List<ChangeEvent> target, int max) {
+        long position = tail.get();
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) (position & mask);
+            ChangeEvent event = slots.get(index);
+            if (event == null) {
+                break;
+            }
+            target.add(event);
+            // el hueco se vacía antes de moverse tail: el productor que lo reutilice lo verá ya libre
+            slots.lazySet(index, null);
+            position++;
+            drained++;
+        }
+        tail.set(position);
+        return drained;
+    }
+
+    /**
+     * Eventos reservados y aún no leídos (aproximado si hay productores a la vez)
+     */
+    int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Posiciones reservadas desde el principio: cuando el consumidor haya leído hasta aquí,
+     * habrá leído todo lo que se añadió antes de esta llamada
+     */
+    long reserved() {
+        return head.get();
+    }
+}
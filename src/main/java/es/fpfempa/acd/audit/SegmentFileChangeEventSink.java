@@ -0,0 +1,193 @@
+package es.fpfempa.acd.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Guarda los eventos en ficheros de texto de solo añadir (changes-000001.log, changes-000002.log...), una línea por evento
+ * separada por tabuladores: fecha, entidad, ID, acción y detalle. Al pasar de segmentBytes se cierra el fichero
+ * y se sigue en el siguiente, así los antiguos se pueden archivar o borrar sin tocar el que está abierto.
+ * Cada arranque empieza un segmento nuevo, para no seguir detrás de una línea que quedara a medias.
+ * Si falla la escritura de un lote se corta el fichero donde empezaba, así al reintentarlo no queda repetido
+ * ni a medias; si no se puede cortar, el reintento va a un segmento nuevo.
+ * FsyncPolicy decide cuándo se obliga al sistema a llevar los datos al disco.
+ */
+public class SegmentFileChangeEventSink implements ChangeEventSink {
+
+    public enum FsyncPolicy {
+        /** fsync después de cada lote: un lote escrito no se pierde aunque se caiga la máquina */
+        EVERY_BATCH,
+        /** fsync con el primer lote que llega pasado fsyncInterval desde el anterior: se pueden perder los lotes de en medio */
+        INTERVAL,
+        /** sin fsync salvo al cambiar de segmento y al cerrar: lo decide el sistema operativo */
+        OS
+    }
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("changes-(\\d{6})\\.log");
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    // null si no se pudo deshacer un lote a medias: el siguiente write abre otro segmento
+    private FileChannel channel;
+    private int segmentNumber;
+    // bytes de lotes completos en el segmento: es también donde empieza el siguiente
+    private long segmentSize;
+    private long lastSync = System.nanoTime();
+    private boolean unsynced;
+
+    public SegmentFileChangeEventSink(Path directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES, FsyncPolicy.EVERY_BATCH, Duration.ofSeconds(1));
+    }
+
+    /**
+     * @param directory Carpeta de los segmentos; se crea si no existe
+     * @param segmentBytes Tamaño a partir del cual se empieza otro fichero
+     * @param fsyncInterval Solo con FsyncPolicy.INTERVAL
+     */
+    public SegmentFileChangeEventSink(Path directory, long segmentBytes, FsyncPolicy fsyncPolicy, Duration fsyncInterval) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                segmentNumber = files.map(p -> SEGMENT_NAME.matcher(p.getFileName().toString()))
+                        .filter(Matcher::matches)
+                        .mapToInt(m -> Integer.parseInt(m.group(1)))
+                        .max().orElse(0);
+            }
+            openNextSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al abrir el registro de cambios en " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fichero en el que se está escribiendo
+     */
+    public Path getCurrentSegment() {
+        return segmentPath(segmentNumber);
+    }
+
+    @Override
+    public void write(List<ChangeEvent> events) {
+        StringBuilder text = new StringBuilder(events.size() * 96);
+        for (ChangeEvent event : events) {
+            text.append(event.occurredAt()).append('\t')
+                    .append(event.entityType()).append('\t')
+                    .append(event.entityId()).append('\t')
+                    .append(event.action()).append('\t');
+            appendEscaped(text, event.detail());
+            text.append('\n');
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(text.toString());
+        try {
+            // se cambia de segmento antes de escribir: si falla, no hay nada de este lote escrito
+            if (channel == null || segmentSize >= segmentBytes) {
+                openNextSegment();
+            }
+            long start = segmentSize;
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                unsynced = true;
+                if (fsyncPolicy == FsyncPolicy.EVERY_BATCH
+                        || fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastSync >= fsyncIntervalNanos) {
+                    sync();
+                }
+            } catch (IOException e) {
+                discardFrom(start, e);
+                throw e;
+            }
+            segmentSize = start + buffer.limit();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al escribir el registro de cambios: " + e.getMessage(), e);
+        }
+    }
+
+    // quita lo que se llegó a escribir del lote que falló
+    private void discardFrom(long start, IOException failure) {
+        try {
+            channel.truncate(start);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            try {
+                channel.close();
+            } catch (IOException closeFailure) {
+                failure.addSuppressed(closeFailure);
+            }
+            channel = null;
+        }
+    }
+
+    // el detalle es texto libre: sin esto un salto de línea o un tabulador partiría la línea del evento
+    private static void appendEscaped(StringBuilder text, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> text.append("\\\\");
+                case '\t' -> text.append("\\t");
+                case '\n' -> text.append("\\n");
+                case '\r' -> text.append("\\r");
+                default -> text.append(c);
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        if (unsynced) {
+            channel.force(false);
+            unsynced = false;
+        }
+        lastSync = System.nanoTime();
+    }
+
+    private void openNextSegment() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+        segmentNumber++;
+        channel = FileChannel.open(segmentPath(segmentNumber),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = 0;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("changes-%06d.log", number));
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al cerrar el registro de cambios: " + e.getMessage(), e);
+        }
+    }
+}
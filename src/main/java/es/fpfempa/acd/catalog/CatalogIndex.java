@@ -0,0 +1,262 @@
+package es.fpfempa.acd.catalog;
+
+import es.fpfempa.acd.dao.CatalogRow;
+import es.fpfempa.acd.dao.ProductDao;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catálogo de productos activos en memoria, por ID, por SKU y por categoría, para navegar por categorías
+ * y buscar SKUs sin ir a MySQL.
+ * Se carga entero al arrancar y después, cada intervalo, solo lee los productos con updated_at posterior a la última
+ * lectura (idx_products_updated_at) y rehace las categorías afectadas. Los productos borrados de la tabla
+ * no dejan rastro en updated_at: para que desaparezcan se recarga todo cada fullReloadInterval
+ * (desactivarlos con active = false sí se ve en el siguiente refresco).
+ * Los lectores no se bloquean nunca: cada refresco prepara una foto nueva y la publica de una vez (volatile).
+ */
+public class CatalogIndex implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(CatalogIndex.class.getName());
+
+    // se vuelve a leer un poco antes de la última marca: una transacción que se confirma tarde
+    // puede traer un updated_at anterior al de filas ya leídas
+    private static final Duration OVERLAP = Duration.ofSeconds(5);
+
+    private static final CatalogProduct[] NO_PRODUCTS = new CatalogProduct[0];
+    private static final Comparator<CatalogProduct> BY_NAME =
+            Comparator.comparing(CatalogProduct::name).thenComparingInt(CatalogProduct::id);
+
+    private final EntityManagerProvider emProvider;
+    private final Duration fullReloadInterval;
+    private final ScheduledExecutorService scheduler;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private Instant lastFullReload = Instant.EPOCH;
+
+    /**
+     * Índice vacío y sin refresco automático: hay que llamar a reload() y refresh()
+     * @param fullReloadInterval Cada cuánto refresh() recarga el catálogo entero en vez de solo los cambios
+     */
+    public CatalogIndex(EntityManagerProvider emProvider, Duration fullReloadInterval) {
+        this.emProvider = emProvider;
+        this.fullReloadInterval = fullReloadInterval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "acd-catalog-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Carga el catálogo y programa el refresco periódico
+     * @param pollInterval Cada cuánto buscar productos cambiados
+     * @param fullReloadInterval Cada cuánto recargarlo todo (para ver los productos borrados)
+     */
+    public static CatalogIndex start(EntityManagerProvider emProvider, Duration pollInterval, Duration fullReloadInterval) {
+        CatalogIndex index = new CatalogIndex(emProvider, fullReloadInterval);
+        index.reload();
+        index.scheduler.scheduleWithFixedDelay(index::refreshQuietly, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        return index;
+    }
+
+    /**
+     * Producto activo con ese SKU
+     * @return Producto, o vacío si no existe o no está activo
+     */
+    public Optional<CatalogProduct> findBySku(String sku) {
+        return Optional.ofNullable(snapshot.bySku().get(sku));
+    }
+
+    /**
+     * Producto activo con ese ID
+     * @return Producto, o vacío si no existe o no está activo
+     */
+    public Optional<CatalogProduct> findById(int productId) {
+        return Optional.ofNullable(snapshot.byId().get(productId));
+    }
+
+    /**
+     * Página de productos activos de una categoría, por nombre (como ProductDao.findActiveByCategory)
+     * @param inStockOnly Si solo se quieren los que tienen stock
+     * @param page Número de página, empezando en 0
+     * @param pageSize Productos por página
+     */
+    public List<CatalogProduct> browse(int categoryId, boolean inStockOnly, int page, int pageSize) {
+        CatalogProduct[] products = snapshot.byCategory().get(categoryId);
+        if (products == null) {
+            return List.of();
+        }
+        if (!inStockOnly) {
+            int from = Math.min(products.length, page * pageSize);
+            return List.of(Arrays.copyOfRange(products, from, Math.min(products.length, from + pageSize)));
+        }
+        List<CatalogProduct> result = new ArrayList<>(pageSize);
+        int skip = page * pageSize;
+        for (int i = 0; i < products.length && result.size() < pageSize; i++) {
+            if (products[i].inStock() && skip-- <= 0) {
+                result.add(products[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Número de productos activos en el índice
+     */
+    public int size() {
+        return snapshot.byId().size();
+    }
+
+    /**
+     * Marca de tiempo de los últimos cambios leídos
+     */
+    public Instant getWatermark() {
+        return snapshot.watermark();
+    }
+
+    /**
+     * Vuelve a cargar el catálogo entero
+     */
+    public synchronized void reload() {
+        List<CatalogRow> rows = emProvider.withEntityManager(em -> new ProductDao(em).findCatalogRowsChangedSince(Instant.EPOCH));
+        snapshot = Snapshot.EMPTY.apply(rows);
+        lastFullReload = Instant.now();
+    }
+
+    /**
+     * Aplica los productos cambiados desde la última lectura (o lo recarga todo si toca)
+     * @return Filas leídas de la BD (una por producto y categoría)
+     */
+    public synchronized int refresh() {
+        if (Instant.now().isAfter(lastFullReload.plus(fullReloadInterval))) {
+            reload();
+            return snapshot.byId().size();
+        }
+        Snapshot current = snapshot;
+        Instant since = current.watermark().minus(OVERLAP);
+        List<CatalogRow> rows = emProvider.withEntityManager(em -> new ProductDao(em).findCatalogRowsChangedSince(since));
+        if (!rows.isEmpty()) {
+            snapshot = current.apply(rows);
+        }
+        return rows.size();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // se sigue sirviendo la foto anterior y se reintenta en el siguiente intervalo
+            LOG.log(Level.WARNING, "No se pudo refrescar el catálogo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Para el refresco periódico
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Estado del índice en un momento; no se modifica una vez publicado
+     */
+    private record Snapshot(IntObjectMap<CatalogProduct> byId, Map<String, CatalogProduct> bySku,
+                            IntObjectMap<CatalogProduct[]> byCategory, Instant watermark) {
+
+        static final Snapshot EMPTY = new Snapshot(new IntObjectMap<>(0), Map.of(), new IntObjectMap<>(0), Instant.EPOCH);
+
+        /**
+         * Foto nueva con los productos de rows (ordenadas por producto) cambiados; solo se rehacen
+         * las listas de las categorías en las que estaban o están esos productos
+         */
+        Snapshot apply(List<CatalogRow> rows) {
+            List<CatalogRow> group = new ArrayList<>();
+            Map<Integer, CatalogProduct> changed = new HashMap<>();
+            Instant newWatermark = watermark;
+            for (int i = 0; i < rows.size(); i++) {
+                CatalogRow row = rows.get(i);
+                group.add(row);
+                if (i + 1 == rows.size() || !rows.get(i + 1).productId().equals(row.productId())) {
+                    // los que se vuelven a leer por el solape y no han cambiado no se tocan
+                    CatalogProduct current = byId.get(row.productId());
+                    boolean active = Boolean.TRUE.equals(row.active());
+                    if (active ? current == null || !current.updatedAt().equals(row.updatedAt()) : current != null) {
+                        changed.put(row.productId(), active ? toProduct(group) : null);
+                    }
+                    group.clear();
+                }
+                if (row.updatedAt().isAfter(newWatermark)) {
+                    newWatermark = row.updatedAt();
+                }
+            }
+
+            if (changed.isEmpty()) {
+                return new Snapshot(byId, bySku, byCategory, newWatermark);
+            }
+
+            IntObjectMap<CatalogProduct> newById = byId.copy();
+            Map<String, CatalogProduct> newBySku = new HashMap<>(bySku);
+            Map<Integer, List<CatalogProduct>> touchedCategories = new HashMap<>();
+            for (Map.Entry<Integer, CatalogProduct> entry : changed.entrySet()) {
+                CatalogProduct old = newById.remove(entry.getKey());
+                if (old != null) {
+                    newBySku.remove(old.sku(), old);
+                    for (int categoryId : old.categoryIds()) {
+                        touchedCategories.computeIfAbsent(categoryId, id -> new ArrayList<>());
+                    }
+                }
+                CatalogProduct product = entry.getValue();
+                if (product != null) {
+                    newById.put(product.id(), product);
+                    newBySku.put(product.sku(), product);
+                    for (int categoryId : product.categoryIds()) {
+                        touchedCategories.computeIfAbsent(categoryId, id -> new ArrayList<>()).add(product);
+                    }
+                }
+            }
+
+            IntObjectMap<CatalogProduct[]> newByCategory = byCategory.copy();
+            for (Map.Entry<Integer, List<CatalogProduct>> entry : touchedCategories.entrySet()) {
+                List<CatalogProduct> products = entry.getValue();
+                CatalogProduct[] previous = byCategory.get(entry.getKey());
+                for (CatalogProduct product : previous == null ? NO_PRODUCTS : previous) {
+                    if (!changed.containsKey(product.id())) {
+                        products.add(product);
+                    }
+                }
+                if (products.isEmpty()) {
+                    newByCategory.remove(entry.getKey());
+                } else {
+                    products.sort(BY_NAME);
+                    newByCategory.put(entry.getKey(), products.toArray(NO_PRODUCTS));
+                }
+            }
+            return new Snapshot(newById, newBySku, newByCategory, newWatermark);
+        }
+
+        private static CatalogProduct toProduct(List<CatalogRow> rows) {
+            CatalogRow first = rows.get(0);
+            int[] categoryIds = rows.stream()
+                    .filter(row -> row.categoryId() != null)
+                    .mapToInt(CatalogRow::categoryId)
+                    .distinct()
+                    .toArray();
+            return new CatalogProduct(first.productId(), first.sku(), first.name(), first.price(), first.stock(), categoryIds,
+                    first.updatedAt());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package es.fpfempa.acd.catalog;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Producto activo tal como está en CatalogIndex. Es una foto: stock puede ir hasta un intervalo
+ * de refresco por detrás de la BD, así que la reserva de stock se hace siempre contra la BD
+ * @param categoryIds IDs de sus categorías (no modificar el array)
+ * @param updatedAt Última modificación leída de la BD
+ */
+public record CatalogProduct(int id, String sku, String name, BigDecimal price, int stock, int[] categoryIds,
+                             Instant updatedAt) {
+
+    public boolean inStock() {
+        return stock > 0;
+    }
+}
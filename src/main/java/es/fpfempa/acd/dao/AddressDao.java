@@ -1,13 +1,27 @@
 package es.fpfempa.acd.dao;
 
+import es.fpfempa.acd.audit.ChangeEvent;
+import es.fpfempa.acd.audit.ChangeEventLog;
 import es.fpfempa.acd.entities.Address;
 import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.metrics.DaoMetrics;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public class AddressDao {
 
+    // mismo valor que hibernate.jdbc.batch_size en persistence.xml
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
     private EntityManager em;
 
     public AddressDao(EntityManager em) {
@@ -19,15 +33,118 @@ public class AddressDao {
      * @param address Dirección a crear
      */
     public void create(Address address) {
-        try {
-            em.getTransaction().begin();
-            em.persist(address);  // persist() porque es nueva
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.create")) {
+            try {
+                em.getTransaction().begin();
+                em.persist(address);  // persist() porque es nueva
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al crear la dirección: " + e.getMessage());
+            }
+            ChangeEventLog.record(ChangeEvent.ofAddress("CREATE", address));
+        }
+    }
+
+    /**
+     * Crea la dirección solo si el cliente no tiene ya una igual (misma huella tras normalizar);
+     * si la tiene, devuelve la existente y no inserta nada. Es una sola consulta por índice (customer_id, fingerprint).
+     * Dos altas simultáneas de la misma dirección pueden crear un duplicado; AddressDeduplicationJob lo junta después.
+     * @param address Dirección nueva, con su cliente
+     * @return La dirección existente o la recién creada
+     */
+    public Address findOrCreate(Address address) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.findOrCreate")) {
+            Optional<Address> existing;
+            try {
+                address.normalize();
+                em.getTransaction().begin();
+                existing = fingerprintLookup(address.getCustomer().getId(), address.getFingerprint());
+                if (existing.isEmpty()) {
+                    em.persist(address);
+                }
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al crear la dirección: " + e.getMessage());
+            }
+            if (existing.isPresent()) {
+                return existing.get();
+            }
+            ChangeEventLog.record(ChangeEvent.ofAddress("CREATE", address));
+            return address;
+        }
+    }
+
+    /**
+     * Busca una dirección del cliente por su huella (ver AddressNormalizer)
+     * @return La dirección más antigua con esa huella, o vacío si no hay ninguna
+     */
+    public Optional<Address> findByFingerprint(Integer customerId, String fingerprint) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.findByFingerprint")) {
+            return fingerprintLookup(customerId, fingerprint);
+        }
+    }
+
+    private Optional<Address> fingerprintLookup(Integer customerId, String fingerprint) {
+        return em.createNamedQuery("Address.findByFingerprint", Address.class)
+                .setParameter("customerId", customerId)
+                .setParameter("fingerprint", fingerprint)
+                .setMaxResults(1)
+                .getResultList().stream().findFirst();
+    }
+
+    /**
+     * Crea muchas direcciones nuevas en una sola transacción usando lotes JDBC
+     * (tamaño de lote por defecto, igual que hibernate.jdbc.batch_size)
+     * @param addresses Direcciones a crear; sus clientes ya deben existir en la BD
+     */
+    public void createAll(Collection<Address> addresses) {
+        createAll(addresses, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Crea muchas direcciones nuevas en una sola transacción usando lotes JDBC.
+     * Cada batchSize entidades se hace flush (envía el lote) y clear (vacía el contexto de persistencia),
+     * así la memoria no crece con el número de filas. Al terminar las direcciones quedan desconectadas pero con su ID.
+     * @param addresses Direcciones a crear; sus clientes ya deben existir en la BD
+     * @param batchSize Número de INSERT por lote
+     */
+    public void createAll(Collection<Address> addresses, int batchSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.createAll")) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+            }
+            Session session = em.unwrap(Session.class);
+            Integer previousBatchSize = session.getJdbcBatchSize();
+            try {
+                session.setJdbcBatchSize(batchSize);
+                em.getTransaction().begin();
+                int count = 0;
+                for (Address address : addresses) {
+                    em.persist(address);
+                    if (++count % batchSize == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+                em.getTransaction().commit();
+                em.clear();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al crear las direcciones: " + e.getMessage());
+            } finally {
+                session.setJdbcBatchSize(previousBatchSize);
+            }
+            for (Address address : addresses) {
+                ChangeEventLog.record(ChangeEvent.ofAddress("CREATE", address));
             }
-            throw new RuntimeException("Error al crear la dirección: " + e.getMessage());
         }
     }
 
@@ -37,7 +154,9 @@ public class AddressDao {
      * @return Address o null si no existe
      */
     public Address findById(Integer addressId) {
-        return em.find(Address.class, addressId);
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.findById")) {
+            return em.find(Address.class, addressId);
+        }
     }
 
     /**
@@ -46,26 +165,37 @@ public class AddressDao {
      * @return Lista de direcciones del cliente
      */
     public List<Address> findByCustomerId(Integer customerId) {
-        String jpql = "SELECT a FROM Address a WHERE a.customer.id = :customerId";
-        TypedQuery<Address> query = em.createQuery(jpql, Address.class);
-        query.setParameter("customerId", customerId);
-        return query.getResultList();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.findByCustomerId")) {
+            TypedQuery<Address> query = em.createNamedQuery("Address.findByCustomerId", Address.class);
+            query.setParameter("customerId", customerId);
+            query.setHint(HibernateHints.HINT_CACHEABLE, true);
+            return query.getResultList();
+        }
     }
 
     /**
      * Actualiza una dirección existente
      * @param address Dirección a actualizar
+     * @throws UpdateConflictException si otro usuario la modificó desde que se leyó (versión distinta)
      */
     public void update(Address address) {
-        try {
-            em.getTransaction().begin();
-            em.merge(address);
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.update")) {
+            Address merged;
+            try {
+                em.getTransaction().begin();
+                merged = em.merge(address);
+                em.getTransaction().commit();
+                address.setVersion(merged.getVersion());
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                if (UpdateConflictException.isVersionConflict(e)) {
+                    throw new UpdateConflictException("Address", address.getId(), e);
+                }
+                throw new RuntimeException("Error al actualizar la dirección: " + e.getMessage());
             }
-            throw new RuntimeException("Error al actualizar la dirección: " + e.getMessage());
+            ChangeEventLog.record(ChangeEvent.ofAddress("UPDATE", merged));
         }
     }
 
@@ -74,27 +204,130 @@ public class AddressDao {
      * @param addressId ID de la dirección a eliminar
      */
     public void delete(Integer addressId) {
-        try {
-            em.getTransaction().begin();
-            Address address = em.find(Address.class, addressId);
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.delete")) {
+            Address address;
+            try {
+                em.getTransaction().begin();
+                address = em.find(Address.class, addressId);
+                if (address != null) {
+                    em.remove(address);
+                }
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al eliminar la dirección: " + e.getMessage());
+            }
             if (address != null) {
-                em.remove(address);
+                ChangeEventLog.record(ChangeEvent.ofAddress("DELETE", address));
+            }
+        }
+    }
+
+    /**
+     * Calcula la huella de las direcciones que aún no la tienen (filas anteriores a la columna fingerprint),
+     * una página por transacción y recorriendo por ID para no repetir filas
+     * @param afterId Último ID ya procesado (0 para empezar)
+     * @param pageSize Direcciones por transacción
+     * @return Último ID procesado, o null si no quedaban direcciones sin huella
+     */
+    public Integer fillMissingFingerprints(Integer afterId, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.fillMissingFingerprints")) {
+            try {
+                em.getTransaction().begin();
+                List<Address> page = em.createNamedQuery("Address.findWithoutFingerprintAfter", Address.class)
+                        .setParameter("afterId", afterId)
+                        .setMaxResults(pageSize)
+                        .getResultList();
+                page.forEach(Address::normalize);
+                em.getTransaction().commit();
+                em.clear();
+                return page.isEmpty() ? null : page.get(page.size() - 1).getId();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al calcular las huellas de las direcciones: " + e.getMessage());
             }
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+        }
+    }
+
+    /**
+     * Grupos de direcciones repetidas: mismo cliente y misma huella
+     * @return Un DuplicateAddressGroup por cada huella que aparece más de una vez en un cliente
+     */
+    public List<DuplicateAddressGroup> findDuplicateGroups() {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.findDuplicateGroups")) {
+            return em.createNamedQuery("Address.findDuplicateGroups", DuplicateAddressGroup.class).getResultList();
+        }
+    }
+
+    /**
+     * Junta cada grupo de duplicados en su dirección más antigua, todo en una transacción:
+     * los pedidos que apuntaban a una copia pasan a apuntar a la que se queda, las copias se borran
+     * y la que se queda pasa a ser la predeterminada si alguna copia lo era
+     * @param groups Grupos obtenidos con findDuplicateGroups
+     * @return Número de direcciones borradas
+     */
+    public int mergeDuplicates(Collection<DuplicateAddressGroup> groups) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.mergeDuplicates")) {
+            int deleted = 0;
+            List<ChangeEvent> events = new ArrayList<>(groups.size());
+            try {
+                em.getTransaction().begin();
+                for (DuplicateAddressGroup group : groups) {
+                    // pedidos que pasan a la dirección que se queda, con la duplicada que tenían
+                    Map<Integer, Integer> moved = new LinkedHashMap<>();
+                    em.createNamedQuery("Order.lockMergedShippingAddresses", Object[].class)
+                            .setParameter("keeperId", group.keeperId())
+                            .setParameter("customerId", group.customerId())
+                            .setParameter("fingerprint", group.fingerprint())
+                            .getResultList()
+                            .forEach(row -> moved.put((Integer) row[0], (Integer) row[1]));
+                    em.createNamedQuery("Order.mergeShippingAddresses")
+                            .setParameter("keeper", em.getReference(Address.class, group.keeperId()))
+                            .setParameter("keeperId", group.keeperId())
+                            .setParameter("customerId", group.customerId())
+                            .setParameter("fingerprint", group.fingerprint())
+                            .executeUpdate();
+                    int removed = em.createNamedQuery("Address.deleteDuplicates")
+                            .setParameter("keeperId", group.keeperId())
+                            .setParameter("customerId", group.customerId())
+                            .setParameter("fingerprint", group.fingerprint())
+                            .executeUpdate();
+                    deleted += removed;
+                    events.add(ChangeEvent.of("Address", group.keeperId(), "MERGE",
+                            "customer=" + group.customerId() + " duplicates=" + removed));
+                    moved.forEach((orderId, duplicateId) ->
+                            events.add(ChangeEvent.ofShippingAddress(orderId, duplicateId, group.keeperId())));
+                    if (group.anyDefault()) {
+                        em.createNamedQuery("Address.markDefault")
+                                .setParameter("addressId", group.keeperId())
+                                .executeUpdate();
+                    }
+                }
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al juntar las direcciones duplicadas: " + e.getMessage());
             }
-            throw new RuntimeException("Error al eliminar la dirección: " + e.getMessage());
+            events.forEach(ChangeEventLog::record);
+            return deleted;
         }
     }
 
     // para que te saque los datos del cliente enteros para que luego podamos sacar las direcciones que tiene
     public List<Address> findByCustomer(Customer customer) {
-        String jpql = "SELECT a FROM Address a WHERE a.customer.id = :customerId";
-        TypedQuery<Address> query = em.createQuery(jpql, Address.class);
-        query.setParameter("customerId", customer.getId());
-        return query.getResultList();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("AddressDao.findByCustomer")) {
+            TypedQuery<Address> query = em.createNamedQuery("Address.findByCustomerId", Address.class);
+            query.setParameter("customerId", customer.getId());
+            // cacheada: la caché se invalida sola cuando Hibernate escribe en la tabla addresses
+            query.setHint(HibernateHints.HINT_CACHEABLE, true);
+            return query.getResultList();
+        }
     }
 
 }
@@ -0,0 +1,7 @@
+package es.fpfempa.acd.dao;
+
+/**
+ * Huella de una dirección sin cargar la entidad, para localizar direcciones existentes en memoria
+ */
+public record AddressFingerprint(Integer customerId, String fingerprint, Integer addressId) {
+}
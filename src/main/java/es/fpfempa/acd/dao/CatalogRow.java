@@ -0,0 +1,12 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Un producto con una de sus categorías, tal como lo lee CatalogIndex
+ * @param categoryId ID de la categoría, o null si el producto no tiene ninguna
+ */
+public record CatalogRow(Integer productId, String sku, String name, BigDecimal price, Integer stock,
+                         Boolean active, Instant updatedAt, Integer categoryId) {
+}
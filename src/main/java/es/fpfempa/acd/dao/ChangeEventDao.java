@@ -0,0 +1,65 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.entities.ChangeEventRecord;
+import es.fpfempa.acd.metrics.DaoMetrics;
+import jakarta.persistence.EntityManager;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Registro de cambios (tabla change_events). Solo se inserta: lo escribe es.fpfempa.acd.audit.ChangeEventLog por lotes
+ */
+public class ChangeEventDao {
+
+    // mismo valor que hibernate.jdbc.batch_size en persistence.xml
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private EntityManager em;
+
+    public ChangeEventDao(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Inserta un lote de eventos en una sola transacción, con lotes JDBC de DEFAULT_BATCH_SIZE
+     * @param records Eventos nuevos
+     */
+    public void insertAll(Collection<ChangeEventRecord> records) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ChangeEventDao.insertAll")) {
+            try {
+                em.getTransaction().begin();
+                int count = 0;
+                for (ChangeEventRecord record : records) {
+                    em.persist(record);
+                    if (++count % DEFAULT_BATCH_SIZE == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+                em.getTransaction().commit();
+                em.clear();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.clear();
+                throw new RuntimeException("Error al guardar el registro de cambios: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cambios de una fila, del más antiguo al más reciente (por el índice idx_change_events_entity)
+     * @param entityType Order, Address...
+     * @param entityId ID de la fila
+     */
+    public List<ChangeEventRecord> findByEntity(String entityType, Integer entityId) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ChangeEventDao.findByEntity")) {
+            return em.createNamedQuery("ChangeEventRecord.findByEntity", ChangeEventRecord.class)
+                    .setParameter("entityType", entityType)
+                    .setParameter("entityId", entityId)
+                    .getResultList();
+        }
+    }
+}
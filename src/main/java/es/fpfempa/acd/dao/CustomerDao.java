@@ -1,13 +1,29 @@
 package es.fpfempa.acd.dao;
 
 import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.metrics.DaoMetrics;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class CustomerDao {
 
+    // mismo valor que hibernate.jdbc.batch_size en persistence.xml
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    // filas por viaje al servidor al recorrer la tabla con streamAll
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
     private EntityManager em;
+    private final CustomerEmailCache emailCache = CustomerEmailCache.shared();
 
     public CustomerDao(EntityManager em) {
         this.em = em;
@@ -18,15 +34,67 @@ public class CustomerDao {
      * @param customer Cliente a crear
      */
     public void create(Customer customer) {
-        try {
-            em.getTransaction().begin();
-            em.persist(customer);
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.create")) {
+            try {
+                em.getTransaction().begin();
+                em.persist(customer);
+                em.getTransaction().commit();
+                // puede haber una entrada negativa de cuando el email aún no existía
+                emailCache.invalidate(customer.getEmail());
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al crear el cliente: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Crea muchos clientes nuevos en una sola transacción usando lotes JDBC
+     * (tamaño de lote por defecto, igual que hibernate.jdbc.batch_size)
+     * @param customers Clientes a crear
+     */
+    public void createAll(Collection<Customer> customers) {
+        createAll(customers, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Crea muchos clientes nuevos en una sola transacción usando lotes JDBC.
+     * Cada batchSize entidades se hace flush (envía el lote) y clear (vacía el contexto de persistencia),
+     * así la memoria no crece con el número de filas. Al terminar los clientes quedan desconectados pero con su ID.
+     * @param customers Clientes a crear
+     * @param batchSize Número de INSERT por lote
+     */
+    public void createAll(Collection<Customer> customers, int batchSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.createAll")) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+            }
+            Session session = em.unwrap(Session.class);
+            Integer previousBatchSize = session.getJdbcBatchSize();
+            try {
+                session.setJdbcBatchSize(batchSize);
+                em.getTransaction().begin();
+                int count = 0;
+                for (Customer customer : customers) {
+                    em.persist(customer);
+                    if (++count % batchSize == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+                em.getTransaction().commit();
+                em.clear();
+                customers.forEach(customer -> emailCache.invalidate(customer.getEmail()));
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al crear los clientes: " + e.getMessage());
+            } finally {
+                session.setJdbcBatchSize(previousBatchSize);
             }
-            throw new RuntimeException("Error al crear el cliente: " + e.getMessage());
         }
     }
 
@@ -36,7 +104,44 @@ public class CustomerDao {
      * @return Customer o null si no existe
      */
     public Customer findById(Integer customerId) {
-        return em.find(Customer.class, customerId);
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.findById")) {
+            return em.find(Customer.class, customerId);
+        }
+    }
+
+    /**
+     * Busca un cliente por su email. Que no exista no es un error: devuelve Optional vacío sin lanzar excepciones
+     * (el login prueba muchos emails que no existen); los fallos de la base de datos sí se propagan.
+     * El ID se saca de CustomerEmailCache (que también recuerda los emails que no existen) y el cliente
+     * se carga por ID, normalmente desde la caché de segundo nivel.
+     * @param email Email del cliente (no distingue mayúsculas ni espacios alrededor)
+     * @return Cliente, o vacío si no existe
+     */
+    public Optional<Customer> findOptionalByEmail(String email) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.findOptionalByEmail")) {
+            String normalized = CustomerEmailCache.normalize(email);
+            if (normalized == null) {
+                return Optional.empty();
+            }
+            Optional<Customer> customer = emailCache.findId(normalized, this::findIdByEmail)
+                    .map(customerId -> em.find(Customer.class, customerId));
+            if (customer.isEmpty() || normalized.equals(CustomerEmailCache.normalize(customer.get().getEmail()))) {
+                return customer;
+            }
+            // entrada desfasada (el cliente cambió de email o se borró desde otro proceso): se descarta y se vuelve a buscar
+            emailCache.invalidate(normalized);
+            return emailCache.findId(normalized, this::findIdByEmail)
+                    .map(customerId -> em.find(Customer.class, customerId));
+        }
+    }
+
+    // el email se guarda tal como llega; la búsqueda con la forma normalizada (la clave de la caché) lo encuentra
+    // porque la columna usa la intercalación de MySQL, que no distingue mayúsculas (la misma que usa uk_customers_email)
+    private Optional<Integer> findIdByEmail(String normalizedEmail) {
+        return em.createNamedQuery("Customer.findIdByEmail", Integer.class)
+                .setParameter("email", normalizedEmail)
+                .setMaxResults(1)
+                .getResultList().stream().findFirst();
     }
 
     /**
@@ -45,13 +150,21 @@ public class CustomerDao {
      * @return Customer o null si no existe
      */
     public Customer findByEmail(String email) {
-        String jpql = "SELECT c FROM Customer c WHERE c.email = :email";
-        TypedQuery<Customer> query = em.createQuery(jpql, Customer.class);
-        query.setParameter("email", email);
-        try {
-            return query.getSingleResult();
-        } catch (Exception e) {
-            return null;  // Si no encuentra el cliente
+        return findOptionalByEmail(email).orElse(null);
+    }
+
+    /**
+     * Busca un cliente por ID y carga sus direcciones
+     * @param customerId ID del cliente
+     * @return Cliente con direcciones cargadas, o vacío si no existe
+     */
+    public Optional<Customer> findOptionalByIdWithAddresses(Integer customerId) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.findOptionalByIdWithAddresses")) {
+            TypedQuery<Customer> query = em.createNamedQuery("Customer.findByIdWithAddresses", Customer.class);
+            query.setParameter("customerId", customerId);
+            // sin setMaxResults: con JOIN FETCH de una colección Hibernate limitaría en memoria tras leer todas las filas.
+            // Las filas de las direcciones se juntan en un único cliente, así que la lista tiene 0 o 1 elementos
+            return query.getResultList().stream().findFirst();
         }
     }
 
@@ -61,43 +174,122 @@ public class CustomerDao {
      * @return Customer con direcciones cargadas o null si no existe
      */
     public Customer findByIdWithAddresses(Integer customerId) {
-        String jpql = "SELECT c FROM Customer c " +
-                "LEFT JOIN FETCH c.addresses " +
-                "WHERE c.id = :customerId";
-        TypedQuery<Customer> query = em.createQuery(jpql, Customer.class);
-        query.setParameter("customerId", customerId);
-        try {
-            return query.getSingleResult();
-        } catch (Exception e) {
-            return null;
-        }
+        return findOptionalByIdWithAddresses(customerId).orElse(null);
     }
 
     /**
      * Obtiene todos los clientes
+     * Carga la tabla entera en memoria: para exportaciones o informes usar streamAll o findPageAfter
      * @return Lista de todos los clientes
      */
     public List<Customer> findAll() {
-        String jpql = "SELECT c FROM Customer c";
-        TypedQuery<Customer> query = em.createQuery(jpql, Customer.class);
-        return query.getResultList();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.findAll")) {
+            TypedQuery<Customer> query = em.createNamedQuery("Customer.findAll", Customer.class);
+            return query.getResultList();
+        }
+    }
+
+
+    /**
+     * Recorre todos los clientes sin cargarlos a la vez en memoria.
+     * Usa un cursor JDBC de solo avance con fetchSize filas por viaje al servidor (useCursorFetch en la URL)
+     * y desconecta cada cliente del contexto de persistencia en cuanto se entrega.
+     * El Stream tiene el cursor abierto: hay que cerrarlo (try-with-resources) y no usarlo tras cerrar el EntityManager.
+     * @param fetchSize Filas que se traen del servidor en cada viaje
+     * @return Stream de clientes desconectados (sin direcciones ni pedidos cargados)
+     */
+    public Stream<Customer> streamAll(int fetchSize) {
+        Stream<Customer> customers = em.unwrap(Session.class)
+                .createNamedSelectionQuery("Customer.findAll", Customer.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .stream();
+        return customers.map(customer -> {
+            em.detach(customer);
+            return customer;
+        });
+    }
+
+    /**
+     * Igual que streamAll(int) con el tamaño de fetch por defecto
+     */
+    public Stream<Customer> streamAll() {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Aplica una acción a cada cliente recorriendo la tabla con un cursor (se encarga de cerrarlo)
+     * @param action Acción a aplicar a cada cliente
+     */
+    public void forEachCustomer(Consumer<Customer> action) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.forEachCustomer")) {
+            try (Stream<Customer> customers = streamAll()) {
+                customers.forEach(action);
+            }
+        }
+    }
+
+    /**
+     * Paginación por clave (keyset): devuelve los siguientes clientes con ID mayor que lastCustomerId.
+     * A diferencia de OFFSET, cada página cuesta lo mismo porque usa la clave primaria para saltar
+     * directamente a la primera fila. Para seguir, se pasa el ID del último cliente de la página anterior.
+     * Para recorrer toda la tabla en memoria constante, hacer em.clear() entre página y página.
+     * @param lastCustomerId ID del último cliente ya leído, o null para empezar desde el principio
+     * @param pageSize Número máximo de clientes de la página
+     * @return Página de clientes ordenados por ID (vacía al llegar al final)
+     */
+    public List<Customer> findPageAfter(Integer lastCustomerId, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.findPageAfter")) {
+            TypedQuery<Customer> query = em.createNamedQuery("Customer.findPageAfter", Customer.class);
+            query.setParameter("lastId", lastCustomerId != null ? lastCustomerId : 0);
+            query.setMaxResults(pageSize);
+            return query.getResultList();
+        }
     }
 
+    /**
+     * Página de resúmenes de clientes ordenados por nombre, sin crear entidades gestionadas
+     * @param page Número de página, empezando en 0
+     * @param pageSize Clientes por página
+     * @return Resúmenes de la página
+     */
+    public List<CustomerSummary> findSummaries(int page, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.findSummaries")) {
+            TypedQuery<CustomerSummary> query = em.createNamedQuery("Customer.findSummaries", CustomerSummary.class);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            query.setFirstResult(page * pageSize);
+            query.setMaxResults(pageSize);
+            return query.getResultList();
+        }
+    }
 
     /**
      * Actualiza un cliente existente
      * @param customer Cliente a actualizar
+     * @throws UpdateConflictException si otro usuario lo modificó desde que se leyó (versión distinta)
      */
     public void update(Customer customer) {
-        try {
-            em.getTransaction().begin();
-            em.merge(customer);
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.update")) {
+            try {
+                em.getTransaction().begin();
+                // merge cargaría el cliente de todas formas; así se sabe también el email anterior
+                Customer current = em.find(Customer.class, customer.getId());
+                String previousEmail = current != null ? current.getEmail() : null;
+                Customer merged = em.merge(customer);
+                em.getTransaction().commit();
+                customer.setVersion(merged.getVersion());
+                emailCache.invalidate(previousEmail);
+                emailCache.invalidate(customer.getEmail());
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                if (UpdateConflictException.isVersionConflict(e)) {
+                    throw new UpdateConflictException("Customer", customer.getId(), e);
+                }
+                throw new RuntimeException("Error al actualizar el cliente: " + e.getMessage());
             }
-            throw new RuntimeException("Error al actualizar el cliente: " + e.getMessage());
         }
     }
 
@@ -106,18 +298,23 @@ public class CustomerDao {
      * @param customerId ID del cliente a eliminar
      */
     public void delete(Integer customerId) {
-        try {
-            em.getTransaction().begin();
-            Customer customer = em.find(Customer.class, customerId);
-            if (customer != null) {
-                em.remove(customer);
-            }
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("CustomerDao.delete")) {
+            try {
+                em.getTransaction().begin();
+                Customer customer = em.find(Customer.class, customerId);
+                if (customer != null) {
+                    em.remove(customer);
+                }
+                em.getTransaction().commit();
+                if (customer != null) {
+                    emailCache.invalidate(customer.getEmail());
+                }
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al eliminar el cliente: " + e.getMessage());
             }
-            throw new RuntimeException("Error al eliminar el cliente: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,139 @@
+package es.fpfempa.acd.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Caché en memoria email normalizado -> ID de cliente, compartida por todos los CustomerDao.
+ * Guarda también los emails que no existen (entradas negativas) con un TTL corto, para que el login
+ * no vaya a la base de datos cada vez que alguien prueba un email desconocido.
+ * Es de Caffeine: lecturas sin bloqueo y escrituras repartidas por segmentos, acotada por tamaño.
+ * CustomerDao la invalida en create, update y delete; si aun así una entrada positiva queda
+ * desfasada (p. ej. otro proceso cambió el email), CustomerDao la detecta al cargar el cliente y la descarta.
+ * Tamaño y TTL: acd.emailCache.maxSize (10000), acd.emailCache.ttlSeconds (600), acd.emailCache.negativeTtlSeconds (30).
+ */
+public final class CustomerEmailCache {
+
+    private static final CustomerEmailCache SHARED = new CustomerEmailCache(
+            Long.getLong("acd.emailCache.maxSize", 10_000),
+            Duration.ofSeconds(Long.getLong("acd.emailCache.ttlSeconds", 600)),
+            Duration.ofSeconds(Long.getLong("acd.emailCache.negativeTtlSeconds", 30)));
+
+    // valor de las entradas negativas (los IDs reales son siempre positivos)
+    private static final Integer NOT_FOUND = -1;
+
+    private final Cache<String, Integer> ids;
+    private final LongAdder negativeHits = new LongAdder();
+    // sube con cada invalidate, de cualquier email: una consulta que empezó antes no guarda su resultado
+    private final AtomicLong generation = new AtomicLong();
+
+    public CustomerEmailCache(long maximumSize, Duration ttl, Duration negativeTtl) {
+        long ttlNanos = ttl.toNanos();
+        long negativeTtlNanos = negativeTtl.toNanos();
+        this.ids = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Integer>() {
+                    @Override
+                    public long expireAfterCreate(String email, Integer customerId, long currentTime) {
+                        return NOT_FOUND.equals(customerId) ? negativeTtlNanos : ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String email, Integer customerId, long currentTime, long currentDuration) {
+                        return expireAfterCreate(email, customerId, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String email, Integer customerId, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Instancia compartida por toda la aplicación
+     */
+    public static CustomerEmailCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Forma canónica de un email: sin espacios alrededor y en minúsculas
+     * @return Email normalizado, o null si email es null
+     */
+    public static String normalize(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Devuelve el ID del cliente con ese email, consultando loader solo si no está en la caché.
+     * La consulta se hace fuera de la caché, sin bloquear a nadie: si varios hilos piden a la vez un email
+     * que no está, cada uno hace la suya. El resultado solo se guarda si no ha habido ningún invalidate
+     * desde que empezó la consulta, así no se queda guardado un ID leído antes de un cambio. Si loader falla
+     * no se guarda nada.
+     * @param email Email normalizado
+     * @param loader Busca el ID en la base de datos
+     * @return ID del cliente, o vacío si no existe (también si se sabe por una entrada negativa)
+     */
+    public Optional<Integer> findId(String email, Function<String, Optional<Integer>> loader) {
+        Integer customerId = ids.getIfPresent(email);
+        if (customerId == null) {
+            long loadGeneration = generation.get();
+            Integer loaded = loader.apply(email).orElse(NOT_FOUND);
+            // invalidate sube la generación antes de borrar: o se ve aquí, o borra lo que se guarde
+            ids.asMap().compute(email, (key, current) -> generation.get() == loadGeneration ? loaded : current);
+            customerId = loaded;
+        } else if (NOT_FOUND.equals(customerId)) {
+            negativeHits.increment();
+        }
+        return NOT_FOUND.equals(customerId) ? Optional.empty() : Optional.of(customerId);
+    }
+
+    /**
+     * Olvida lo que se sepa de un email (tras crear, modificar o borrar el cliente)
+     * y descarta las consultas que estén en curso
+     */
+    public void invalidate(String email) {
+        if (email != null) {
+            generation.incrementAndGet();
+            ids.invalidate(normalize(email));
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        ids.invalidateAll();
+    }
+
+    public Stats stats() {
+        CacheStats stats = ids.stats();
+        return new Stats(stats.hitCount(), negativeHits.sum(), stats.missCount(), stats.evictionCount(), ids.estimatedSize());
+    }
+
+    /**
+     * Estadísticas acumuladas de la caché
+     * @param hits Aciertos (incluidos los negativos)
+     * @param negativeHits Aciertos que respondieron "no existe"
+     * @param misses Fallos (consultas a la base de datos)
+     * @param evictions Entradas expulsadas por tamaño o caducadas
+     * @param size Número aproximado de entradas
+     */
+    public record Stats(long hits, long negativeHits, long misses, long evictions, long size) {
+
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
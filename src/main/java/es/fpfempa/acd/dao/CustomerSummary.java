@@ -0,0 +1,9 @@
+package es.fpfempa.acd.dao;
+
+import java.time.Instant;
+
+/**
+ * Resumen de un cliente para listados: solo las columnas que se muestran, sin entidades gestionadas
+ */
+public record CustomerSummary(Integer id, String fullName, String email, Instant createdAt) {
+}
@@ -0,0 +1,13 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Facturación de un día (UTC) en un país, sin contar los pedidos cancelados
+ * @param country País de la dirección de envío, o null para los pedidos sin dirección
+ * @param orders Número de pedidos
+ * @param revenue Suma de total_amount de esos pedidos
+ */
+public record DailyRevenue(LocalDate day, String country, long orders, BigDecimal revenue) {
+}
@@ -0,0 +1,11 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Pedidos de un día (UTC) con un estado
+ * @param amount Suma de total_amount de esos pedidos
+ */
+public record DailyStatusCount(LocalDate day, String status, long orders, BigDecimal amount) {
+}
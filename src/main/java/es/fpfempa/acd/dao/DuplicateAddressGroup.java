@@ -0,0 +1,14 @@
+package es.fpfempa.acd.dao;
+
+/**
+ * Direcciones de un cliente que tienen la misma huella y por tanto son la misma dirección
+ * @param keeperId ID de la más antigua, que es la que se conserva
+ * @param count Número de direcciones del grupo, contando la que se conserva
+ * @param defaultCount Cuántas de ellas están marcadas como predeterminadas
+ */
+public record DuplicateAddressGroup(Integer customerId, String fingerprint, Integer keeperId, long count, long defaultCount) {
+
+    public boolean anyDefault() {
+        return defaultCount > 0;
+    }
+}
@@ -0,0 +1,149 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.audit.ChangeEvent;
+import es.fpfempa.acd.audit.ChangeEventLog;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.ImportCheckpoint;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.metrics.DaoMetrics;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Escrituras y lecturas masivas de la importación de ficheros (ver es.fpfempa.acd.importer.BulkImporter)
+ */
+public class ImportDao {
+
+    // clientes por consulta al buscar huellas de direcciones (limita el tamaño de la lista IN)
+    private static final int IN_LIST_SIZE = 500;
+
+    private EntityManager em;
+
+    public ImportDao(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Bloques de una importación que ya están en la BD
+     * @param job Identificador de la importación
+     * @return Posiciones en el fichero de los bloques confirmados
+     */
+    public Set<Long> findCommittedOffsets(String job) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ImportDao.findCommittedOffsets")) {
+            return new HashSet<>(em.createNamedQuery("ImportCheckpoint.findOffsetsByJob", Long.class)
+                    .setParameter("job", job)
+                    .getResultList());
+        }
+    }
+
+    /**
+     * Recorre el email y el ID de todos los clientes con un cursor, sin cargar entidades
+     * @param action Recibe cada par (email, ID)
+     */
+    public void forEachCustomerEmail(BiConsumer<String, Integer> action) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ImportDao.forEachCustomerEmail")) {
+            try (Stream<Object[]> rows = em.unwrap(Session.class)
+                    .createNamedSelectionQuery("Customer.findAllEmailIds", Object[].class)
+                    .setFetchSize(CustomerDao.DEFAULT_FETCH_SIZE)
+                    .stream()) {
+                rows.forEach(row -> action.accept((String) row[0], (Integer) row[1]));
+            }
+        }
+    }
+
+    /**
+     * Huellas de todas las direcciones de los clientes indicados (ver AddressNormalizer)
+     */
+    public List<AddressFingerprint> findAddressFingerprints(Collection<Integer> customerIds) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ImportDao.findAddressFingerprints")) {
+            List<Integer> ids = new ArrayList<>(customerIds);
+            List<AddressFingerprint> fingerprints = new ArrayList<>();
+            if (ids.isEmpty()) {
+                return fingerprints;
+            }
+            // Los clientes importados juntos tienen IDs casi seguidos: un BETWEEN por el índice cuesta mucho menos
+            // que varias listas IN de cientos de parámetros, que Hibernate vuelve a traducir a SQL en cada llamada
+            int first = Collections.min(ids);
+            int last = Collections.max(ids);
+            if ((long) last - first < 2L * ids.size()) {
+                Set<Integer> wanted = new HashSet<>(ids);
+                for (AddressFingerprint address : em.createNamedQuery("Address.findFingerprintsByCustomerRange", AddressFingerprint.class)
+                        .setParameter("firstCustomerId", first)
+                        .setParameter("lastCustomerId", last)
+                        .getResultList()) {
+                    if (wanted.contains(address.customerId())) {
+                        fingerprints.add(address);
+                    }
+                }
+                return fingerprints;
+            }
+            for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+                fingerprints.addAll(em.createNamedQuery("Address.findFingerprintsByCustomerIds", AddressFingerprint.class)
+                        .setParameter("customerIds", ids.subList(from, Math.min(ids.size(), from + IN_LIST_SIZE)))
+                        .getResultList());
+            }
+            return fingerprints;
+        }
+    }
+
+    /**
+     * Inserta las entidades de un bloque y su punto de control en una sola transacción, con lotes JDBC.
+     * Cada batchSize entidades se hace flush y clear, como en los createAll de los DAO.
+     * No pasa por la caché de segundo nivel: lo importado no se va a leer enseguida.
+     * Las direcciones y los pedidos quedan en el registro de cambios (CREATE) como los que crean AddressDao y OrderDao.
+     * @param checkpoint Punto de control del bloque
+     * @param rows Una función por fila que construye la entidad; recibe el EntityManager para usar getReference
+     * @param batchSize Número de INSERT por lote
+     */
+    public void persistChunk(ImportCheckpoint checkpoint, List<Function<EntityManager, ?>> rows, int batchSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ImportDao.persistChunk")) {
+            Session session = em.unwrap(Session.class);
+            Integer previousBatchSize = session.getJdbcBatchSize();
+            CacheMode previousCacheMode = session.getCacheMode();
+            List<ChangeEvent> events = new ArrayList<>();
+            try {
+                session.setJdbcBatchSize(batchSize);
+                session.setCacheMode(CacheMode.IGNORE);
+                em.getTransaction().begin();
+                int count = 0;
+                for (Function<EntityManager, ?> row : rows) {
+                    Object entity = row.apply(em);
+                    em.persist(entity);
+                    if (entity instanceof Address address) {
+                        events.add(ChangeEvent.ofAddress("CREATE", address));
+                    } else if (entity instanceof Order order) {
+                        events.add(ChangeEvent.of("Order", order.getId(), "CREATE",
+                                "customer=" + order.getCustomer().getId() + " total=" + order.getTotalAmount()));
+                    }
+                    if (++count % batchSize == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+                em.persist(checkpoint);
+                em.getTransaction().commit();
+                em.clear();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al importar el bloque " + checkpoint.getId() + ": " + e.getMessage());
+            } finally {
+                session.setJdbcBatchSize(previousBatchSize);
+                session.setCacheMode(previousCacheMode);
+            }
+            events.forEach(ChangeEventLog::record);
+        }
+    }
+}
@@ -1,12 +1,45 @@
 package es.fpfempa.acd.dao;
 
+import es.fpfempa.acd.audit.ChangeEvent;
+import es.fpfempa.acd.audit.ChangeEventLog;
 import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Customer;
 import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.entities.OrderItem;
+import es.fpfempa.acd.entities.Payment;
+import es.fpfempa.acd.entities.Product;
+import es.fpfempa.acd.entities.Shipment;
+import es.fpfempa.acd.metrics.DaoMetrics;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 public class OrderDao {
 
+    // tamaño máximo de cada lista IN al buscar muchos pedidos a la vez
+    public static final int MAX_IDS_PER_QUERY = 500;
+
+    // clave de inicio del historial de un cliente: posterior a cualquier pedido y válida en DATETIME y TIMESTAMP de MySQL
+    private static final Instant HISTORY_START_DATE = Instant.parse("9999-12-31T00:00:00Z");
+
     private EntityManager em;
 
     // Constructor: recibe el EntityManager desde Main
@@ -20,60 +53,601 @@ public class OrderDao {
      * @return Order o null si no existe
      */
     public Order findById(Integer orderId) {
-        return em.find(Order.class, orderId);
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.findById")) {
+            return em.find(Order.class, orderId);
+        }
+    }
+
+    /**
+     * Busca un pedido por ID y carga Customer, Address, Payment y Shipment en una sola consulta
+     * (evita LazyInitializationException). Si no existe devuelve vacío; los errores de la base de datos se propagan.
+     * @param orderId ID del pedido
+     * @return Pedido con relaciones cargadas, o vacío si no existe
+     */
+    public Optional<Order> findOptionalByIdConDetalles(Integer orderId) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.findOptionalByIdConDetalles")) {
+            // JOIN FETCH porque como están en lazy, fetch obliga a cargar customer y la dirección antes de que cierre la conexión;
+            // pago y envío no son lazy y sin el JOIN se cargarían con una consulta más cada uno
+            TypedQuery<Order> query = em.createNamedQuery("Order.findByIdConDetalles", Order.class);
+            query.setParameter("orderId", orderId);
+            query.setMaxResults(1);
+            return query.getResultList().stream().findFirst();
+        }
     }
 
     /**
-     * Busca un pedido por ID y carga Customer y Address (evita LazyInitializationException)
+     * Busca un pedido por ID y carga Customer, Address, Payment y Shipment (evita LazyInitializationException)
      * @param orderId ID del pedido
      * @return Order con relaciones cargadas o null si no existe
      */
     public Order findByIdConDetalles(Integer orderId) {
-        String jpql = "SELECT o FROM Order o " +
-                // Fetch porque como está en lazy, fetch le obliga a cargar customer antes de que cierre la conexión
-                "JOIN FETCH o.customer " +
-                "LEFT JOIN FETCH o.shippingAddress " +
-                "WHERE o.id = :orderId";
+        return findOptionalByIdConDetalles(orderId).orElse(null);
+    }
+
+    /**
+     * Busca varios pedidos a la vez cargando Customer, Address, Payment y Shipment, en una consulta por cada
+     * bloque de MAX_IDS_PER_QUERY IDs (en vez de una o más consultas por pedido)
+     * @param orderIds IDs de los pedidos, en el orden en que se quieren recibir
+     * @return Pedidos encontrados en el orden pedido y lista de IDs que no existen
+     */
+    public OrderLookupResult findByIdsConDetalles(Collection<Integer> orderIds) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.findByIdsConDetalles")) {
+            // sin repetidos y conservando el orden
+            List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+            if (distinctIds.contains(null)) {
+                throw new IllegalArgumentException("La lista de IDs de pedido contiene un null");
+            }
 
-        TypedQuery<Order> query = em.createQuery(jpql, Order.class);
-        query.setParameter("orderId", orderId);
+            Map<Integer, Order> ordersById = new HashMap<>();
+            for (int from = 0; from < distinctIds.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = distinctIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, distinctIds.size()));
+                TypedQuery<Order> query = em.createNamedQuery("Order.findByIdsConDetalles", Order.class);
+                query.setParameter("orderIds", chunk);
+                for (Order order : query.getResultList()) {
+                    ordersById.put(order.getId(), order);
+                }
+            }
 
-        try {
-            return query.getSingleResult();
-        } catch (Exception e) {
-            return null; // Si no encuentra el pedido
+            return toLookupResult(orderIds, ordersById);
+        }
+    }
+
+    /**
+     * Carga el pedido completo (agregado): cliente, empleado, dirección, pago, envío,
+     * líneas, productos y categorías de los productos, siempre con 2 consultas:
+     * una para el pedido y sus relaciones a uno y otra para las líneas con sus productos.
+     * @param orderId ID del pedido
+     * @return Order con todo cargado o null si no existe (también si orderId es null)
+     */
+    public Order findAggregateById(Integer orderId) {
+        if (orderId == null) {
+            return null;
         }
+        List<Order> orders = findAggregatesByIds(List.of(orderId)).orders();
+        return orders.isEmpty() ? null : orders.get(0);
+    }
+
+    /**
+     * Carga varios pedidos completos con 2 consultas por cada bloque de MAX_IDS_PER_QUERY IDs,
+     * sin importar cuántas líneas tenga cada pedido
+     * @param orderIds IDs de los pedidos, en el orden en que se quieren recibir
+     * @return Pedidos encontrados en el orden pedido y lista de IDs que no existen
+     */
+    public OrderLookupResult findAggregatesByIds(Collection<Integer> orderIds) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.findAggregatesByIds")) {
+            List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+            if (distinctIds.contains(null)) {
+                throw new IllegalArgumentException("La lista de IDs de pedido contiene un null");
+            }
+
+            Map<Integer, Order> ordersById = new HashMap<>();
+            for (int from = 0; from < distinctIds.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = distinctIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, distinctIds.size()));
+                // 1) el pedido con sus relaciones a uno (incluidos pago y envío)
+                List<Order> found = em.createNamedQuery("Order.findAggregatesByIds", Order.class)
+                        .setParameter("orderIds", chunk)
+                        .getResultList();
+                if (found.isEmpty()) {
+                    continue;
+                }
+                List<Integer> foundIds = found.stream().map(Order::getId).toList();
+                // 2) líneas con producto y categorías; los pedidos ya están en el contexto, así que solo se rellena la colección
+                em.createNamedQuery("Order.fetchItemsByIds", Order.class)
+                        .setParameter("orderIds", foundIds)
+                        .getResultList();
+                for (Order order : found) {
+                    ordersById.put(order.getId(), order);
+                }
+            }
+            return toLookupResult(orderIds, ordersById);
+        }
+    }
+
+    /**
+     * Página de resúmenes de pedidos (más recientes primero) para listados e informes.
+     * Solo lee las columnas del resumen y no crea entidades, así que no hay nada que vigilar en el contexto de persistencia.
+     * @param page Número de página, empezando en 0
+     * @param pageSize Pedidos por página
+     * @return Resúmenes de la página
+     */
+    public List<OrderSummary> findSummaries(int page, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.findSummaries")) {
+            TypedQuery<OrderSummary> query = em.createNamedQuery("Order.findSummaries", OrderSummary.class);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            query.setFirstResult(page * pageSize);
+            query.setMaxResults(pageSize);
+            return query.getResultList();
+        }
+    }
+
+    /**
+     * Historial de pedidos de un cliente, de más reciente a más antiguo, paginado por claves (keyset).
+     * Cada página empieza justo después de la última entrada de la anterior con un rango sobre
+     * idx_orders_customer_date, así que la página 1000 cuesta lo mismo que la primera
+     * (con OFFSET habría que leer y descartar todos los pedidos anteriores).
+     * Dos pedidos con la misma fecha se ordenan por ID, así que no se salta ni se repite ninguno.
+     * @param last Última entrada de la página anterior, o null para la primera página
+     * @param pageSize Número máximo de pedidos de la página
+     * @return Página del historial (vacía al llegar al final)
+     */
+    public List<OrderHistoryEntry> findHistoryPageAfter(Integer customerId, OrderHistoryEntry last, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.findHistoryPageAfter")) {
+            // la primera página es la misma consulta desde una clave mayor que cualquier pedido:
+            // así también va por rango en el índice (sin rango, H2 elige el de la clave ajena y ordena todo el historial)
+            TypedQuery<OrderHistoryEntry> query = em.createNamedQuery("Order.findHistoryPageAfter", OrderHistoryEntry.class);
+            query.setParameter("customerId", customerId);
+            query.setParameter("lastDate", last != null ? last.orderDate() : HISTORY_START_DATE);
+            query.setParameter("lastId", last != null ? last.id() : Integer.MAX_VALUE);
+            query.setMaxResults(pageSize);
+            return query.getResultList();
+        }
+    }
+
+    /**
+     * Recorre todos los pedidos para exportarlos, con una sola consulta y un cursor de solo avance:
+     * en memoria solo está el bloque de fetchSize filas que se acaba de traer (useCursorFetch en la URL de MySQL).
+     * No crea entidades, así que el contexto de persistencia no crece.
+     * El Stream tiene el cursor abierto: hay que cerrarlo (try-with-resources) antes de cerrar el EntityManager.
+     * @param fetchSize Filas que se traen del servidor en cada viaje
+     * @return Filas ordenadas por pedido; las líneas de un mismo pedido salen seguidas
+     */
+    public Stream<OrderExportRow> streamExportRows(int fetchSize) {
+        return em.unwrap(Session.class)
+                .createNamedSelectionQuery("Order.exportRows", OrderExportRow.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .stream();
     }
 
     /**
      * Actualiza un pedido existente (para cambiar la dirección de envío)
      * Estrategia: obtener el pedido gestionado y la dirección gestionada, asignar y commit.
+     * Si el pedido trae versión y otro usuario lo ha cambiado desde que se leyó, lanza UpdateConflictException;
+     * si todo va bien, el pedido recibido se queda con la nueva versión.
      */
     public void update(Order order) {
-        try {
-            em.getTransaction().begin();
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.update")) {
+            Integer previousAddressId;
+            Integer addressId;
+            try {
+                em.getTransaction().begin();
+
+                // 1) Pedido gestionado, comprobando que sigue en la versión que se leyó
+                Order managedOrder = em.find(Order.class, order.getId());
+                if (managedOrder == null) {
+                    throw new IllegalArgumentException("Pedido no encontrado id=" + order.getId());
+                }
+                if (order.getVersion() != null && !order.getVersion().equals(managedOrder.getVersion())) {
+                    throw new UpdateConflictException("Order", order.getId(), null);
+                }
+
+                // 2) Dirección gestionada (si viene una)
+                previousAddressId = managedOrder.getShippingAddress() != null ? managedOrder.getShippingAddress().getId() : null;
+                if (order.getShippingAddress() != null && order.getShippingAddress().getId() != null) {
+                    Address managedAddr = em.getReference(Address.class, order.getShippingAddress().getId());
+                    managedOrder.setShippingAddress(managedAddr);
+                } else {
+                    managedOrder.setShippingAddress(null);
+                }
+
+                // 3) Commit (flush implícito; el UPDATE lleva "WHERE version = ?" por si alguien se cuela ahora)
+                em.getTransaction().commit();
+                order.setVersion(managedOrder.getVersion());
+                addressId = managedOrder.getShippingAddress() != null ? managedOrder.getShippingAddress().getId() : null;
+            } catch (UpdateConflictException e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw e;
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                if (UpdateConflictException.isVersionConflict(e)) {
+                    throw new UpdateConflictException("Order", order.getId(), e);
+                }
+                throw new RuntimeException("Error al actualizar el pedido: " + e.getMessage(), e);
+            }
+            ChangeEventLog.record(ChangeEvent.ofShippingAddress(order.getId(), previousAddressId, addressId));
+        }
+    }
+
+    /**
+     * Crea un pedido PENDING con sus líneas y descuenta el stock, todo en una transacción:
+     * o se reservan todas las unidades y se guarda el pedido, o no cambia nada (ver placeOrders)
+     * @param lines Líneas del pedido; las de un mismo producto se suman
+     * @return Pedido creado (desconectado, con su ID y su total)
+     * @throws OutOfStockException si algún producto no tiene stock suficiente o no está activo
+     * @throws UpdateConflictException si la BD abortó la transacción por un bloqueo (espera agotada o interbloqueo)
+     */
+    public Order placeOrder(Integer customerId, Integer shippingAddressId, List<OrderLine> lines) {
+        return placeOrder(new OrderRequest(customerId, shippingAddressId, lines));
+    }
+
+    /**
+     * Crea un pedido con sus líneas y, si los trae, su pago y su envío, y descuenta el stock en una transacción
+     * @return Pedido creado (desconectado, con su ID y su total)
+     * @throws OutOfStockException si algún producto no tiene stock suficiente o no está activo
+     * @throws IllegalArgumentException si la dirección no es del cliente o un descuento supera el importe de su línea
+     * @throws UpdateConflictException si la BD abortó la transacción por un bloqueo (espera agotada o interbloqueo)
+     */
+    public Order placeOrder(OrderRequest request) {
+        OrderPlacement placement = placeOrders(List.of(request)).get(0);
+        if (!placement.placed()) {
+            throw placement.failure();
+        }
+        return placement.order();
+    }
+
+    /**
+     * Crea varios pedidos con un solo commit. Los que no se pueden crear (sin stock, dirección de otro cliente,
+     * descuento mayor que la línea) se descartan dentro de la transacción sin afectar a los demás.
+     * Orden de los pasos:
+     * 1) persist de pedidos, líneas, pagos y envíos antes de empezar la transacción. No lanza SQL salvo para reservar IDs,
+     *    que el generador de tabla hace con otra conexión del pool: si se pidiera con la transacción ya abierta,
+     *    con todas las conexiones en uso y todos los hilos esperando al generador, nadie podría avanzar;
+     * 2) reserva del stock (ProductDao.reserveStock, que bloquea el producto con SELECT ... FOR UPDATE) por ID
+     *    de producto ascendente para todo el lote: todas las transacciones bloquean las filas de products en el mismo
+     *    orden y no pueden quedar esperándose en círculo. Si varios pedidos llevan el mismo producto se intenta primero
+     *    reservar la suma y, si no llega, pedido a pedido por orden de llegada. Un pedido descartado devuelve lo que ya había reservado
+     *    (filas que esta transacción ya tiene bloqueadas) y sus entidades se quitan antes del commit;
+     * 3) precios, los del momento de reservar, y totales: precio * unidades - descuento de cada línea;
+     *    el pago, si lo hay, es por el total;
+     * 4) los INSERT y los UPDATE del stock, en lotes JDBC con un flush justo antes del commit. La clave ajena
+     *    de order_items pone en MySQL un bloqueo compartido sobre la fila del producto; como la transacción ya la tiene
+     *    en exclusiva desde el paso 2, dos pedidos del mismo producto no pueden quedar esperándose el uno al otro.
+     * Si se descartan todos, rollback.
+     * @return Un resultado por petición, en el mismo orden
+     * @throws UpdateConflictException si la BD abortó la transacción por un bloqueo: no se ha creado ninguno
+     * @throws OrdersNotPlacedException si falló otra cosa antes del commit: tampoco se ha creado ninguno
+     * @throws RuntimeException si falló el propio commit: no se sabe si los pedidos quedaron guardados
+     */
+    public List<OrderPlacement> placeOrders(List<OrderRequest> requests) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.placeOrders")) {
+            Instant now = Instant.now();
+            List<PendingOrder> pending = new ArrayList<>(requests.size());
+            Integer lockingProductId = null;
+            boolean committing = false;
+            try {
+                // 1) Entidades, con importes a cero hasta el paso 3 y aún sin transacción
+                for (OrderRequest request : requests) {
+                    pending.add(persistPending(request, now));
+                }
+
+                em.getTransaction().begin();
+                ProductDao productDao = new ProductDao(em);
+                for (PendingOrder order : pending) {
+                    Integer addressId = order.request.shippingAddressId();
+                    if (addressId == null) {
+                        continue;
+                    }
+                    Address address = em.find(Address.class, addressId);
+                    if (address == null || !address.getCustomer().getId().equals(order.request.customerId())) {
+                        discard(order, new IllegalArgumentException("La dirección " + addressId + " no es del cliente "
+                                + order.request.customerId()), productDao);
+                    } else {
+                        order.order.setShippingAddress(address);
+                    }
+                }
+
+                // 2) Stock, por producto en orden de ID (TreeMap) y en cada producto por orden de llegada
+                Map<Integer, List<PendingOrder>> byProduct = new TreeMap<>();
+                for (PendingOrder order : pending) {
+                    if (order.failure == null) {
+                        for (Integer productId : order.items.keySet()) {
+                            byProduct.computeIfAbsent(productId, id -> new ArrayList<>()).add(order);
+                        }
+                    }
+                }
+                for (Map.Entry<Integer, List<PendingOrder>> entry : byProduct.entrySet()) {
+                    Integer productId = entry.getKey();
+                    lockingProductId = productId;
+                    List<PendingOrder> orders = entry.getValue();
+                    orders.removeIf(order -> order.failure != null);
+                    if (orders.size() > 1) {
+                        int quantity = orders.stream().mapToInt(order -> order.items.get(productId).getQuantity()).sum();
+                        if (productDao.reserveStock(productId, quantity)) {
+                            orders.forEach(order -> order.reserved.add(productId));
+                            continue;
+                        }
+                    }
+                    for (PendingOrder order : orders) {
+                        int quantity = order.items.get(productId).getQuantity();
+                        if (productDao.reserveStock(productId, quantity)) {
+                            order.reserved.add(productId);
+                        } else {
+                            discard(order, new OutOfStockException(productId, quantity), productDao);
+                        }
+                    }
+                }
+                lockingProductId = null;
+
+                // 3) Precios y totales; los INSERT salen con el commit
+                Map<Integer, BigDecimal> prices = productDao.findPrices(byProduct.keySet());
+                for (PendingOrder order : pending) {
+                    if (order.failure == null) {
+                        priceOrder(order, prices, productDao);
+                    }
+                }
+
+                if (pending.stream().anyMatch(order -> order.failure == null)) {
+                    // los INSERT salen aquí: un fallo en ellos aún deja la transacción sin confirmar
+                    em.flush();
+                    committing = true;
+                    em.getTransaction().commit();
+                } else {
+                    em.getTransaction().rollback();
+                }
+                em.clear();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                // los pedidos se persistieron fuera de la transacción: que no salgan en otro commit
+                em.clear();
+                if (committing) {
+                    throw new RuntimeException("Error al confirmar los pedidos, no se sabe si se guardaron: " + e.getMessage(), e);
+                }
+                if (UpdateConflictException.isLockConflict(e)) {
+                    throw new UpdateConflictException("Product", lockingProductId, e);
+                }
+                throw new OrdersNotPlacedException(e);
+            }
+            List<OrderPlacement> placements = new ArrayList<>(pending.size());
+            for (PendingOrder order : pending) {
+                if (order.failure == null) {
+                    ChangeEventLog.record(ChangeEvent.of("Order", order.order.getId(), "CREATE",
+                            "customer=" + order.request.customerId() + " total=" + order.order.getTotalAmount()));
+                }
+                placements.add(new OrderPlacement(order.request, order.failure == null ? order.order : null, order.failure));
+            }
+            return placements;
+        }
+    }
+
+    // persist de un pedido del lote: líneas (una por producto), pago y envío
+    private PendingOrder persistPending(OrderRequest request, Instant now) {
+        BigDecimal zero = BigDecimal.ZERO.setScale(2);
+        Order order = new Order();
+        order.setCustomer(em.getReference(Customer.class, request.customerId()));
+        order.setOrderDate(now);
+        order.setStatus(request.initialStatus());
+        order.setTotalAmount(zero);
+        em.persist(order);
 
-            // 1) Pedido gestionado
-            Order managedOrder = em.find(Order.class, order.getId());
-            if (managedOrder == null) {
-                throw new IllegalArgumentException("Pedido no encontrado id=" + order.getId());
+        PendingOrder pending = new PendingOrder(request, order);
+        for (OrderLine line : request.lines()) {
+            OrderItem item = pending.items.get(line.productId());
+            if (item == null) {
+                item = new OrderItem();
+                item.setOrder(order);
+                item.setProduct(em.getReference(Product.class, line.productId()));
+                item.setQuantity(0);
+                item.setUnitPrice(zero);
+                item.setDiscount(zero);
+                pending.items.put(line.productId(), item);
+                order.getOrderItems().add(item);
             }
+            item.setQuantity(item.getQuantity() + line.quantity());
+            item.setDiscount(item.getDiscount().add(line.discount()).setScale(2, RoundingMode.HALF_UP));
+        }
+        pending.items.values().forEach(em::persist);
+
+        if (request.payment() != null) {
+            Payment payment = new Payment();
+            payment.setOrder(order);
+            payment.setMethod(request.payment().method());
+            payment.setStatus(request.payment().status());
+            payment.setPaidAt(now);
+            payment.setAmount(zero);
+            em.persist(payment);
+            order.setPayment(payment);
+        }
+        if (request.shipment() != null) {
+            Shipment shipment = new Shipment();
+            shipment.setOrder(order);
+            shipment.setCarrier(request.shipment().carrier());
+            shipment.setTrackingNo(request.shipment().trackingNo());
+            shipment.setShippedAt(now);
+            shipment.setStatus("SHIPPED");
+            em.persist(shipment);
+            order.setShipment(shipment);
+        }
+        return pending;
+    }
 
-            // 2) Dirección gestionada (si viene una)
-            if (order.getShippingAddress() != null && order.getShippingAddress().getId() != null) {
-                Address managedAddr = em.getReference(Address.class, order.getShippingAddress().getId());
-                managedOrder.setShippingAddress(managedAddr);
-            } else {
-                managedOrder.setShippingAddress(null);
+    // pone los precios y el total; si un descuento es mayor que el importe de su línea se descarta el pedido
+    private void priceOrder(PendingOrder pending, Map<Integer, BigDecimal> prices, ProductDao productDao) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Integer, OrderItem> entry : pending.items.entrySet()) {
+            OrderItem item = entry.getValue();
+            item.setUnitPrice(prices.get(entry.getKey()));
+            BigDecimal amount = item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())).subtract(item.getDiscount());
+            if (amount.signum() < 0) {
+                discard(pending, new IllegalArgumentException("El descuento del producto " + entry.getKey()
+                        + " supera el importe de la línea"), productDao);
+                return;
             }
+            total = total.add(amount);
+        }
+        pending.order.setTotalAmount(total);
+        if (pending.order.getPayment() != null) {
+            pending.order.getPayment().setAmount(total);
+        }
+    }
+
+    // saca un pedido del lote: devuelve el stock que ya tenía reservado y sus entidades no llegan a insertarse
+    private void discard(PendingOrder pending, RuntimeException failure, ProductDao productDao) {
+        pending.failure = failure;
+        for (Integer productId : pending.reserved) {
+            productDao.releaseStock(productId, pending.items.get(productId).getQuantity());
+        }
+        pending.reserved.clear();
+        Order order = pending.order;
+        if (order.getPayment() != null) {
+            em.remove(order.getPayment());
+        }
+        if (order.getShipment() != null) {
+            em.remove(order.getShipment());
+        }
+        pending.items.values().forEach(em::remove);
+        em.remove(order);
+    }
+
+    // pedido de un lote mientras se crea
+    private static final class PendingOrder {
+        final OrderRequest request;
+        final Order order;
+        final Map<Integer, OrderItem> items = new TreeMap<>();
+        final List<Integer> reserved = new ArrayList<>();
+        RuntimeException failure;
+
+        PendingOrder(OrderRequest request, Order order) {
+            this.request = request;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Cambia la dirección de envío con un único UPDATE, sin cargar el pedido ni la dirección.
+     * El mismo UPDATE comprueba que el pedido es del cliente y que la dirección también lo es,
+     * e incrementa la versión del pedido (bloqueo optimista) como haría update().
+     * @param orderId ID del pedido
+     * @param customerId ID del cliente dueño del pedido y de la dirección
+     * @param addressId ID de la nueva dirección, o null para dejar el pedido sin dirección
+     * @return Filas modificadas: 1 si se cambió, 0 si el pedido o la dirección no existen o no son de ese cliente
+     */
+    public int updateShippingAddress(Integer orderId, Integer customerId, Integer addressId) {
+        return updateShippingAddress(List.of(orderId), customerId, addressId);
+    }
+
+    /**
+     * Igual que updateShippingAddress(Integer, Integer, Integer) para muchos pedidos del mismo cliente a la vez
+     * (un UPDATE por cada bloque de MAX_IDS_PER_QUERY IDs, todo en una transacción)
+     * @return Número de pedidos modificados
+     */
+    public int updateShippingAddress(Collection<Integer> orderIds, Integer customerId, Integer addressId) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.updateShippingAddress")) {
+            String queryName = addressId != null ? "Order.updateShippingAddress" : "Order.clearShippingAddress";
+            List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+            // pedido -> dirección anterior, de los pedidos del cliente (bloqueados hasta el commit)
+            Map<Integer, Integer> previous = new LinkedHashMap<>();
+            int updated = 0;
+            try {
+                em.getTransaction().begin();
+                for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                    List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+                    em.createNamedQuery("Order.lockShippingAddresses", Object[].class)
+                            .setParameter("orderIds", chunk)
+                            .setParameter("customerId", customerId)
+                            .getResultList()
+                            .forEach(row -> previous.put((Integer) row[0], (Integer) row[1]));
+                    Query query = em.createNamedQuery(queryName);
+                    query.setParameter("orderIds", chunk);
+                    query.setParameter("customerId", customerId);
+                    if (addressId != null) {
+                        query.setParameter("address", em.getReference(Address.class, addressId));
+                        query.setParameter("addressId", addressId);
+                    }
+                    updated += query.executeUpdate();
+                }
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al actualizar la dirección de los pedidos: " + e.getMessage(), e);
+            }
+            // si la dirección no es del cliente no se cambia ninguno; si lo es, todos los bloqueados
+            if (updated > 0) {
+                recordShippingAddressChanges(previous, addressId);
+            }
+            return updated;
+        }
+    }
+
+    /**
+     * Pasa todos los pedidos de un cliente que van a una dirección a otra dirección suya (p. ej. cuando se muda)
+     * con un único UPDATE
+     * @param customerId ID del cliente
+     * @param fromAddressId Dirección actual de los pedidos
+     * @param toAddressId Nueva dirección; debe ser del mismo cliente
+     * @return Número de pedidos modificados (0 si la nueva dirección no es del cliente)
+     */
+    public int reassignShippingAddress(Integer customerId, Integer fromAddressId, Integer toAddressId) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("OrderDao.reassignShippingAddress")) {
+            Map<Integer, Integer> previous = new LinkedHashMap<>();
+            int updated;
+            try {
+                em.getTransaction().begin();
+                em.createNamedQuery("Order.lockByShippingAddress", Integer.class)
+                        .setParameter("customerId", customerId)
+                        .setParameter("fromAddressId", fromAddressId)
+                        .getResultList()
+                        .forEach(orderId -> previous.put(orderId, fromAddressId));
+                updated = em.createNamedQuery("Order.reassignShippingAddress")
+                        .setParameter("toAddress", em.getReference(Address.class, toAddressId))
+                        .setParameter("toAddressId", toAddressId)
+                        .setParameter("fromAddressId", fromAddressId)
+                        .setParameter("customerId", customerId)
+                        .executeUpdate();
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al reasignar la dirección de los pedidos: " + e.getMessage(), e);
+            }
+            if (updated > 0) {
+                recordShippingAddressChanges(previous, toAddressId);
+            }
+            return updated;
+        }
+    }
+
+    // un evento SHIPPING_ADDRESS por pedido (pedido -> dirección anterior, null si no tenía) con la anterior y la nueva;
+    // los que ya iban a esa dirección no cambian y no se registran
+    private static void recordShippingAddressChanges(Map<Integer, Integer> previous, Integer addressId) {
+        previous.forEach((orderId, previousAddressId) -> {
+            if (!Objects.equals(previousAddressId, addressId)) {
+                ChangeEventLog.record(ChangeEvent.ofShippingAddress(orderId, previousAddressId, addressId));
+            }
+        });
+    }
 
-            // 3) Commit (flush implícito)
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+    // coloca los pedidos encontrados en el orden en que se pidieron y anota los que faltan
+    private static OrderLookupResult toLookupResult(Collection<Integer> orderIds, Map<Integer, Order> ordersById) {
+        List<Order> orders = new ArrayList<>(orderIds.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer orderId : orderIds) {
+            Order order = ordersById.get(orderId);
+            if (order != null) {
+                orders.add(order);
+            } else if (!missingIds.contains(orderId)) {
+                missingIds.add(orderId);
             }
-            throw new RuntimeException("Error al actualizar el pedido: " + e.getMessage(), e);
         }
+        return new OrderLookupResult(orders, missingIds);
     }
 }
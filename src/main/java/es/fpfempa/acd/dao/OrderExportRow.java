@@ -0,0 +1,17 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Fila de la exportación de pedidos: un pedido con su cliente, dirección, pago y envío, y una de sus líneas.
+ * Los campos de lo que el pedido no tenga (dirección, pago, envío o líneas) son null.
+ */
+public record OrderExportRow(Integer orderId, Instant orderDate, String status, BigDecimal totalAmount,
+                             Integer customerId, String customerEmail, String customerName,
+                             String shippingLine1, String shippingCity, String shippingCountry,
+                             String paymentMethod, BigDecimal paymentAmount, String paymentStatus, Instant paidAt,
+                             String carrier, String trackingNo, String shipmentStatus, Instant shippedAt,
+                             Integer itemId, String productSku, String productName,
+                             Integer quantity, BigDecimal unitPrice, BigDecimal discount) {
+}
@@ -0,0 +1,12 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Pedido en el historial de un cliente: solo lo que se muestra, sin entidades gestionadas.
+ * Para pedir la página siguiente se pasa la última entrada de la actual (OrderDao.findHistoryPageAfter)
+ * @param city Ciudad de la dirección de envío, o null si el pedido no tiene
+ */
+public record OrderHistoryEntry(Integer id, Instant orderDate, String status, BigDecimal totalAmount, String city) {
+}
@@ -0,0 +1,29 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+
+/**
+ * Línea de un pedido nuevo: qué producto, cuántas unidades y el descuento de la línea entera
+ * (el precio lo pone la BD al crear el pedido)
+ */
+public record OrderLine(Integer productId, int quantity, BigDecimal discount) {
+
+    public OrderLine {
+        if (productId == null) {
+            throw new IllegalArgumentException("La línea de pedido no tiene producto");
+        }
+        if (quantity < 1) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que 0 (producto " + productId + ")");
+        }
+        if (discount == null || discount.signum() < 0) {
+            throw new IllegalArgumentException("El descuento no puede ser negativo (producto " + productId + ")");
+        }
+    }
+
+    /**
+     * Línea sin descuento
+     */
+    public OrderLine(Integer productId, int quantity) {
+        this(productId, quantity, BigDecimal.ZERO);
+    }
+}
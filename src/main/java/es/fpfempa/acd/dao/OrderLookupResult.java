@@ -0,0 +1,17 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.entities.Order;
+
+import java.util.List;
+
+/**
+ * Resultado de buscar varios pedidos a la vez
+ * @param orders Pedidos encontrados, en el mismo orden en que se pidieron
+ * @param missingIds IDs pedidos que no existen en la BD
+ */
+public record OrderLookupResult(List<Order> orders, List<Integer> missingIds) {
+
+    public boolean allFound() {
+        return missingIds.isEmpty();
+    }
+}
@@ -0,0 +1,15 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.entities.Order;
+
+/**
+ * Resultado de un pedido dentro de un lote (OrderDao.placeOrders): el pedido creado o el motivo por el que se descartó
+ * @param order Pedido creado (desconectado), o null si se descartó
+ * @param failure OutOfStockException o IllegalArgumentException si se descartó, o null
+ */
+public record OrderPlacement(OrderRequest request, Order order, RuntimeException failure) {
+
+    public boolean placed() {
+        return failure == null;
+    }
+}
@@ -0,0 +1,51 @@
+package es.fpfempa.acd.dao;
+
+import java.util.List;
+
+/**
+ * Todo lo necesario para crear un pedido de una vez: cliente, dirección, líneas y, si ya se conocen, pago y envío
+ * @param shippingAddressId Dirección del cliente, o null para dejar el pedido sin dirección
+ * @param payment Pago (su importe será el total del pedido), o null si aún no se ha pagado
+ * @param shipment Envío, o null si aún no ha salido
+ */
+public record OrderRequest(Integer customerId, Integer shippingAddressId, List<OrderLine> lines,
+                           PaymentInfo payment, ShipmentInfo shipment) {
+
+    public OrderRequest {
+        if (customerId == null) {
+            throw new IllegalArgumentException("El pedido no tiene cliente");
+        }
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("El pedido no tiene líneas");
+        }
+        lines = List.copyOf(lines);
+    }
+
+    /**
+     * Pedido PENDING, sin pago ni envío
+     */
+    public OrderRequest(Integer customerId, Integer shippingAddressId, List<OrderLine> lines) {
+        this(customerId, shippingAddressId, lines, null, null);
+    }
+
+    /**
+     * Estado con el que se crea: SHIPPED con envío, PAID con pago y PENDING sin ninguno
+     */
+    public String initialStatus() {
+        return shipment != null ? "SHIPPED" : payment != null ? "PAID" : "PENDING";
+    }
+
+    /**
+     * @param method CARD, PAYPAL, TRANSFER...
+     * @param status Estado del pago (COMPLETED si ya está cobrado)
+     */
+    public record PaymentInfo(String method, String status) {
+    }
+
+    /**
+     * @param carrier Transportista
+     * @param trackingNo Número de seguimiento
+     */
+    public record ShipmentInfo(String carrier, String trackingNo) {
+    }
+}
@@ -0,0 +1,12 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Resumen de un pedido para listados: solo las columnas que se muestran, sin entidades gestionadas
+ * @param city Ciudad de la dirección de envío, o null si el pedido no tiene
+ */
+public record OrderSummary(Integer id, Instant orderDate, String status, BigDecimal totalAmount,
+                           String customerName, String city) {
+}
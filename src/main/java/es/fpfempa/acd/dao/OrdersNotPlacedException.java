@@ -0,0 +1,12 @@
+package es.fpfempa.acd.dao;
+
+/**
+ * La transacción de OrderDao.placeOrders falló antes del commit y se deshizo: no se ha creado ninguno
+ * de los pedidos del lote, así que se pueden repetir sin duplicar nada.
+ */
+public class OrdersNotPlacedException extends RuntimeException {
+
+    public OrdersNotPlacedException(Throwable cause) {
+        super("Error al crear los pedidos: " + cause.getMessage(), cause);
+    }
+}
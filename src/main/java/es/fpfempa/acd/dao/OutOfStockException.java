@@ -0,0 +1,25 @@
+package es.fpfempa.acd.dao;
+
+/**
+ * No quedan unidades suficientes de un producto (o no existe o no está activo) para el pedido.
+ * No se ha guardado nada del pedido (ni su stock ni sus filas), aunque se creara en un lote con otros.
+ */
+public class OutOfStockException extends RuntimeException {
+
+    private final Integer productId;
+    private final int requested;
+
+    public OutOfStockException(Integer productId, int requested) {
+        super("No hay stock suficiente del producto " + productId + " para " + requested + " unidades");
+        this.productId = productId;
+        this.requested = requested;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+}
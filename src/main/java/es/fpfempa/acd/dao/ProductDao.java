@@ -0,0 +1,210 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.entities.Category;
+import es.fpfempa.acd.entities.Product;
+import es.fpfempa.acd.metrics.DaoMetrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public class ProductDao {
+
+    private EntityManager em;
+
+    public ProductDao(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Crea un NUEVO producto en la BD (con las categorías que ya tenga asignadas)
+     * @param product Producto a crear
+     */
+    public void create(Product product) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.create")) {
+            try {
+                em.getTransaction().begin();
+                em.persist(product);
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al crear el producto: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Busca un producto por su ID
+     * @param productId ID del producto
+     * @return Product o null si no existe
+     */
+    public Product findById(Integer productId) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.findById")) {
+            return em.find(Product.class, productId);
+        }
+    }
+
+    /**
+     * Busca un producto por su SKU. Que no exista no es un error: devuelve Optional vacío
+     * @param sku SKU exacto
+     * @return Producto, o vacío si no existe
+     */
+    public Optional<Product> findOptionalBySku(String sku) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.findOptionalBySku")) {
+            TypedQuery<Product> query = em.createNamedQuery("Product.findBySku", Product.class);
+            query.setParameter("sku", sku);
+            query.setMaxResults(1);
+            return query.getResultList().stream().findFirst();
+        }
+    }
+
+    /**
+     * Página de productos activos de una categoría, por nombre. Para navegar por el catálogo sin ir a la BD
+     * está CatalogIndex; esta consulta es la referencia y sirve cuando el índice no está cargado
+     * @param page Número de página, empezando en 0
+     * @param pageSize Productos por página
+     */
+    public List<Product> findActiveByCategory(Integer categoryId, int page, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.findActiveByCategory")) {
+            TypedQuery<Product> query = em.createNamedQuery("Product.findActiveByCategory", Product.class);
+            query.setParameter("categoryId", categoryId);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            query.setFirstResult(page * pageSize);
+            query.setMaxResults(pageSize);
+            return query.getResultList();
+        }
+    }
+
+    /**
+     * Guarda los cambios de un producto (precio, stock, activo...)
+     * @param product Producto modificado
+     * @return Producto gestionado tras el merge
+     */
+    public Product update(Product product) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.update")) {
+            try {
+                em.getTransaction().begin();
+                Product merged = em.merge(product);
+                em.getTransaction().commit();
+                return merged;
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al actualizar el producto: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sustituye las categorías de un producto. Marca el producto como cambiado aunque la fila de products
+     * no cambie, para que CatalogIndex lo vuelva a leer
+     * @param productId ID del producto
+     * @param categoryIds IDs de las categorías (deben existir)
+     */
+    public void replaceCategories(Integer productId, Collection<Integer> categoryIds) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.replaceCategories")) {
+            try {
+                em.getTransaction().begin();
+                Product product = em.find(Product.class, productId);
+                if (product == null) {
+                    throw new IllegalArgumentException("No existe el producto " + productId);
+                }
+                Set<Category> categories = new LinkedHashSet<>();
+                for (Integer categoryId : categoryIds) {
+                    categories.add(em.getReference(Category.class, categoryId));
+                }
+                product.getCategories().clear();
+                product.getCategories().addAll(categories);
+                product.touch();
+                em.getTransaction().commit();
+            } catch (Exception e) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                throw new RuntimeException("Error al cambiar las categorías del producto: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Descuenta unidades del stock si quedan suficientes. Lee el producto con SELECT ... FOR UPDATE
+     * (la primera vez en la transacción; después ya lo tiene bloqueado) y lo cambia en la entidad:
+     * el UPDATE sale con el flush y Hibernate pone al día ese producto en la caché de segundo nivel tras el commit,
+     * sin tocar los demás. Debe llamarse dentro de una transacción: la fila queda bloqueada hasta el commit
+     * o el rollback, así que al reservar varios productos hay que hacerlo siempre en el mismo orden (por ID)
+     * para no provocar interbloqueos
+     * @param productId ID del producto
+     * @param quantity Unidades a descontar
+     * @return true si se descontó; false si no hay stock suficiente, o el producto no existe o no está activo
+     */
+    public boolean reserveStock(Integer productId, int quantity) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.reserveStock")) {
+            Product product = em.find(Product.class, productId, LockModeType.PESSIMISTIC_WRITE);
+            if (product == null || !Boolean.TRUE.equals(product.getActive()) || product.getStock() < quantity) {
+                return false;
+            }
+            product.setStock(product.getStock() - quantity);
+            return true;
+        }
+    }
+
+    /**
+     * Devuelve al stock unidades reservadas con reserveStock en la misma transacción
+     * (al descartar un pedido de un lote sin deshacer los demás)
+     */
+    public void releaseStock(Integer productId, int quantity) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.releaseStock")) {
+            Product product = em.find(Product.class, productId, LockModeType.PESSIMISTIC_WRITE);
+            product.setStock(product.getStock() + quantity);
+        }
+    }
+
+    /**
+     * Precio actual de varios productos, en una consulta
+     * @return ID del producto -> precio (los que no existen no aparecen)
+     */
+    public Map<Integer, BigDecimal> findPrices(Collection<Integer> productIds) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.findPrices")) {
+            Map<Integer, BigDecimal> prices = new HashMap<>();
+            if (productIds.isEmpty()) {
+                return prices;
+            }
+            TypedQuery<Object[]> query = em.createNamedQuery("Product.findPricesByIds", Object[].class);
+            query.setParameter("productIds", productIds);
+            query.setFlushMode(FlushModeType.COMMIT);
+            for (Object[] row : query.getResultList()) {
+                prices.put((Integer) row[0], (BigDecimal) row[1]);
+            }
+            return prices;
+        }
+    }
+
+    /**
+     * Productos (activos o no) modificados desde un instante, una fila por producto y categoría.
+     * Con Instant.EPOCH devuelve el catálogo entero
+     * @param since Instante desde el que buscar (incluido)
+     * @return Filas ordenadas por producto
+     */
+    public List<CatalogRow> findCatalogRowsChangedSince(Instant since) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ProductDao.findCatalogRowsChangedSince")) {
+            TypedQuery<CatalogRow> query = em.createNamedQuery("Product.findCatalogRowsChangedSince", CatalogRow.class);
+            query.setParameter("since", since);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            return query.getResultList();
+        }
+    }
+}
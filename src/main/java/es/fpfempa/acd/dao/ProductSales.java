@@ -0,0 +1,11 @@
+package es.fpfempa.acd.dao;
+
+import java.math.BigDecimal;
+
+/**
+ * Ventas de un producto en un rango de fechas, sin contar los pedidos cancelados
+ * @param quantity Unidades vendidas
+ * @param revenue Importe de las líneas (precio por cantidad menos descuento)
+ */
+public record ProductSales(Integer productId, String sku, String name, long quantity, BigDecimal revenue) {
+}
@@ -0,0 +1,67 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.metrics.DaoMetrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Consultas de informes: los agregados (GROUP BY) se calculan en la BD y solo vuelven las filas del resultado,
+ * nunca pedidos ni líneas. Los rangos son [from, to) sobre order_date.
+ */
+public class ReportDao {
+
+    private EntityManager em;
+
+    public ReportDao(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Facturación por día y país de envío, sin pedidos cancelados
+     * @return Una fila por día y país con pedidos, sin orden
+     */
+    public List<DailyRevenue> findRevenueByDayAndCountry(Instant from, Instant to) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ReportDao.findRevenueByDayAndCountry")) {
+            TypedQuery<DailyRevenue> query = em.createNamedQuery("Order.revenueByDayAndCountry", DailyRevenue.class);
+            query.setParameter("from", from);
+            query.setParameter("to", to);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            return query.getResultList();
+        }
+    }
+
+    /**
+     * Número de pedidos e importe por día y estado (incluidos los cancelados)
+     * @return Una fila por día y estado con pedidos, sin orden
+     */
+    public List<DailyStatusCount> findCountsByDayAndStatus(Instant from, Instant to) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ReportDao.findCountsByDayAndStatus")) {
+            TypedQuery<DailyStatusCount> query = em.createNamedQuery("Order.countByDayAndStatus", DailyStatusCount.class);
+            query.setParameter("from", from);
+            query.setParameter("to", to);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            return query.getResultList();
+        }
+    }
+
+    /**
+     * Página de productos más vendidos por unidades (empates por ID), sin pedidos cancelados
+     * @param page Número de página, empezando en 0
+     * @param pageSize Productos por página
+     */
+    public List<ProductSales> findTopProducts(Instant from, Instant to, int page, int pageSize) {
+        try (DaoMetrics.Timer ignored = DaoMetrics.start("ReportDao.findTopProducts")) {
+            TypedQuery<ProductSales> query = em.createNamedQuery("OrderItem.topProductsByQuantity", ProductSales.class);
+            query.setParameter("from", from);
+            query.setParameter("to", to);
+            query.setHint(HibernateHints.HINT_READ_ONLY, true);
+            query.setFirstResult(page * pageSize);
+            query.setMaxResults(pageSize);
+            return query.getResultList();
+        }
+    }
+}
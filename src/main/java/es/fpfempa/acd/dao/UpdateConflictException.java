@@ -0,0 +1,58 @@
+package es.fpfempa.acd.dao;
+
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.LockAcquisitionException;
+
+/**
+ * Otro usuario modificó la misma fila entre que se leyó y se intentó guardar (fallo del bloqueo optimista),
+ * o la BD abortó la transacción porque esperaba por una fila bloqueada por otra.
+ * No es un error de la BD: normalmente basta con volver a leer y reintentar.
+ */
+public class UpdateConflictException extends RuntimeException {
+
+    private final String entityName;
+    private final Object entityId;
+
+    public UpdateConflictException(String entityName, Object entityId, Throwable cause) {
+        super("Conflicto al actualizar " + entityName + " id=" + entityId + ": otro usuario la modificó a la vez", cause);
+        this.entityName = entityName;
+        this.entityId = entityId;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public Object getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * Indica si una excepción de JPA/Hibernate (o alguna de sus causas) es un fallo de versión
+     */
+    static boolean isVersionConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException || t instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indica si la BD abortó la sentencia por un bloqueo de fila (espera agotada o interbloqueo):
+     * como en un fallo de versión, se puede reintentar la transacción entera
+     */
+    static boolean isLockConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof PessimisticLockException || t instanceof LockTimeoutException
+                    || t instanceof LockAcquisitionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
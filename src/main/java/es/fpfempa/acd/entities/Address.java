@@ -1,6 +1,8 @@
 package es.fpfempa.acd.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
@@ -9,13 +11,49 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "addresses", schema = "acd_shop_db")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "addresses")
+@NamedQuery(name = "Address.findByCustomerId",
+        query = "SELECT a FROM Address a WHERE a.customer.id = :customerId")
+@NamedQuery(name = "Address.findByFingerprint",
+        query = "SELECT a FROM Address a WHERE a.customer.id = :customerId AND a.fingerprint = :fingerprint ORDER BY a.id")
+@NamedQuery(name = "Address.findFingerprintsByCustomerIds",
+        query = "SELECT new es.fpfempa.acd.dao.AddressFingerprint(a.customer.id, a.fingerprint, a.id) " +
+                "FROM Address a WHERE a.customer.id IN :customerIds ORDER BY a.id")
+@NamedQuery(name = "Address.findFingerprintsByCustomerRange",
+        query = "SELECT new es.fpfempa.acd.dao.AddressFingerprint(a.customer.id, a.fingerprint, a.id) " +
+                "FROM Address a WHERE a.customer.id BETWEEN :firstCustomerId AND :lastCustomerId ORDER BY a.id")
+@NamedQuery(name = "Address.findWithoutFingerprintAfter",
+        query = "SELECT a FROM Address a WHERE a.fingerprint IS NULL AND a.id > :afterId ORDER BY a.id")
+@NamedQuery(name = "Address.findDuplicateGroups",
+        query = "SELECT new es.fpfempa.acd.dao.DuplicateAddressGroup(a.customer.id, a.fingerprint, MIN(a.id), COUNT(a), " +
+                "SUM(CASE WHEN a.isDefault = true THEN 1L ELSE 0L END)) " +
+                "FROM Address a WHERE a.fingerprint IS NOT NULL " +
+                "GROUP BY a.customer.id, a.fingerprint HAVING COUNT(a) > 1 ORDER BY a.customer.id")
+@NamedQuery(name = "Address.deleteDuplicates",
+        query = "DELETE FROM Address a " +
+                "WHERE a.customer.id = :customerId AND a.fingerprint = :fingerprint AND a.id <> :keeperId")
+@NamedQuery(name = "Address.markDefault",
+        query = "UPDATE VERSIONED Address a SET a.isDefault = true WHERE a.id = :addressId")
+// (customer_id, fingerprint) sirve tanto para las direcciones de un cliente como para buscar una ya existente.
+// No es UNIQUE porque puede haber duplicados antiguos hasta que pase AddressDeduplicationJob
+@Table(name = "addresses", schema = "acd_shop_db",
+        indexes = @Index(name = "idx_addresses_customer_fingerprint", columnList = "customer_id, fingerprint"))
 public class Address {
+    // Ids reservados en bloques desde la tabla id_generators: a diferencia de IDENTITY permite agrupar los INSERT en lotes JDBC.
+    // En una base con datos previos la fila 'addresses' la adelanta IdGeneratorSeeder al arrancar
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "address_id_gen")
+    @TableGenerator(name = "address_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "addresses", allocationSize = 50)
     @Column(name = "address_id", nullable = false)
     private Integer id;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @OnDelete(action = OnDeleteAction.CASCADE)
     @JoinColumn(name = "customer_id", nullable = false)
@@ -34,6 +72,10 @@ public class Address {
     @Column(name = "is_default", nullable = false)
     private Boolean isDefault = false;
 
+    // huella de line1 + city + country normalizados (AddressNormalizer); null en filas antiguas sin procesar
+    @Column(name = "fingerprint", length = 32)
+    private String fingerprint;
+
     @OneToMany(mappedBy = "shippingAddress")
     private Set<Order> orders = new LinkedHashSet<>();
 
@@ -45,6 +87,14 @@ public class Address {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public Customer getCustomer() {
         return customer;
     }
@@ -85,6 +135,26 @@ public class Address {
         this.isDefault = isDefault;
     }
 
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Limpia los campos y recalcula la huella; se llama sola antes de cada INSERT y UPDATE
+     */
+    @PrePersist
+    @PreUpdate
+    public void normalize() {
+        line1 = AddressNormalizer.cleanText(line1);
+        city = AddressNormalizer.cleanText(city);
+        country = AddressNormalizer.canonicalCountry(country);
+        fingerprint = AddressNormalizer.fingerprint(line1, city, country);
+    }
+
     public Set<Order> getOrders() {
         return orders;
     }
@@ -0,0 +1,84 @@
+package es.fpfempa.acd.entities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Normaliza direcciones para poder detectar duplicados.
+ * Para guardar solo se limpian los espacios y el país pasa a código ISO de 2 letras ("españa", "ESP" -> "ES").
+ * Para comparar se usa la huella (fingerprint): además ignora mayúsculas, tildes y signos de puntuación,
+ * así "Calle Mayor, 5" y "calle  mayor 5" dan la misma huella.
+ */
+public final class AddressNormalizer {
+
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern PUNCTUATION = Pattern.compile("[\\p{P}\\p{S}]+");
+    // código ISO, ISO3 y nombre en inglés y español (en forma de clave) -> código ISO de 2 letras
+    private static final Map<String, String> COUNTRY_CODES = buildCountryCodes();
+
+    private AddressNormalizer() {
+    }
+
+    /**
+     * Texto tal y como se guarda: sin espacios al principio y al final ni espacios repetidos
+     */
+    public static String cleanText(String value) {
+        return value == null ? null : SPACES.matcher(value.strip()).replaceAll(" ");
+    }
+
+    /**
+     * Código ISO de 2 letras del país; si no se reconoce, el texto limpio en mayúsculas
+     */
+    public static String canonicalCountry(String country) {
+        if (country == null) {
+            return null;
+        }
+        String code = COUNTRY_CODES.get(key(country));
+        return code != null ? code : cleanText(country).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Huella de la dirección: 128 bits de SHA-256 en hexadecimal (32 caracteres)
+     */
+    public static String fingerprint(String line1, String city, String country) {
+        String canonical = key(line1) + '\n' + key(city) + '\n' + canonicalCountry(country);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    // minúsculas, sin tildes, sin puntuación y con un solo espacio entre palabras
+    static String key(String value) {
+        if (value == null) {
+            return "";
+        }
+        String text = DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        text = PUNCTUATION.matcher(text.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return SPACES.matcher(text.strip()).replaceAll(" ");
+    }
+
+    private static Map<String, String> buildCountryCodes() {
+        Map<String, String> codes = new HashMap<>();
+        Locale spanish = Locale.forLanguageTag("es");
+        for (String code : Locale.getISOCountries()) {
+            Locale country = new Locale.Builder().setRegion(code).build();
+            codes.put(key(code), code);
+            codes.put(key(country.getISO3Country()), code);
+            codes.put(key(country.getDisplayCountry(Locale.ENGLISH)), code);
+            codes.put(key(country.getDisplayCountry(spanish)), code);
+        }
+        codes.put("uk", "GB");
+        return codes;
+    }
+}
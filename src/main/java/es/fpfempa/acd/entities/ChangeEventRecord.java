@@ -0,0 +1,75 @@
+package es.fpfempa.acd.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Fila del registro de cambios (tabla de solo inserción que escribe es.fpfempa.acd.audit.ChangeEventLog por lotes)
+ */
+@Entity
+// Consultas de ChangeEventDao. Cambios de una fila, por el índice idx_change_events_entity
+@NamedQuery(name = "ChangeEventRecord.findByEntity",
+        query = "SELECT e FROM ChangeEventRecord e WHERE e.entityType = :entityType AND e.entityId = :entityId " +
+                "ORDER BY e.occurredAt, e.id")
+@Table(name = "change_events", schema = "acd_shop_db",
+        indexes = @Index(name = "idx_change_events_entity", columnList = "entity_type, entity_id, occurred_at"))
+public class ChangeEventRecord {
+    // de id_generators para que los INSERT vayan en lotes; un lote del registro puede traer cientos de eventos
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "change_event_id_gen")
+    @TableGenerator(name = "change_event_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "change_events", allocationSize = 500)
+    @Column(name = "change_event_id", nullable = false)
+    private Long id;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    @Column(name = "entity_type", nullable = false, length = 32)
+    private String entityType;
+
+    @Column(name = "entity_id")
+    private Integer entityId;
+
+    @Column(name = "action", nullable = false, length = 32)
+    private String action;
+
+    @Column(name = "detail", length = 500)
+    private String detail;
+
+    public ChangeEventRecord() {
+    }
+
+    public ChangeEventRecord(Instant occurredAt, String entityType, Integer entityId, String action, String detail) {
+        this.occurredAt = occurredAt;
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.action = action;
+        this.detail = detail;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public Integer getEntityId() {
+        return entityId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+}
@@ -1,6 +1,8 @@
 package es.fpfempa.acd.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnDefault;
 
 import java.time.Instant;
@@ -8,13 +10,42 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "customers", schema = "acd_shop_db")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customers")
+@NamedQuery(name = "Customer.findByEmail",
+        query = "SELECT c FROM Customer c WHERE c.email = :email")
+@NamedQuery(name = "Customer.findIdByEmail",
+        query = "SELECT c.id FROM Customer c WHERE c.email = :email")
+@NamedQuery(name = "Customer.findByIdWithAddresses",
+        query = "SELECT c FROM Customer c LEFT JOIN FETCH c.addresses WHERE c.id = :customerId")
+@NamedQuery(name = "Customer.findAllEmailIds",
+        query = "SELECT c.email, c.id FROM Customer c")
+@NamedQuery(name = "Customer.findAll",
+        query = "SELECT c FROM Customer c")
+@NamedQuery(name = "Customer.findPageAfter",
+        query = "SELECT c FROM Customer c WHERE c.id > :lastId ORDER BY c.id")
+@NamedQuery(name = "Customer.findSummaries",
+        query = "SELECT new es.fpfempa.acd.dao.CustomerSummary(c.id, c.fullName, c.email, c.createdAt) " +
+                "FROM Customer c ORDER BY c.fullName, c.id")
+// uk_customers_email: findByEmail y evita clientes duplicados; idx_customers_full_name: orden de findSummaries
+@Table(name = "customers", schema = "acd_shop_db",
+        uniqueConstraints = @UniqueConstraint(name = "uk_customers_email", columnNames = "email"),
+        indexes = @Index(name = "idx_customers_full_name", columnList = "full_name, customer_id"))
 public class Customer {
+    // Ids reservados en bloques desde la tabla id_generators: a diferencia de IDENTITY permite agrupar los INSERT en lotes JDBC.
+    // En una base con datos previos la fila 'customers' la adelanta IdGeneratorSeeder al arrancar
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "customer_id_gen")
+    @TableGenerator(name = "customer_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "customers", allocationSize = 50)
     @Column(name = "customer_id", nullable = false)
     private Integer id;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @Column(name = "email", nullable = false)
     private String email;
 
@@ -26,6 +57,7 @@ public class Customer {
     private Instant createdAt;
 
     @OneToMany(mappedBy = "customer")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customer-addresses")
     private Set<Address> addresses = new LinkedHashSet<>();
 
     @OneToMany(mappedBy = "customer")
@@ -39,6 +71,14 @@ public class Customer {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getEmail() {
         return email;
     }
@@ -0,0 +1,65 @@
+package es.fpfempa.acd.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Bloque de un fichero ya importado. Se guarda en la misma transacción que las filas del bloque,
+ * así que si existe el bloque está entero en la BD y al repetir la importación se salta.
+ */
+@Entity
+@NamedQuery(name = "ImportCheckpoint.findOffsetsByJob",
+        query = "SELECT c.chunkOffset FROM ImportCheckpoint c WHERE c.job = :job")
+@Table(name = "import_checkpoints", schema = "acd_shop_db",
+        indexes = @Index(name = "idx_import_checkpoints_job", columnList = "job"))
+public class ImportCheckpoint {
+    // job + "@" + chunkOffset
+    @Id
+    @Column(name = "checkpoint_id", nullable = false, length = 320)
+    private String id;
+
+    // tipo de datos, nombre y tamaño del fichero: identifica una importación concreta
+    @Column(name = "job", nullable = false, length = 300)
+    private String job;
+
+    @Column(name = "chunk_offset", nullable = false)
+    private Long chunkOffset;
+
+    @Column(name = "row_count", nullable = false)
+    private Integer rowCount;
+
+    @Column(name = "committed_at", nullable = false)
+    private Instant committedAt;
+
+    public ImportCheckpoint() {
+    }
+
+    public ImportCheckpoint(String job, long chunkOffset, int rowCount) {
+        this.id = job + "@" + chunkOffset;
+        this.job = job;
+        this.chunkOffset = chunkOffset;
+        this.rowCount = rowCount;
+        this.committedAt = Instant.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    public Long getChunkOffset() {
+        return chunkOffset;
+    }
+
+    public Integer getRowCount() {
+        return rowCount;
+    }
+
+    public Instant getCommittedAt() {
+        return committedAt;
+    }
+}
@@ -1,6 +1,7 @@
 package es.fpfempa.acd.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
@@ -10,13 +11,116 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "orders", schema = "acd_shop_db")
+// Consultas de OrderDao. Se analizan al arrancar: un error en cualquiera impide crear el EntityManagerFactory
+// Payment y Shipment son el lado mappedBy del @OneToOne: Hibernate no puede cargarlos de forma perezosa
+// y haría una consulta por pedido si no se traen con el JOIN en todas las consultas que devuelven pedidos
+@NamedQuery(name = "Order.findByIdConDetalles",
+        query = "SELECT o FROM Order o JOIN FETCH o.customer LEFT JOIN FETCH o.shippingAddress " +
+                "LEFT JOIN FETCH o.payment LEFT JOIN FETCH o.shipment WHERE o.id = :orderId")
+@NamedQuery(name = "Order.findByIdsConDetalles",
+        query = "SELECT o FROM Order o JOIN FETCH o.customer LEFT JOIN FETCH o.shippingAddress " +
+                "LEFT JOIN FETCH o.payment LEFT JOIN FETCH o.shipment WHERE o.id IN :orderIds")
+@NamedQuery(name = "Order.findAggregatesByIds",
+        query = "SELECT o FROM Order o " +
+                "JOIN FETCH o.customer " +
+                "LEFT JOIN FETCH o.employee " +
+                "LEFT JOIN FETCH o.shippingAddress " +
+                "LEFT JOIN FETCH o.payment " +
+                "LEFT JOIN FETCH o.shipment " +
+                "WHERE o.id IN :orderIds")
+@NamedQuery(name = "Order.fetchItemsByIds",
+        query = "SELECT DISTINCT o FROM Order o " +
+                "LEFT JOIN FETCH o.orderItems i " +
+                "LEFT JOIN FETCH i.product p " +
+                "LEFT JOIN FETCH p.categories " +
+                "WHERE o.id IN :orderIds")
+@NamedQuery(name = "Order.findSummaries",
+        query = "SELECT new es.fpfempa.acd.dao.OrderSummary(o.id, o.orderDate, o.status, o.totalAmount, c.fullName, a.city) " +
+                "FROM Order o JOIN o.customer c LEFT JOIN o.shippingAddress a " +
+                "ORDER BY o.orderDate DESC, o.id DESC")
+// Historial de un cliente por claves (OrderDao.findHistoryPageAfter), más recientes primero, con idx_orders_customer_date.
+// "order_date <= :d AND (order_date < :d OR order_id < :id)" equivale a (order_date, order_id) < (:d, :id)
+// pero deja un rango sobre el índice, que con la comparación de tuplas no siempre se usa.
+// El cliente en el ORDER BY no cambia nada (es uno solo), pero sin él H2 no ve que el índice ya da las filas ordenadas
+@NamedQuery(name = "Order.findHistoryPageAfter",
+        query = "SELECT new es.fpfempa.acd.dao.OrderHistoryEntry(o.id, o.orderDate, o.status, o.totalAmount, a.city) " +
+                "FROM Order o LEFT JOIN o.shippingAddress a " +
+                "WHERE o.customer.id = :customerId AND o.orderDate <= :lastDate " +
+                "AND (o.orderDate < :lastDate OR o.id < :lastId) " +
+                "ORDER BY o.customer.id, o.orderDate DESC, o.id DESC")
+// Pedidos que van a cambiar de dirección con su dirección actual, bloqueados (FOR UPDATE) en la transacción del UPDATE
+// que viene después: el registro de cambios guarda la dirección anterior de cada pedido y nadie la cambia en medio
+@NamedQuery(name = "Order.lockShippingAddresses", lockMode = LockModeType.PESSIMISTIC_WRITE,
+        query = "SELECT o.id, o.shippingAddress.id FROM Order o WHERE o.id IN :orderIds AND o.customer.id = :customerId")
+@NamedQuery(name = "Order.lockByShippingAddress", lockMode = LockModeType.PESSIMISTIC_WRITE,
+        query = "SELECT o.id FROM Order o WHERE o.customer.id = :customerId AND o.shippingAddress.id = :fromAddressId")
+@NamedQuery(name = "Order.lockMergedShippingAddresses", lockMode = LockModeType.PESSIMISTIC_WRITE,
+        query = "SELECT o.id, o.shippingAddress.id FROM Order o " +
+                "WHERE o.shippingAddress.id IN (SELECT a.id FROM Address a " +
+                "WHERE a.customer.id = :customerId AND a.fingerprint = :fingerprint AND a.id <> :keeperId)")
+@NamedQuery(name = "Order.updateShippingAddress",
+        query = "UPDATE VERSIONED Order o SET o.shippingAddress = :address " +
+                "WHERE o.id IN :orderIds AND o.customer.id = :customerId " +
+                "AND EXISTS (SELECT 1 FROM Address a WHERE a.id = :addressId AND a.customer.id = :customerId)")
+@NamedQuery(name = "Order.clearShippingAddress",
+        query = "UPDATE VERSIONED Order o SET o.shippingAddress = NULL " +
+                "WHERE o.id IN :orderIds AND o.customer.id = :customerId")
+@NamedQuery(name = "Order.reassignShippingAddress",
+        query = "UPDATE VERSIONED Order o SET o.shippingAddress = :toAddress " +
+                "WHERE o.customer.id = :customerId AND o.shippingAddress.id = :fromAddressId " +
+                "AND EXISTS (SELECT 1 FROM Address a WHERE a.id = :toAddressId AND a.customer.id = :customerId)")
+// Exportación: una fila por línea de pedido (o una sola si el pedido no tiene líneas) con todo lo relacionado.
+// Solo se ordena por o.id, que es el orden de la clave primaria: así no hace falta ordenar el resultado entero
+// antes de empezar a devolver filas, y las líneas de cada pedido salen seguidas
+@NamedQuery(name = "Order.exportRows",
+        query = "SELECT new es.fpfempa.acd.dao.OrderExportRow(o.id, o.orderDate, o.status, o.totalAmount, " +
+                "c.id, c.email, c.fullName, a.line1, a.city, a.country, " +
+                "pay.method, pay.amount, pay.status, pay.paidAt, s.carrier, s.trackingNo, s.status, s.shippedAt, " +
+                "i.id, p.sku, p.name, i.quantity, i.unitPrice, i.discount) " +
+                "FROM Order o JOIN o.customer c LEFT JOIN o.shippingAddress a " +
+                "LEFT JOIN o.payment pay LEFT JOIN o.shipment s " +
+                "LEFT JOIN o.orderItems i LEFT JOIN i.product p " +
+                "ORDER BY o.id")
+// Informes (ReportDao): agregados por día UTC calculados en la BD. El rango sobre order_date usa idx_orders_order_date
+@NamedQuery(name = "Order.revenueByDayAndCountry",
+        query = "SELECT new es.fpfempa.acd.dao.DailyRevenue(cast(o.orderDate as LocalDate), a.country, count(o), sum(o.totalAmount)) " +
+                "FROM Order o LEFT JOIN o.shippingAddress a " +
+                "WHERE o.orderDate >= :from AND o.orderDate < :to AND o.status <> 'CANCELLED' " +
+                "GROUP BY cast(o.orderDate as LocalDate), a.country")
+@NamedQuery(name = "Order.countByDayAndStatus",
+        query = "SELECT new es.fpfempa.acd.dao.DailyStatusCount(cast(o.orderDate as LocalDate), o.status, count(o), sum(o.totalAmount)) " +
+                "FROM Order o WHERE o.orderDate >= :from AND o.orderDate < :to " +
+                "GROUP BY cast(o.orderDate as LocalDate), o.status")
+// la subconsulta es sobre addresses y no sobre orders: MySQL no deja leer en una subconsulta la tabla que se actualiza (error 1093)
+@NamedQuery(name = "Order.mergeShippingAddresses",
+        query = "UPDATE VERSIONED Order o SET o.shippingAddress = :keeper " +
+                "WHERE o.shippingAddress.id IN (SELECT a.id FROM Address a " +
+                "WHERE a.customer.id = :customerId AND a.fingerprint = :fingerprint AND a.id <> :keeperId)")
+// idx_orders_customer_shipping sirve a las búsquedas por cliente y a reassignShippingAddress;
+// idx_orders_order_date, al listado de resúmenes (más recientes primero);
+// idx_orders_customer_date, al historial de cada cliente: la página se lee seguida en el índice, sin ordenar nada
+@Table(name = "orders", schema = "acd_shop_db", indexes = {
+        @Index(name = "idx_orders_customer_shipping", columnList = "customer_id, shipping_address_id"),
+        @Index(name = "idx_orders_customer_date", columnList = "customer_id, order_date DESC, order_id DESC"),
+        @Index(name = "idx_orders_shipping_address", columnList = "shipping_address_id"),
+        @Index(name = "idx_orders_order_date", columnList = "order_date DESC, order_id DESC")
+})
 public class Order {
+    // Ids reservados en bloques desde la tabla id_generators, como en Customer y Address: con IDENTITY no hay lotes JDBC.
+    // En una base con datos previos la fila 'orders' la adelanta IdGeneratorSeeder al arrancar
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_id_gen")
+    @TableGenerator(name = "order_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "orders", allocationSize = 50)
     @Column(name = "order_id", nullable = false)
     private Integer id;
 
+    // bloqueo optimista: cada UPDATE comprueba e incrementa la versión, así dos cambios concurrentes no se pisan
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "customer_id", nullable = false)
     private Customer customer;
@@ -57,6 +161,14 @@ public class Order {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public Customer getCustomer() {
         return customer;
     }
@@ -8,10 +8,25 @@ import org.hibernate.annotations.OnDeleteAction;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "order_items", schema = "acd_shop_db")
+// Productos más vendidos (ReportDao.findTopProducts); discount es el descuento de la línea entera
+@NamedQuery(name = "OrderItem.topProductsByQuantity",
+        query = "SELECT new es.fpfempa.acd.dao.ProductSales(p.id, p.sku, p.name, sum(i.quantity), " +
+                "sum(i.unitPrice * i.quantity - i.discount)) " +
+                "FROM OrderItem i JOIN i.order o JOIN i.product p " +
+                "WHERE o.orderDate >= :from AND o.orderDate < :to AND o.status <> 'CANCELLED' " +
+                "GROUP BY p.id, p.sku, p.name " +
+                "ORDER BY sum(i.quantity) DESC, p.id")
+@Table(name = "order_items", schema = "acd_shop_db", indexes = {
+        @Index(name = "idx_order_items_order", columnList = "order_id"),
+        @Index(name = "idx_order_items_product", columnList = "product_id")
+})
 public class OrderItem {
+    // de id_generators como Order: con IDENTITY cada persist haría su INSERT y no habría lotes al crear un pedido.
+    // En una base con datos previos la fila 'order_items' la adelanta IdGeneratorSeeder al arrancar
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_item_id_gen")
+    @TableGenerator(name = "order_item_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "order_items", allocationSize = 50)
     @Column(name = "order_item_id", nullable = false)
     private Integer id;
 
@@ -10,8 +10,12 @@ import java.time.Instant;
 @Entity
 @Table(name = "payments", schema = "acd_shop_db")
 public class Payment {
+    // de id_generators, como Order y OrderItem, para que el alta de un pedido vaya en lotes.
+    // En una base con datos previos la fila 'payments' la adelanta IdGeneratorSeeder al arrancar
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "payment_id_gen")
+    @TableGenerator(name = "payment_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "payments", allocationSize = 50)
     @Column(name = "payment_id", nullable = false)
     private Integer id;
 
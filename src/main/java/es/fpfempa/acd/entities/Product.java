@@ -1,14 +1,33 @@
 package es.fpfempa.acd.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "products", schema = "acd_shop_db")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "products")
+// Consultas de ProductDao
+@NamedQuery(name = "Product.findBySku",
+        query = "SELECT p FROM Product p WHERE p.sku = :sku")
+@NamedQuery(name = "Product.findActiveByCategory",
+        query = "SELECT p FROM Product p JOIN p.categories c WHERE c.id = :categoryId AND p.active = true ORDER BY p.name, p.id")
+@NamedQuery(name = "Product.findPricesByIds",
+        query = "SELECT p.id, p.price FROM Product p WHERE p.id IN :productIds")
+// Una fila por producto y categoría (o una sola si no tiene categorías), seguidas por producto, para CatalogIndex
+@NamedQuery(name = "Product.findCatalogRowsChangedSince",
+        query = "SELECT new es.fpfempa.acd.dao.CatalogRow(p.id, p.sku, p.name, p.price, p.stock, p.active, p.updatedAt, c.id) " +
+                "FROM Product p LEFT JOIN p.categories c WHERE p.updatedAt >= :since ORDER BY p.id")
+// idx_products_updated_at: CatalogIndex pregunta cada pocos segundos por los productos cambiados desde la última vez
+@Table(name = "products", schema = "acd_shop_db",
+        uniqueConstraints = @UniqueConstraint(name = "uk_products_sku", columnNames = "sku"),
+        indexes = @Index(name = "idx_products_updated_at", columnList = "updated_at"))
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -31,11 +50,17 @@ public class Product {
     @Column(name = "active", nullable = false)
     private Boolean active = false;
 
+    // la mantiene touch(); el valor por defecto es para las filas que ya existían al añadir la columna
+    @ColumnDefault("CURRENT_TIMESTAMP(6)")
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
     @OneToMany(mappedBy = "product")
     private Set<OrderItem> orderItems = new LinkedHashSet<>();
 
     // Corregido: Product es el lado dueño de la relación ManyToMany
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product-categories")
     @JoinTable(
             name = "product_categories",
             joinColumns = @JoinColumn(name = "product_id"),
@@ -91,6 +116,24 @@ public class Product {
         this.active = active;
     }
 
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Marca el producto como cambiado ahora. Se llama sola al insertar y al modificar columnas;
+     * cambiar solo las categorías no modifica la fila, así que entonces hay que llamarla a mano
+     */
+    @PrePersist
+    @PreUpdate
+    public void touch() {
+        updatedAt = Instant.now();
+    }
+
     public Set<OrderItem> getOrderItems() {
         return orderItems;
     }
@@ -9,8 +9,12 @@ import java.time.Instant;
 @Entity
 @Table(name = "shipments", schema = "acd_shop_db")
 public class Shipment {
+    // de id_generators, como Order y OrderItem, para que el alta de un pedido vaya en lotes.
+    // En una base con datos previos la fila 'shipments' la adelanta IdGeneratorSeeder al arrancar
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "shipment_id_gen")
+    @TableGenerator(name = "shipment_id_gen", schema = "acd_shop_db", table = "id_generators",
+            pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "shipments", allocationSize = 50)
     @Column(name = "shipment_id", nullable = false)
     private Integer id;
 
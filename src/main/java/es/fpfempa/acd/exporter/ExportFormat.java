@@ -0,0 +1,11 @@
+package es.fpfempa.acd.exporter;
+
+/**
+ * Formatos de la exportación de pedidos
+ */
+public enum ExportFormat {
+    /** Una línea por línea de pedido, repitiendo los datos del pedido; con cabecera */
+    CSV,
+    /** Un objeto JSON por pedido y línea de texto, con sus líneas en el array "items" */
+    NDJSON
+}
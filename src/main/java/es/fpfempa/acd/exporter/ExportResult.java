@@ -0,0 +1,21 @@
+package es.fpfempa.acd.exporter;
+
+import java.time.Duration;
+
+/**
+ * Resultado de una exportación
+ * @param rows Filas leídas de la BD (una por línea de pedido)
+ * @param orders Pedidos exportados
+ * @param bytes Bytes escritos (en un fichero con gzip, el tamaño comprimido)
+ */
+public record ExportResult(ExportFormat format, long rows, long orders, long bytes, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        return rows * 1000.0 / Math.max(1, elapsed.toMillis());
+    }
+
+    public String describe() {
+        return String.format("%s: %d pedidos, %d filas, %d bytes; %.1f s (%.0f filas/s)",
+                format, orders, rows, bytes, elapsed.toMillis() / 1000.0, rowsPerSecond());
+    }
+}
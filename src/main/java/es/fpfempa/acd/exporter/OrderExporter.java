@@ -0,0 +1,339 @@
+package es.fpfempa.acd.exporter;
+
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.OrderExportRow;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import jakarta.persistence.EntityManager;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta todos los pedidos con su cliente, dirección de envío, pago, envío y líneas, en CSV o JSON por líneas.
+ * Las filas llegan de una sola consulta con cursor (OrderDao.streamExportRows) y se escriben según llegan,
+ * así que la memoria no depende del número de pedidos: como mucho un bloque de fetchSize filas y,
+ * en NDJSON, las líneas del pedido que se está escribiendo.
+ */
+public class OrderExporter {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] CSV_HEADER = {
+            "order_id", "order_date", "status", "total_amount", "customer_id", "customer_email", "customer_name",
+            "shipping_line1", "shipping_city", "shipping_country", "payment_method", "payment_amount", "payment_status",
+            "paid_at", "carrier", "tracking_no", "shipment_status", "shipped_at",
+            "item_id", "product_sku", "product_name", "quantity", "unit_price", "discount"};
+
+    private final EntityManagerProvider emProvider;
+    private final int fetchSize;
+
+    public OrderExporter(EntityManagerProvider emProvider) {
+        this(emProvider, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * @param fetchSize Filas que se traen de la BD en cada viaje
+     */
+    public OrderExporter(EntityManagerProvider emProvider, int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("El tamaño de fetch debe ser mayor que 0");
+        }
+        this.emProvider = emProvider;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Uso: java -cp ... es.fpfempa.acd.exporter.OrderExporter pedidos.csv|pedidos.ndjson[.gz]
+     * El formato sale de la extensión y si termina en .gz se comprime.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Uso: OrderExporter pedidos.csv|pedidos.ndjson[.gz]");
+            System.exit(2);
+        }
+        String name = args[0].toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        ExportFormat format = name.replace(".gz", "").endsWith(".ndjson") ? ExportFormat.NDJSON : ExportFormat.CSV;
+        try (EntityManagerProvider emProvider = EntityManagerProvider.create("acdPU")) {
+            System.out.println(new OrderExporter(emProvider).export(Path.of(args[0]), format, gzip).describe());
+        }
+    }
+
+    /**
+     * Exporta a un fichero, que se crea o se sobrescribe
+     * @param gzip Si se comprime con gzip
+     */
+    public ExportResult export(Path target, ExportFormat format, boolean gzip) {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            ExportResult result = export(gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out, format);
+            // tamaño real del fichero: con gzip, export(OutputStream) solo ve los bytes sin comprimir
+            return new ExportResult(format, result.rows(), result.orders(), Files.size(target), result.elapsed());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al exportar los pedidos a " + target + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Exporta al flujo indicado y lo cierra al terminar (bytes en el resultado: los escritos en ese flujo)
+     */
+    public ExportResult export(OutputStream out, ExportFormat format) {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        EntityManager em = emProvider.createEntityManager();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(counted, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            RowWriter rows = format == ExportFormat.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+            long rowCount = 0;
+            try (Stream<OrderExportRow> stream = new OrderDao(em).streamExportRows(fetchSize)) {
+                Iterator<OrderExportRow> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    rows.write(iterator.next());
+                    rowCount++;
+                }
+            }
+            rows.finish();
+            writer.close();
+            return new ExportResult(format, rowCount, rows.orders(), counted.count, Duration.ofNanos(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al exportar los pedidos: " + e.getMessage(), e);
+        } finally {
+            em.close();
+        }
+    }
+
+    private interface RowWriter {
+        void write(OrderExportRow row) throws IOException;
+
+        void finish() throws IOException;
+
+        long orders();
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        private Integer lastOrderId;
+        private long orders;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(String.join(",", CSV_HEADER));
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(OrderExportRow row) throws IOException {
+            if (!row.orderId().equals(lastOrderId)) {
+                lastOrderId = row.orderId();
+                orders++;
+            }
+            Object[] values = {row.orderId(), row.orderDate(), row.status(), row.totalAmount(), row.customerId(),
+                    row.customerEmail(), row.customerName(), row.shippingLine1(), row.shippingCity(), row.shippingCountry(),
+                    row.paymentMethod(), row.paymentAmount(), row.paymentStatus(), row.paidAt(), row.carrier(),
+                    row.trackingNo(), row.shipmentStatus(), row.shippedAt(), row.itemId(), row.productSku(),
+                    row.productName(), row.quantity(), row.unitPrice(), row.discount()};
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeCsv(values[i]);
+            }
+            writer.write('\n');
+        }
+
+        // vacío para null; entre comillas solo si hace falta
+        private void writeCsv(Object value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                writer.write(text);
+            } else {
+                writer.write('"');
+                writer.write(text.replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public long orders() {
+            return orders;
+        }
+    }
+
+    // agrupa las filas seguidas de un mismo pedido en un solo objeto JSON
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private final List<OrderExportRow> current = new ArrayList<>();
+        private long orders;
+
+        NdjsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(OrderExportRow row) throws IOException {
+            if (!current.isEmpty() && !current.get(0).orderId().equals(row.orderId())) {
+                flushOrder();
+            }
+            current.add(row);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!current.isEmpty()) {
+                flushOrder();
+            }
+        }
+
+        @Override
+        public long orders() {
+            return orders;
+        }
+
+        private void flushOrder() throws IOException {
+            OrderExportRow order = current.get(0);
+            StringBuilder json = new StringBuilder(256 + 128 * current.size());
+            json.append('{');
+            field(json, "order_id", order.orderId()).append(',');
+            field(json, "order_date", order.orderDate()).append(',');
+            field(json, "status", order.status()).append(',');
+            field(json, "total_amount", order.totalAmount()).append(',');
+            json.append("\"customer\":{");
+            field(json, "id", order.customerId()).append(',');
+            field(json, "email", order.customerEmail()).append(',');
+            field(json, "name", order.customerName()).append("},");
+            json.append("\"shipping_address\":");
+            if (order.shippingCity() == null) {
+                json.append("null");
+            } else {
+                json.append('{');
+                field(json, "line1", order.shippingLine1()).append(',');
+                field(json, "city", order.shippingCity()).append(',');
+                field(json, "country", order.shippingCountry()).append('}');
+            }
+            json.append(",\"payment\":");
+            if (order.paymentMethod() == null) {
+                json.append("null");
+            } else {
+                json.append('{');
+                field(json, "method", order.paymentMethod()).append(',');
+                field(json, "amount", order.paymentAmount()).append(',');
+                field(json, "status", order.paymentStatus()).append(',');
+                field(json, "paid_at", order.paidAt()).append('}');
+            }
+            json.append(",\"shipment\":");
+            if (order.carrier() == null) {
+                json.append("null");
+            } else {
+                json.append('{');
+                field(json, "carrier", order.carrier()).append(',');
+                field(json, "tracking_no", order.trackingNo()).append(',');
+                field(json, "status", order.shipmentStatus()).append(',');
+                field(json, "shipped_at", order.shippedAt()).append('}');
+            }
+            json.append(",\"items\":[");
+            boolean first = true;
+            for (OrderExportRow item : current) {
+                if (item.itemId() == null) {
+                    continue;
+                }
+                json.append(first ? "{" : ",{");
+                field(json, "id", item.itemId()).append(',');
+                field(json, "sku", item.productSku()).append(',');
+                field(json, "name", item.productName()).append(',');
+                field(json, "quantity", item.quantity()).append(',');
+                field(json, "unit_price", item.unitPrice()).append(',');
+                field(json, "discount", item.discount()).append('}');
+                first = false;
+            }
+            json.append("]}\n");
+            writer.append(json);
+            current.clear();
+            orders++;
+        }
+
+        // números sin comillas, el resto como cadena JSON
+        private static StringBuilder field(StringBuilder json, String name, Object value) {
+            json.append('"').append(name).append("\":");
+            if (value == null) {
+                json.append("null");
+            } else if (value instanceof BigDecimal decimal) {
+                json.append(decimal.toPlainString());
+            } else if (value instanceof Number) {
+                json.append(value);
+            } else {
+                appendString(json, value.toString());
+            }
+            return json;
+        }
+
+        private static void appendString(StringBuilder json, String text) {
+            json.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    case '\n' -> json.append("\\n");
+                    case '\r' -> json.append("\\r");
+                    case '\t' -> json.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            json.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            json.append(c);
+                        }
+                    }
+                }
+            }
+            json.append('"');
+        }
+    }
+
+    // cuenta los bytes escritos en el flujo de salida
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
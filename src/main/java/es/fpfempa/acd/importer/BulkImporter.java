@@ -0,0 +1,443 @@
+package es.fpfempa.acd.importer;
+
+import es.fpfempa.acd.dao.AddressFingerprint;
+import es.fpfempa.acd.dao.CustomerDao;
+import es.fpfempa.acd.dao.CustomerEmailCache;
+import es.fpfempa.acd.dao.ImportDao;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.AddressNormalizer;
+import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.entities.ImportCheckpoint;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import es.fpfempa.acd.services.ReportDayCache;
+import jakarta.persistence.EntityManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Importación masiva de clientes, direcciones y pedidos desde ficheros CSV con cabecera.
+ * Cada fichero se divide en bloques de líneas completas (CsvFile); los bloques se leen y se analizan en paralelo
+ * en un ForkJoinPool y cada uno se inserta en su propia transacción con lotes JDBC. El punto de control del bloque
+ * se guarda en esa misma transacción, así que si la importación se corta basta con lanzarla otra vez:
+ * los bloques ya confirmados se saltan y ninguna fila se inserta dos veces.
+ * Los clientes se referencian por email, resuelto contra un mapa email -> ID cargado una vez al empezar,
+ * por lo que hay que importar los clientes antes que sus direcciones y pedidos.
+ *
+ * Columnas (el orden da igual; las marcadas con * son opcionales):
+ * - clientes: email, full_name, created_at*
+ * - direcciones: customer_email, line1, city, country, is_default*
+ * - pedidos: customer_email, order_date, status, total_amount, shipping_line1*, shipping_city*, shipping_country*
+ */
+public class BulkImporter {
+
+    // unos 10.000 clientes por bloque (y por transacción)
+    public static final int DEFAULT_CHUNK_BYTES = 1024 * 1024;
+    private static final int MAX_ERRORS = 100;
+
+    private final EntityManagerProvider emProvider;
+    private final int parallelism;
+    private final int chunkBytes;
+    private final int batchSize;
+    // email normalizado -> ID de todos los clientes de la BD, más los que se van importando
+    private final Map<String, Integer> customerIds = new ConcurrentHashMap<>();
+    private boolean customerIdsLoaded;
+
+    /**
+     * Usa la mitad de las conexiones del pool (sin pasar del número de procesadores): cada bloque ocupa una conexión
+     * y el generador de IDs por tabla necesita otra aparte para reservar bloques de IDs
+     */
+    public BulkImporter(EntityManagerProvider emProvider) {
+        this(emProvider, Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), emProvider.getMaximumPoolSize() / 2)),
+                DEFAULT_CHUNK_BYTES, CustomerDao.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param parallelism Bloques que se procesan a la vez
+     * @param chunkBytes Tamaño aproximado de cada bloque en bytes
+     * @param batchSize Número de INSERT por lote JDBC
+     */
+    public BulkImporter(EntityManagerProvider emProvider, int parallelism, int chunkBytes, int batchSize) {
+        if (parallelism < 1 || chunkBytes < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("El paralelismo y los tamaños de bloque y de lote deben ser mayores que 0");
+        }
+        this.emProvider = emProvider;
+        this.parallelism = parallelism;
+        this.chunkBytes = chunkBytes;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Uso: java -cp ... es.fpfempa.acd.importer.BulkImporter clientes.csv [direcciones.csv] [pedidos.csv]
+     * Un "-" en lugar de un fichero se salta (p. ej. "- - pedidos.csv" importa solo pedidos).
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || args.length > 3) {
+            System.err.println("Uso: BulkImporter clientes.csv [direcciones.csv] [pedidos.csv]");
+            System.exit(2);
+        }
+        try (EntityManagerProvider emProvider = EntityManagerProvider.create("acdPU")) {
+            BulkImporter importer = new BulkImporter(emProvider);
+            List<ImportResult> results = new ArrayList<>();
+            if (!args[0].equals("-")) {
+                results.add(importer.importCustomers(Path.of(args[0])));
+            }
+            if (args.length > 1 && !args[1].equals("-")) {
+                results.add(importer.importAddresses(Path.of(args[1])));
+            }
+            if (args.length > 2 && !args[2].equals("-")) {
+                results.add(importer.importOrders(Path.of(args[2])));
+            }
+            for (ImportResult result : results) {
+                System.out.println(result.describe());
+                result.errors().forEach(error -> System.out.println("  " + error));
+            }
+        }
+    }
+
+    /**
+     * Importa clientes. Los emails se guardan tal como vienen; los que ya existen (sin distinguir mayúsculas
+     * ni espacios alrededor, ver CustomerEmailCache.normalize) se saltan.
+     */
+    public ImportResult importCustomers(Path path) {
+        Set<String> claimedEmails = ConcurrentHashMap.newKeySet();
+        ImportResult result = importFile("customers", path, (file, rows, dao, progress) -> {
+            int emailColumn = file.column("email");
+            int nameColumn = file.column("full_name");
+            int createdColumn = file.column("created_at");
+            List<Customer> customers = new ArrayList<>();
+            for (CsvFile.Row row : rows) {
+                try {
+                    Customer customer = new Customer();
+                    customer.setEmail(required(row, emailColumn, "email"));
+                    String email = CustomerEmailCache.normalize(customer.getEmail());
+                    customer.setFullName(maxLength(required(row, nameColumn, "full_name"), 200, "full_name"));
+                    String createdAt = row.field(createdColumn);
+                    customer.setCreatedAt(createdAt != null ? parseInstant(createdAt) : Instant.now());
+                    // sin colecciones: si no, cada cliente nuevo deja un bloqueo en la región customer-addresses
+                    // y un bloque de miles de clientes la desborda y echa de la caché lo que sí se estaba usando
+                    customer.setAddresses(null);
+                    customer.setOrders(null);
+                    // el mismo email puede estar ya en la BD o repetido en otra parte del fichero
+                    if (customerIds.containsKey(email) || !claimedEmails.add(email)) {
+                        progress.skipped.increment();
+                        continue;
+                    }
+                    customers.add(customer);
+                } catch (IllegalArgumentException e) {
+                    progress.reject(row, e.getMessage());
+                }
+            }
+            return new PreparedChunk(customers.stream().<Function<EntityManager, ?>>map(customer -> em -> customer).toList(),
+                    () -> customers.forEach(customer -> customerIds.put(CustomerEmailCache.normalize(customer.getEmail()), customer.getId())));
+        });
+        // puede haber entradas negativas de emails que ahora sí existen
+        CustomerEmailCache.shared().invalidateAll();
+        return result;
+    }
+
+    /**
+     * Importa direcciones. Las que el cliente ya tiene (misma huella, ver AddressNormalizer) se saltan.
+     */
+    public ImportResult importAddresses(Path path) {
+        return importFile("addresses", path, (file, rows, dao, progress) -> {
+            int emailColumn = file.column("customer_email");
+            int line1Column = file.column("line1");
+            int cityColumn = file.column("city");
+            int countryColumn = file.column("country");
+            int defaultColumn = file.column("is_default");
+            Map<CsvFile.Row, Integer> customerOf = resolveCustomers(rows, emailColumn, progress);
+            Set<String> existing = new HashSet<>(fingerprintKeys(dao, customerOf.values()).keySet());
+            List<Function<EntityManager, ?>> inserts = new ArrayList<>();
+            for (Map.Entry<CsvFile.Row, Integer> entry : customerOf.entrySet()) {
+                CsvFile.Row row = entry.getKey();
+                Integer customerId = entry.getValue();
+                try {
+                    String line1 = required(row, line1Column, "line1");
+                    String city = maxLength(required(row, cityColumn, "city"), 120, "city");
+                    String country = country(required(row, countryColumn, "country"));
+                    // también evita repetir una dirección que aparece dos veces en el mismo bloque
+                    if (!existing.add(fingerprintKey(customerId, AddressNormalizer.fingerprint(line1, city, country)))) {
+                        progress.skipped.increment();
+                        continue;
+                    }
+                    boolean isDefault = parseBoolean(row.field(defaultColumn));
+                    inserts.add(em -> {
+                        Address address = new Address();
+                        address.setCustomer(em.getReference(Customer.class, customerId));
+                        address.setLine1(line1);
+                        address.setCity(city);
+                        address.setCountry(country);
+                        address.setIsDefault(isDefault);
+                        return address;
+                    });
+                } catch (IllegalArgumentException e) {
+                    progress.reject(row, e.getMessage());
+                }
+            }
+            return new PreparedChunk(inserts, () -> { });
+        });
+    }
+
+    /**
+     * Importa pedidos. La dirección de envío, si se indica, tiene que existir ya entre las del cliente.
+     */
+    public ImportResult importOrders(Path path) {
+        ImportResult result = importFile("orders", path, (file, rows, dao, progress) -> {
+            int emailColumn = file.column("customer_email");
+            int dateColumn = file.column("order_date");
+            int statusColumn = file.column("status");
+            int totalColumn = file.column("total_amount");
+            int line1Column = file.column("shipping_line1");
+            int cityColumn = file.column("shipping_city");
+            int countryColumn = file.column("shipping_country");
+            Map<CsvFile.Row, Integer> customerOf = resolveCustomers(rows, emailColumn, progress);
+            Map<String, Integer> addressIds = line1Column >= 0 ? fingerprintKeys(dao, customerOf.values()) : Map.of();
+            List<Function<EntityManager, ?>> inserts = new ArrayList<>();
+            for (Map.Entry<CsvFile.Row, Integer> entry : customerOf.entrySet()) {
+                CsvFile.Row row = entry.getKey();
+                Integer customerId = entry.getValue();
+                try {
+                    Instant orderDate = parseInstant(required(row, dateColumn, "order_date"));
+                    String status = maxLength(required(row, statusColumn, "status").toUpperCase(Locale.ROOT), 32, "status");
+                    BigDecimal total = parseAmount(required(row, totalColumn, "total_amount"));
+                    Integer addressId = null;
+                    if (row.field(line1Column) != null || row.field(cityColumn) != null || row.field(countryColumn) != null) {
+                        String fingerprint = AddressNormalizer.fingerprint(required(row, line1Column, "shipping_line1"),
+                                required(row, cityColumn, "shipping_city"), country(required(row, countryColumn, "shipping_country")));
+                        addressId = addressIds.get(fingerprintKey(customerId, fingerprint));
+                        if (addressId == null) {
+                            throw new IllegalArgumentException("el cliente no tiene esa dirección de envío");
+                        }
+                    }
+                    Integer shippingAddressId = addressId;
+                    inserts.add(em -> {
+                        Order order = new Order();
+                        order.setCustomer(em.getReference(Customer.class, customerId));
+                        if (shippingAddressId != null) {
+                            order.setShippingAddress(em.getReference(Address.class, shippingAddressId));
+                        }
+                        order.setOrderDate(orderDate);
+                        order.setStatus(status);
+                        order.setTotalAmount(total);
+                        return order;
+                    });
+                } catch (IllegalArgumentException e) {
+                    progress.reject(row, e.getMessage());
+                }
+            }
+            return new PreparedChunk(inserts, () -> { });
+        });
+        // los pedidos importados pueden ser de días que los informes ya tienen en caché
+        ReportDayCache.shared().invalidateAll();
+        return result;
+    }
+
+    private ImportResult importFile(String kind, Path path, ChunkPreparer preparer) {
+        long start = System.nanoTime();
+        loadCustomerIds();
+        try (CsvFile file = new CsvFile(path)) {
+            // los puntos de control son posiciones de bloques: solo valen para el mismo contenido partido igual
+            String job = kind + ":" + path.getFileName() + ":" + file.size() + ":" + chunkBytes + ":" + file.fingerprint();
+            Set<Long> done = emProvider.withEntityManager(em -> new ImportDao(em).findCommittedOffsets(job));
+            List<CsvFile.Chunk> chunks = file.chunks(chunkBytes);
+            Progress progress = new Progress();
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (CsvFile.Chunk chunk : chunks) {
+                    if (!done.contains(chunk.offset())) {
+                        tasks.add(pool.submit(() -> importChunk(job, file, chunk, preparer, progress)));
+                    }
+                }
+                // se espera a todos aunque alguno falle: los que terminen quedan confirmados para la siguiente ejecución
+                RuntimeException failure = null;
+                for (ForkJoinTask<?> task : tasks) {
+                    try {
+                        task.join();
+                    } catch (RuntimeException e) {
+                        failure = failure == null ? e : failure;
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                pool.shutdown();
+            }
+            int alreadyDone = (int) chunks.stream().filter(chunk -> done.contains(chunk.offset())).count();
+            return new ImportResult(job, progress.read.sum(), progress.inserted.sum(), progress.skipped.sum(),
+                    progress.rejected.sum(), chunks.size(), alreadyDone, Duration.ofNanos(System.nanoTime() - start),
+                    List.copyOf(progress.errors));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al leer " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void importChunk(String job, CsvFile file, CsvFile.Chunk chunk, ChunkPreparer preparer, Progress progress) {
+        List<CsvFile.Row> rows;
+        try {
+            rows = file.read(chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al leer " + file.getPath() + " en el byte " + chunk.offset() + ": " + e.getMessage(), e);
+        }
+        emProvider.runWithEntityManager(em -> {
+            ImportDao dao = new ImportDao(em);
+            PreparedChunk prepared = preparer.prepare(file, rows, dao, progress);
+            dao.persistChunk(new ImportCheckpoint(job, chunk.offset(), rows.size()), prepared.inserts(), batchSize);
+            prepared.afterCommit().run();
+            progress.read.add(rows.size());
+            progress.inserted.add(prepared.inserts().size());
+        });
+    }
+
+    private synchronized void loadCustomerIds() {
+        if (!customerIdsLoaded) {
+            emProvider.runWithEntityManager(em -> new ImportDao(em).forEachCustomerEmail(
+                    (email, customerId) -> customerIds.put(CustomerEmailCache.normalize(email), customerId)));
+            customerIdsLoaded = true;
+        }
+    }
+
+    // cliente de cada fila (en el orden del fichero); las filas con un email desconocido se rechazan
+    private Map<CsvFile.Row, Integer> resolveCustomers(List<CsvFile.Row> rows, int emailColumn, Progress progress) {
+        Map<CsvFile.Row, Integer> customerOf = new LinkedHashMap<>();
+        for (CsvFile.Row row : rows) {
+            String email = row.field(emailColumn);
+            Integer customerId = email != null ? customerIds.get(CustomerEmailCache.normalize(email)) : null;
+            if (customerId == null) {
+                progress.reject(row, email == null ? "falta customer_email" : "no hay ningún cliente con el email " + email);
+            } else {
+                customerOf.put(row, customerId);
+            }
+        }
+        return customerOf;
+    }
+
+    // (cliente, huella) -> ID de las direcciones existentes de esos clientes
+    private static Map<String, Integer> fingerprintKeys(ImportDao dao, Iterable<Integer> customerIds) {
+        Set<Integer> distinct = new HashSet<>();
+        customerIds.forEach(distinct::add);
+        Map<String, Integer> keys = new HashMap<>();
+        for (AddressFingerprint address : dao.findAddressFingerprints(distinct)) {
+            if (address.fingerprint() != null) {
+                keys.putIfAbsent(fingerprintKey(address.customerId(), address.fingerprint()), address.addressId());
+            }
+        }
+        return keys;
+    }
+
+    private static String fingerprintKey(Integer customerId, String fingerprint) {
+        return customerId + ":" + fingerprint;
+    }
+
+    private static String required(CsvFile.Row row, int column, String name) {
+        String value = row.field(column);
+        if (value == null) {
+            throw new IllegalArgumentException("falta " + name);
+        }
+        return value;
+    }
+
+    private static String maxLength(String value, int max, String name) {
+        if (value.length() > max) {
+            throw new IllegalArgumentException(name + " tiene más de " + max + " caracteres");
+        }
+        return value;
+    }
+
+    private static String country(String value) {
+        String country = AddressNormalizer.canonicalCountry(value);
+        if (country.length() != 2) {
+            throw new IllegalArgumentException("país desconocido: " + value);
+        }
+        return country;
+    }
+
+    // instante ISO (2024-05-01T10:00:00Z), fecha y hora sin zona (se toma UTC) o solo fecha
+    static Instant parseInstant(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException notInstant) {
+            try {
+                return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC);
+            } catch (DateTimeParseException notDateTime) {
+                try {
+                    return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("fecha no válida: " + value);
+                }
+            }
+        }
+    }
+
+    private static BigDecimal parseAmount(String value) {
+        try {
+            return new BigDecimal(value).setScale(2, RoundingMode.HALF_UP);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("importe no válido: " + value);
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        return value != null && switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "1", "si", "sí", "s", "yes", "y" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Convierte las filas de un bloque en entidades. Se ejecuta dentro de la tarea del bloque, en paralelo con otros.
+     */
+    private interface ChunkPreparer {
+        PreparedChunk prepare(CsvFile file, List<CsvFile.Row> rows, ImportDao dao, Progress progress);
+    }
+
+    /**
+     * @param inserts Una función por entidad a insertar
+     * @param afterCommit Se ejecuta cuando el bloque ya está confirmado
+     */
+    private record PreparedChunk(List<Function<EntityManager, ?>> inserts, Runnable afterCommit) {
+    }
+
+    // contadores compartidos por todos los bloques de un fichero
+    private static class Progress {
+        final LongAdder read = new LongAdder();
+        final LongAdder inserted = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        void reject(CsvFile.Row row, String reason) {
+            rejected.increment();
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("byte " + row.offset() + ": " + reason);
+            }
+        }
+    }
+}
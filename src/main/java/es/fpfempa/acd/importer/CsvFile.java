@@ -0,0 +1,214 @@
+package es.fpfempa.acd.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fichero CSV (UTF-8, separado por comas, con cabecera) dividido en bloques que se pueden leer en paralelo.
+ * Cada bloque empieza al principio de una línea y termina en un salto de línea, así que no hace falta
+ * leer el fichero desde el principio para procesar un bloque: se proyecta en memoria (mmap) solo ese trozo.
+ * Admite campos entre comillas con comas y comillas dobladas (""), pero no saltos de línea dentro de un campo.
+ */
+public class CsvFile implements AutoCloseable {
+
+    private static final int SCAN_BUFFER = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final long dataStart;
+
+    public CsvFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        long headerEnd = nextLineStart(0);
+        String header = decode(readBytes(0, headerEnd));
+        // marca BOM que añaden algunos editores al principio del fichero
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        String[] names = split(header);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].strip().toLowerCase(Locale.ROOT), i);
+        }
+        this.dataStart = headerEnd;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Huella del contenido: SHA-256 de los primeros y los últimos 64 KB (o del fichero entero si es más pequeño).
+     * Distingue un fichero de otro con el mismo nombre y tamaño sin tener que leerlo entero
+     * @return Los 16 primeros caracteres hexadecimales del hash
+     */
+    public String fingerprint() throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(readBytes(0, Math.min(size, SCAN_BUFFER)));
+            if (size > SCAN_BUFFER) {
+                digest.update(readBytes(Math.max(SCAN_BUFFER, size - SCAN_BUFFER), size));
+            }
+            return HexFormat.of().formatHex(digest.digest()).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Posición de la columna en cada fila, o -1 si la cabecera no la tiene
+     */
+    public int column(String name) {
+        return columns.getOrDefault(name, -1);
+    }
+
+    /**
+     * Divide los datos (sin la cabecera) en bloques de unos chunkBytes bytes que terminan en fin de línea
+     */
+    public List<Chunk> chunks(int chunkBytes) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long start = dataStart;
+        while (start < size) {
+            long end = start + chunkBytes >= size ? size : nextLineStart(start + chunkBytes);
+            chunks.add(new Chunk(start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Lee las filas de un bloque. Las líneas vacías se saltan.
+     */
+    public List<Row> read(Chunk chunk) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset(), chunk.length());
+        byte[] bytes = new byte[(int) chunk.length()];
+        buffer.get(bytes);
+        List<Row> rows = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || bytes[i] == '\n') {
+                int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                if (lineEnd > lineStart) {
+                    String line = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                    rows.add(new Row(chunk.offset() + lineStart, split(line)));
+                }
+                lineStart = i + 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Separa una línea en campos (RFC 4180 sin saltos de línea dentro de los campos)
+     */
+    static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(String[]::new);
+    }
+
+    // posición del primer byte después del siguiente salto de línea a partir de from (o el final del fichero)
+    private long nextLineStart(long from) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private byte[] readBytes(long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+            read = channel.read(buffer, from + buffer.position());
+        }
+        return buffer.array();
+    }
+
+    private static String decode(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8).stripTrailing();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Trozo del fichero formado por líneas completas
+     * @param offset Posición en bytes del principio del bloque (sirve de punto de control)
+     */
+    public record Chunk(long offset, long length) {
+    }
+
+    /**
+     * Fila leída del fichero
+     * @param offset Posición en bytes del principio de la línea, para localizarla en los mensajes de error
+     */
+    public record Row(long offset, String[] fields) {
+
+        /**
+         * Campo de la columna indicada, sin espacios alrededor; null si no existe o está vacío
+         */
+        public String field(int column) {
+            if (column < 0 || column >= fields.length) {
+                return null;
+            }
+            String value = fields[column].strip();
+            return value.isEmpty() ? null : value;
+        }
+    }
+}
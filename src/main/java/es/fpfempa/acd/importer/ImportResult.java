@@ -0,0 +1,30 @@
+package es.fpfempa.acd.importer;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Resultado de importar un fichero
+ * @param job Identificador de la importación (tipo, fichero, tamaño, tamaño de bloque y huella del contenido)
+ * @param rowsRead Filas leídas en los bloques procesados en esta ejecución
+ * @param inserted Filas insertadas
+ * @param skipped Filas que ya estaban en la BD (p. ej. clientes con un email existente)
+ * @param rejected Filas con errores, que no se insertan
+ * @param chunks Bloques del fichero
+ * @param chunksAlreadyDone Bloques saltados porque se importaron en una ejecución anterior
+ * @param errors Los primeros errores encontrados, con la posición en bytes de cada fila
+ */
+public record ImportResult(String job, long rowsRead, long inserted, long skipped, long rejected,
+                           int chunks, int chunksAlreadyDone, Duration elapsed, List<String> errors) {
+
+    public double rowsPerSecond() {
+        return rowsRead * 1000.0 / Math.max(1, elapsed.toMillis());
+    }
+
+    public String describe() {
+        return String.format("%s: %d filas leídas, %d insertadas, %d ya existían, %d con errores; " +
+                        "%d/%d bloques ya importados; %.1f s (%.0f filas/s)",
+                job, rowsRead, inserted, skipped, rejected, chunksAlreadyDone, chunks,
+                elapsed.toMillis() / 1000.0, rowsPerSecond());
+    }
+}
@@ -0,0 +1,69 @@
+package es.fpfempa.acd.metrics;
+
+import java.util.Map;
+
+/**
+ * Métricas publicadas por JMX como es.fpfempa.acd:type=Metrics (se ven con JConsole o VisualVM)
+ */
+public interface AcdMetricsMXBean {
+
+    long getStatementCount();
+
+    long getEntityLoadCount();
+
+    long getRowsFetched();
+
+    long getFlushCount();
+
+    long getConnectionAcquireCount();
+
+    double getConnectionAcquireMeanMillis();
+
+    double getConnectionAcquireP99Millis();
+
+    int getPoolActiveConnections();
+
+    int getPoolIdleConnections();
+
+    int getPoolThreadsAwaitingConnection();
+
+    int getPoolMaximumSize();
+
+    Map<String, Double> getCacheRegionHitRatios();
+
+    Map<String, Long> getCacheRegionMisses();
+
+    Map<String, Long> getCacheRegionElements();
+
+    long getSlowThresholdMillis();
+
+    void setSlowThresholdMillis(long millis);
+
+    Map<String, Long> getDaoCallCounts();
+
+    Map<String, Double> getDaoMeanMillis();
+
+    Map<String, Double> getDaoP99Millis();
+
+    Map<String, Long> getDaoStatementCounts();
+
+    Map<String, Long> getDaoSlowCallCounts();
+
+    double getEmailCacheHitRatio();
+
+    long getEmailCacheNegativeHits();
+
+    long getEmailCacheEvictions();
+
+    long getEmailCacheSize();
+
+    int getChangeLogPending();
+
+    long getChangeLogBlockedAppends();
+
+    long getChangeLogFailedWrites();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,25 @@
+package es.fpfempa.acd.metrics;
+
+/**
+ * Tiempo que se tarda en obtener una conexión del pool (lo registra TimedHikariConnectionProvider).
+ * Si crece, el pool se está quedando corto para la concurrencia que hay.
+ */
+public final class ConnectionMetrics {
+
+    private static final LatencyHistogram ACQUIRE = new LatencyHistogram();
+
+    private ConnectionMetrics() {
+    }
+
+    public static void recordAcquire(long nanos) {
+        ACQUIRE.record(nanos);
+    }
+
+    public static LatencyHistogram.Snapshot acquireSnapshot() {
+        return ACQUIRE.snapshot();
+    }
+
+    public static void reset() {
+        ACQUIRE.reset();
+    }
+}
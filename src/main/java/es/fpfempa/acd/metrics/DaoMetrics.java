@@ -0,0 +1,139 @@
+package es.fpfempa.acd.metrics;
+
+import java.lang.System.Logger.Level;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas por método de DAO: histograma de latencia, número de llamadas, sentencias SQL lanzadas
+ * (las cuenta StatementCountingInspector mientras el método está en marcha) y llamadas lentas.
+ * Las llamadas que superan acd.metrics.slowThresholdMs (250 ms por defecto) se registran en el log,
+ * como mucho una vez cada 10 s por método para no inundarlo.
+ */
+public final class DaoMetrics {
+
+    private static final System.Logger LOG = System.getLogger(DaoMetrics.class.getName());
+    private static final long SLOW_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final ConcurrentMap<String, MethodStats> METHODS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<MethodStats> CURRENT = new ThreadLocal<>();
+
+    private static volatile long slowThresholdNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("acd.metrics.slowThresholdMs", 250));
+
+    private DaoMetrics() {
+    }
+
+    /**
+     * Empieza a medir un método; el tiempo se registra al cerrar el Timer (try-with-resources)
+     * @param method Nombre del método, p. ej. "OrderDao.findById"
+     */
+    public static Timer start(String method) {
+        return new Timer(METHODS.computeIfAbsent(method, MethodStats::new));
+    }
+
+    // la llama el StatementInspector de Hibernate por cada sentencia SQL preparada
+    static void onStatement() {
+        MethodStats current = CURRENT.get();
+        if (current != null) {
+            current.statements.increment();
+        }
+    }
+
+    public static void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public static long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    /**
+     * Estado actual de todos los métodos medidos, ordenados por nombre
+     */
+    public static Map<String, MethodSnapshot> snapshot() {
+        Map<String, MethodSnapshot> snapshot = new TreeMap<>();
+        METHODS.forEach((name, stats) -> snapshot.put(name, stats.snapshot()));
+        return snapshot;
+    }
+
+    public static void reset() {
+        METHODS.values().forEach(MethodStats::reset);
+    }
+
+    /**
+     * Medida en curso de un método
+     */
+    public static final class Timer implements AutoCloseable {
+        private final MethodStats stats;
+        private final MethodStats previous;
+        private final long startNanos;
+
+        private Timer(MethodStats stats) {
+            this.stats = stats;
+            this.previous = CURRENT.get();
+            this.startNanos = System.nanoTime();
+            CURRENT.set(stats);
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - startNanos;
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+            stats.latency.record(elapsed);
+            if (elapsed >= slowThresholdNanos) {
+                stats.slowCalls.increment();
+                stats.logSlowCall(elapsed);
+            }
+        }
+    }
+
+    /**
+     * Métricas de un método de DAO en un momento dado
+     */
+    public record MethodSnapshot(String method, LatencyHistogram.Snapshot latency, long statements, long slowCalls) {
+
+        public double statementsPerCall() {
+            return latency.count() == 0 ? 0.0 : (double) statements / latency.count();
+        }
+    }
+
+    private static final class MethodStats {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+        private final AtomicLong lastSlowLogNanos = new AtomicLong(System.nanoTime() - SLOW_LOG_INTERVAL_NANOS);
+
+        private MethodStats(String name) {
+            this.name = name;
+        }
+
+        private void logSlowCall(long elapsedNanos) {
+            long now = System.nanoTime();
+            long last = lastSlowLogNanos.get();
+            if (now - last >= SLOW_LOG_INTERVAL_NANOS && lastSlowLogNanos.compareAndSet(last, now)) {
+                LOG.log(Level.WARNING, "Llamada lenta a {0}: {1} ms (umbral {2} ms, {3} lentas en total)",
+                        name, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getSlowThresholdMillis(), slowCalls.sum());
+            }
+        }
+
+        private MethodSnapshot snapshot() {
+            return new MethodSnapshot(name, latency.snapshot(), statements.sum(), slowCalls.sum());
+        }
+
+        private void reset() {
+            latency.reset();
+            statements.reset();
+            slowCalls.reset();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package es.fpfempa.acd.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin bloqueos, para registrar desde muchos hilos a la vez.
+ * Cada potencia de 2 se divide en 4 cubos, así que los percentiles tienen un error máximo de ~25%,
+ * suficiente para ver p50/p95/p99 sin guardar cada medida.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long sum = totalNanos.sum();
+        long max = maxNanos.get();
+        // el límite superior del cubo puede pasarse del máximo real
+        return new Snapshot(total,
+                total == 0 ? 0 : sum / total,
+                Math.min(max, percentile(counts, total, 0.50)),
+                Math.min(max, percentile(counts, total, 0.95)),
+                Math.min(max, percentile(counts, total, 0.99)),
+                max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    private static long percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    // valores 0..3 tienen su propio cubo; a partir de ahí, 4 cubos por cada potencia de 2
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return exponent * SUB_BUCKETS + sub - SUB_BUCKETS;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket + SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket + SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Resumen del histograma en un momento dado (todos los tiempos en nanosegundos)
+     */
+    public record Snapshot(long count, long meanNanos, long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+
+        public double meanMillis() {
+            return meanNanos / 1_000_000.0;
+        }
+
+        public double p50Millis() {
+            return p50Nanos / 1_000_000.0;
+        }
+
+        public double p95Millis() {
+            return p95Nanos / 1_000_000.0;
+        }
+
+        public double p99Millis() {
+            return p99Nanos / 1_000_000.0;
+        }
+
+        public double maxMillis() {
+            return maxNanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package es.fpfempa.acd.metrics;
+
+import es.fpfempa.acd.audit.ChangeEventLog;
+import es.fpfempa.acd.dao.CustomerEmailCache;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.System.Logger.Level;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Junta las métricas de los DAO, de Hibernate (Statistics) y del pool de conexiones,
+ * las publica por JMX y escribe un resumen en el log cada cierto tiempo.
+ */
+public class MetricsReporter implements AcdMetricsMXBean, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(MetricsReporter.class.getName());
+    private static final String OBJECT_NAME = "es.fpfempa.acd:type=Metrics";
+
+    private final Statistics statistics;
+    // solo para leer las métricas del pool; no se cierra aquí
+    private final EntityManagerProvider emProvider;
+    private final ScheduledExecutorService scheduler;
+    private ObjectName registeredName;
+
+    private MetricsReporter(EntityManagerFactory emf, Duration logInterval) {
+        this.statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        this.emProvider = new EntityManagerProvider(emf);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "acd-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!logInterval.isZero() && !logInterval.isNegative()) {
+            scheduler.scheduleAtFixedRate(this::logSummary, logInterval.toMillis(), logInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Registra el MBean y programa el resumen periódico
+     * @param emf EntityManagerFactory de la que leer las estadísticas de Hibernate
+     * @param logInterval Cada cuánto escribir el resumen en el log (cero para no escribirlo)
+     */
+    public static MetricsReporter start(EntityManagerFactory emf, Duration logInterval) {
+        MetricsReporter reporter = new MetricsReporter(emf, logInterval);
+        reporter.registerMBean();
+        return reporter;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "No se pudieron publicar las métricas por JMX: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getStatementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Override
+    public long getEntityLoadCount() {
+        return statistics.getEntityLoadCount();
+    }
+
+    // filas devueltas por consultas JPQL/HQL (no incluye em.find ni cargas perezosas)
+    @Override
+    public long getRowsFetched() {
+        long rows = 0;
+        for (String query : statistics.getQueries()) {
+            rows += statistics.getQueryStatistics(query).getExecutionRowCount();
+        }
+        return rows;
+    }
+
+    @Override
+    public long getFlushCount() {
+        return statistics.getFlushCount();
+    }
+
+    @Override
+    public long getConnectionAcquireCount() {
+        return ConnectionMetrics.acquireSnapshot().count();
+    }
+
+    @Override
+    public double getConnectionAcquireMeanMillis() {
+        return ConnectionMetrics.acquireSnapshot().meanMillis();
+    }
+
+    @Override
+    public double getConnectionAcquireP99Millis() {
+        return ConnectionMetrics.acquireSnapshot().p99Millis();
+    }
+
+    // pool de conexiones (HikariCP); 0 si la unidad de persistencia no lo usa
+    @Override
+    public int getPoolActiveConnections() {
+        EntityManagerProvider.PoolMetrics pool = emProvider.getPoolMetrics();
+        return pool != null ? pool.activeConnections() : 0;
+    }
+
+    @Override
+    public int getPoolIdleConnections() {
+        EntityManagerProvider.PoolMetrics pool = emProvider.getPoolMetrics();
+        return pool != null ? pool.idleConnections() : 0;
+    }
+
+    @Override
+    public int getPoolThreadsAwaitingConnection() {
+        EntityManagerProvider.PoolMetrics pool = emProvider.getPoolMetrics();
+        return pool != null ? pool.threadsAwaitingConnection() : 0;
+    }
+
+    @Override
+    public int getPoolMaximumSize() {
+        EntityManagerProvider.PoolMetrics pool = emProvider.getPoolMetrics();
+        return pool != null ? pool.maximumPoolSize() : 0;
+    }
+
+    // caché de segundo nivel, por región
+    @Override
+    public Map<String, Double> getCacheRegionHitRatios() {
+        return perRegion(EntityManagerProvider.CacheRegionMetrics::hitRatio);
+    }
+
+    @Override
+    public Map<String, Long> getCacheRegionMisses() {
+        return perRegion(EntityManagerProvider.CacheRegionMetrics::misses);
+    }
+
+    @Override
+    public Map<String, Long> getCacheRegionElements() {
+        return perRegion(EntityManagerProvider.CacheRegionMetrics::elementsInMemory);
+    }
+
+    private <T> Map<String, T> perRegion(Function<EntityManagerProvider.CacheRegionMetrics, T> value) {
+        Map<String, T> values = new TreeMap<>();
+        emProvider.getCacheMetrics().forEach(region -> values.put(region.region(), value.apply(region)));
+        return values;
+    }
+
+    @Override
+    public long getSlowThresholdMillis() {
+        return DaoMetrics.getSlowThresholdMillis();
+    }
+
+    @Override
+    public void setSlowThresholdMillis(long millis) {
+        DaoMetrics.setSlowThresholdMillis(millis);
+    }
+
+    @Override
+    public Map<String, Long> getDaoCallCounts() {
+        return perMethod(method -> method.latency().count());
+    }
+
+    @Override
+    public Map<String, Double> getDaoMeanMillis() {
+        return perMethod(method -> method.latency().meanMillis());
+    }
+
+    @Override
+    public Map<String, Double> getDaoP99Millis() {
+        return perMethod(method -> method.latency().p99Millis());
+    }
+
+    @Override
+    public Map<String, Long> getDaoStatementCounts() {
+        return perMethod(DaoMetrics.MethodSnapshot::statements);
+    }
+
+    @Override
+    public Map<String, Long> getDaoSlowCallCounts() {
+        return perMethod(DaoMetrics.MethodSnapshot::slowCalls);
+    }
+
+    @Override
+    public double getEmailCacheHitRatio() {
+        return CustomerEmailCache.shared().stats().hitRatio();
+    }
+
+    @Override
+    public long getEmailCacheNegativeHits() {
+        return CustomerEmailCache.shared().stats().negativeHits();
+    }
+
+    @Override
+    public long getEmailCacheEvictions() {
+        return CustomerEmailCache.shared().stats().evictions();
+    }
+
+    @Override
+    public long getEmailCacheSize() {
+        return CustomerEmailCache.shared().stats().size();
+    }
+
+    // registro de cambios en marcha (ChangeEventLog.active()); 0 si no hay ninguno
+    @Override
+    public int getChangeLogPending() {
+        ChangeEventLog log = ChangeEventLog.active();
+        return log != null ? log.getPending() : 0;
+    }
+
+    @Override
+    public long getChangeLogBlockedAppends() {
+        ChangeEventLog log = ChangeEventLog.active();
+        return log != null ? log.getBlockedAppends() : 0;
+    }
+
+    @Override
+    public long getChangeLogFailedWrites() {
+        ChangeEventLog log = ChangeEventLog.active();
+        return log != null ? log.getFailedWrites() : 0;
+    }
+
+    private static <T> Map<String, T> perMethod(Function<DaoMetrics.MethodSnapshot, T> value) {
+        Map<String, T> values = new TreeMap<>();
+        DaoMetrics.snapshot().forEach((name, method) -> values.put(name, value.apply(method)));
+        return values;
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        LatencyHistogram.Snapshot acquire = ConnectionMetrics.acquireSnapshot();
+        summary.append(String.format("sentencias=%d entidades=%d filas=%d flushes=%d conexiones=%d (media %.2f ms, p99 %.2f ms)%n",
+                getStatementCount(), getEntityLoadCount(), getRowsFetched(), getFlushCount(),
+                acquire.count(), acquire.meanMillis(), acquire.p99Millis()));
+        EntityManagerProvider.PoolMetrics pool = emProvider.getPoolMetrics();
+        if (pool != null) {
+            summary.append(String.format("pool: activas=%d libres=%d total=%d/%d hilos esperando=%d%n",
+                    pool.activeConnections(), pool.idleConnections(), pool.totalConnections(), pool.maximumPoolSize(),
+                    pool.threadsAwaitingConnection()));
+        }
+        for (EntityManagerProvider.CacheRegionMetrics region : emProvider.getCacheMetrics()) {
+            summary.append(String.format("  caché %-38s aciertos=%.1f%% fallos=%d guardadas=%d entradas=%d%n",
+                    region.region(), region.hitRatio() * 100, region.misses(), region.puts(), region.elementsInMemory()));
+        }
+        CustomerEmailCache.Stats emailCache = CustomerEmailCache.shared().stats();
+        summary.append(String.format("caché de emails: aciertos=%.1f%% (negativos=%d) fallos=%d expulsadas=%d entradas=%d%n",
+                emailCache.hitRatio() * 100, emailCache.negativeHits(), emailCache.misses(),
+                emailCache.evictions(), emailCache.size()));
+        ChangeEventLog changeLog = ChangeEventLog.active();
+        if (changeLog != null) {
+            summary.append(String.format("registro de cambios: pendientes=%d esperas con la cola llena=%d escrituras fallidas=%d%n",
+                    changeLog.getPending(), changeLog.getBlockedAppends(), changeLog.getFailedWrites()));
+        }
+        for (DaoMetrics.MethodSnapshot method : DaoMetrics.snapshot().values()) {
+            LatencyHistogram.Snapshot latency = method.latency();
+            summary.append(String.format("  %-40s llamadas=%d media=%.2f ms p50=%.2f ms p95=%.2f ms p99=%.2f ms max=%.2f ms sql/llamada=%.1f lentas=%d%n",
+                    method.method(), latency.count(), latency.meanMillis(), latency.p50Millis(), latency.p95Millis(),
+                    latency.p99Millis(), latency.maxMillis(), method.statementsPerCall(), method.slowCalls()));
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        statistics.clear();
+        DaoMetrics.reset();
+        ConnectionMetrics.reset();
+    }
+
+    private void logSummary() {
+        try {
+            LOG.log(Level.INFO, "Métricas de acceso a datos:\n" + getSummary());
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "No se pudo generar el resumen de métricas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Para el resumen periódico y retira el MBean
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                LOG.log(Level.DEBUG, "El MBean de métricas ya no estaba registrado");
+            }
+        }
+    }
+}
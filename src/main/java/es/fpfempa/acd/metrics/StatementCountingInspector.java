@@ -0,0 +1,16 @@
+package es.fpfempa.acd.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * StatementInspector de Hibernate (hibernate.session_factory.statement_inspector) que cuenta cada sentencia
+ * SQL y se la atribuye al método de DAO que se está midiendo en ese hilo. No modifica el SQL.
+ */
+public class StatementCountingInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        DaoMetrics.onStatement();
+        return sql;
+    }
+}
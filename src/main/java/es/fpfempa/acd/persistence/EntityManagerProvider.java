@@ -0,0 +1,179 @@
+package es.fpfempa.acd.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Proporciona un EntityManager nuevo por cada unidad de trabajo.
+ * El EntityManagerFactory (y el pool de conexiones que hay debajo) es thread-safe y se comparte;
+ * los EntityManager no, así que cada petición abre el suyo y lo cierra al terminar.
+ */
+public class EntityManagerProvider implements AutoCloseable {
+
+    private final EntityManagerFactory emf;
+
+    public EntityManagerProvider(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * Crea el EntityManagerFactory de la unidad de persistencia indicada.
+     * Las propiedades de sistema hibernate.hikari.* y jakarta.persistence.jdbc.* sobrescriben las de persistence.xml
+     * (p. ej. -Dhibernate.hikari.maximumPoolSize=20).
+     * Antes de devolverlo pone al día los generadores de IDs con los datos existentes (IdGeneratorSeeder)
+     * @param persistenceUnit Nombre de la unidad de persistencia
+     */
+    public static EntityManagerProvider create(String persistenceUnit) {
+        Map<String, Object> overrides = new HashMap<>();
+        System.getProperties().forEach((key, value) -> {
+            String name = key.toString();
+            if (name.startsWith("hibernate.hikari.") || name.startsWith("jakarta.persistence.jdbc.")) {
+                overrides.put(name, value.toString());
+            }
+        });
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(persistenceUnit, overrides);
+        try {
+            IdGeneratorSeeder.seed(emf);
+        } catch (RuntimeException e) {
+            emf.close();
+            throw e;
+        }
+        return new EntityManagerProvider(emf);
+    }
+
+    /**
+     * Abre un EntityManager nuevo. Quien lo abre es responsable de cerrarlo.
+     */
+    public EntityManager createEntityManager() {
+        return emf.createEntityManager();
+    }
+
+    /**
+     * Ejecuta una unidad de trabajo con su propio EntityManager y lo cierra al terminar.
+     * Las entidades devueltas quedan desconectadas (detached).
+     * @param work Trabajo a realizar con el EntityManager
+     * @return Resultado del trabajo
+     */
+    public <T> T withEntityManager(Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return work.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Igual que withEntityManager pero para trabajos sin resultado
+     */
+    public void runWithEntityManager(Consumer<EntityManager> work) {
+        withEntityManager(em -> {
+            work.accept(em);
+            return null;
+        });
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    /**
+     * Métricas actuales del pool de conexiones (MetricsReporter las publica por JMX y en su resumen)
+     * @return PoolMetrics o null si la unidad de persistencia no usa HikariCP
+     */
+    public PoolMetrics getPoolMetrics() {
+        HikariDataSource dataSource = getDataSource();
+        if (dataSource == null) {
+            return null;
+        }
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return new PoolMetrics(
+                pool.getActiveConnections(),
+                pool.getIdleConnections(),
+                pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(),
+                dataSource.getMaximumPoolSize(),
+                dataSource.getConnectionTimeout(),
+                dataSource.getLeakDetectionThreshold());
+    }
+
+    /**
+     * Tamaño máximo del pool, útil para limitar la concurrencia de quien use este proveedor
+     */
+    public int getMaximumPoolSize() {
+        HikariDataSource dataSource = getDataSource();
+        return dataSource != null ? dataSource.getMaximumPoolSize() : 1;
+    }
+
+    /**
+     * Estadísticas de la caché de segundo nivel por región (requiere hibernate.generate_statistics).
+     * MetricsReporter las publica por JMX y en su resumen
+     * @return Una entrada por región (entidades, colecciones y resultados de consultas)
+     */
+    public List<CacheRegionMetrics> getCacheMetrics() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        List<CacheRegionMetrics> metrics = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStats = statistics.getCacheRegionStatistics(region);
+            if (regionStats == null) {
+                continue;
+            }
+            long elements = regionStats.getElementCountInMemory();
+            metrics.add(new CacheRegionMetrics(region, regionStats.getHitCount(), regionStats.getMissCount(),
+                    regionStats.getPutCount(), elements < 0 ? -1 : elements));
+        }
+        return metrics;
+    }
+
+    private HikariDataSource getDataSource() {
+        ConnectionProvider connectionProvider = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (connectionProvider == null || !connectionProvider.isUnwrappableAs(HikariDataSource.class)) {
+            return null;
+        }
+        return connectionProvider.unwrap(HikariDataSource.class);
+    }
+
+    @Override
+    public void close() {
+        if (emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+    /**
+     * Aciertos y fallos de una región de la caché de segundo nivel
+     * (elementsInMemory es -1 si el proveedor de caché no lo sabe)
+     */
+    public record CacheRegionMetrics(String region, long hits, long misses, long puts, long elementsInMemory) {
+
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * Foto del estado del pool de conexiones
+     */
+    public record PoolMetrics(int activeConnections, int idleConnections, int totalConnections,
+                              int threadsAwaitingConnection, int maximumPoolSize,
+                              long connectionTimeoutMs, long leakDetectionThresholdMs) {
+    }
+}
@@ -0,0 +1,110 @@
+package es.fpfempa.acd.persistence;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.PooledOptimizer;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pone al día las filas de id_generators con los datos que ya hay en cada tabla.
+ * Los IDs de Customer, Address, Order... los reparte un TableGenerator de Hibernate desde id_generators, no el
+ * AUTO_INCREMENT de MySQL: en una base con filas previas, una fila del generador que no existe o se ha quedado atrás
+ * repartiría IDs ya usados. Para cada entidad con TableGenerator se adelanta su fila hasta que el siguiente ID
+ * sea MAX(id) + 1. Una fila que ya va por delante no se toca, así que se puede ejecutar en cada arranque
+ * (lo hace EntityManagerProvider.create) y con otras instancias de la aplicación en marcha.
+ */
+public final class IdGeneratorSeeder {
+
+    private static final System.Logger LOG = System.getLogger(IdGeneratorSeeder.class.getName());
+
+    private IdGeneratorSeeder() {
+    }
+
+    /**
+     * Revisa los generadores de todas las entidades de la unidad de persistencia
+     * @return Filas de id_generators creadas o adelantadas
+     */
+    public static int seed(EntityManagerFactory emf) {
+        SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        List<EntityPersister> persisters = new ArrayList<>();
+        sessionFactory.getMappingMetamodel().forEachEntityDescriptor(persisters::add);
+        // Hibernate 6 guarda por defecto en la fila el último valor usado, no el siguiente
+        boolean storesLastUsed = !"false".equals(String.valueOf(sessionFactory.getProperties()
+                .getOrDefault(AvailableSettings.TABLE_GENERATOR_STORE_LAST_USED, "true")));
+        int seeded = 0;
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (EntityPersister persister : persisters) {
+                if (persister.getGenerator() instanceof TableGenerator generator && seed(em, persister, generator, storesLastUsed)) {
+                    seeded++;
+                }
+            }
+        } finally {
+            em.close();
+        }
+        return seeded;
+    }
+
+    private static boolean seed(EntityManager em, EntityPersister persister, TableGenerator generator, boolean storesLastUsed) {
+        String table = ((AbstractEntityPersister) persister).getTableName();
+        String idColumn = persister.getIdentifierColumnNames()[0];
+        try {
+            em.getTransaction().begin();
+            Number maxId = (Number) em.createNativeQuery("SELECT MAX(" + idColumn + ") FROM " + table).getSingleResult();
+            if (maxId == null) {
+                // tabla vacía: vale el valor inicial del generador
+                em.getTransaction().commit();
+                return false;
+            }
+            long required = storedValueFor(generator, maxId.longValue() + 1, storesLastUsed);
+            // FOR UPDATE: otra instancia que arranque a la vez espera y ya ve la fila adelantada
+            List<?> current = em.createNativeQuery("SELECT " + generator.getValueColumnName() + " FROM " + generator.getTableName()
+                            + " WHERE " + generator.getSegmentColumnName() + " = ?1 FOR UPDATE")
+                    .setParameter(1, generator.getSegmentValue())
+                    .getResultList();
+            boolean seeded = false;
+            if (current.isEmpty()) {
+                em.createNativeQuery("INSERT INTO " + generator.getTableName() + " (" + generator.getSegmentColumnName() + ", "
+                                + generator.getValueColumnName() + ") VALUES (?1, ?2)")
+                        .setParameter(1, generator.getSegmentValue())
+                        .setParameter(2, required)
+                        .executeUpdate();
+                seeded = true;
+            } else if (((Number) current.get(0)).longValue() < required) {
+                em.createNativeQuery("UPDATE " + generator.getTableName() + " SET " + generator.getValueColumnName() + " = ?1 WHERE "
+                                + generator.getSegmentColumnName() + " = ?2")
+                        .setParameter(1, required)
+                        .setParameter(2, generator.getSegmentValue())
+                        .executeUpdate();
+                seeded = true;
+            }
+            em.getTransaction().commit();
+            if (seeded) {
+                LOG.log(Level.INFO, "Generador de IDs '" + generator.getSegmentValue() + "' adelantado hasta " + required
+                        + " (MAX(" + idColumn + ") = " + maxId + ")");
+            }
+            return seeded;
+        } catch (Exception e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw new RuntimeException("Error al iniciar el generador de IDs de " + table + ": " + e.getMessage());
+        }
+    }
+
+    // Valor que hay que guardar en la fila para que el generador reparta a partir de nextId. El generador lee la fila
+    // (más 1 si guarda el último valor usado); con el optimizador "pooled" (el de los @TableGenerator con
+    // allocationSize > 1) lo leído es el final del bloque, que empieza allocationSize - 1 por debajo.
+    private static long storedValueFor(TableGenerator generator, long nextId, boolean storesLastUsed) {
+        long read = generator.getOptimizer() instanceof PooledOptimizer ? nextId + generator.getIncrementSize() - 1 : nextId;
+        return storesLastUsed ? read - 1 : read;
+    }
+}
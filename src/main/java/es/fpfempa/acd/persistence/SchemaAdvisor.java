@@ -0,0 +1,301 @@
+package es.fpfempa.acd.persistence;
+
+import es.fpfempa.acd.dao.AddressDao;
+import es.fpfempa.acd.dao.CustomerDao;
+import es.fpfempa.acd.dao.CustomerEmailCache;
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.OrderHistoryEntry;
+import es.fpfempa.acd.dao.ProductDao;
+import es.fpfempa.acd.dao.ReportDao;
+import es.fpfempa.acd.entities.AddressNormalizer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Comprueba con EXPLAIN que las consultas de los DAO usan índices.
+ * Ejecuta cada método de DAO contra la base de datos (que debe tener datos), captura el SQL que genera Hibernate
+ * con sus parámetros y pide el plan de ejecución de cada sentencia. Un recorrido completo de una tabla
+ * es un fallo salvo en las consultas que por diseño leen la tabla entera.
+ * Nada de lo que hacen los DAO se confirma: los COMMIT se ignoran y al final se hace ROLLBACK.
+ * Soporta MySQL y H2.
+ */
+public class SchemaAdvisor {
+
+    // H2 marca los recorridos completos con un comentario /* esquema.tabla.tableScan */
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\*\\s*([\\w.]+)\\.tableScan");
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    public SchemaAdvisor(EntityManagerFactory emf) {
+        this.sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * Uso en CI: java -cp ... es.fpfempa.acd.persistence.SchemaAdvisor -Djakarta.persistence.jdbc.url=...
+     * Termina con código 1 si alguna consulta recorre una tabla entera sin esperarlo.
+     */
+    public static void main(String[] args) {
+        boolean ok;
+        try (EntityManagerProvider emProvider = EntityManagerProvider.create("acdPU")) {
+            List<QueryPlan> plans = new SchemaAdvisor(emProvider.getEntityManagerFactory()).check();
+            plans.forEach(plan -> System.out.println(plan.describe()));
+            ok = plans.stream().allMatch(QueryPlan::ok);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Ejecuta todas las consultas de los DAO y analiza su plan
+     * @return Un QueryPlan por cada sentencia distinta de cada método
+     */
+    public List<QueryPlan> check() {
+        Samples samples = loadSamples();
+        List<QueryPlan> plans = new ArrayList<>();
+        for (Probe probe : probes(samples)) {
+            plans.addAll(explain(probe));
+        }
+        return plans;
+    }
+
+    /**
+     * Métodos de DAO que se comprueban, con parámetros reales sacados de la base de datos
+     */
+    private List<Probe> probes(Samples s) {
+        Instant now = Instant.now();
+        Instant lastWeek = now.minus(7, ChronoUnit.DAYS);
+        return List.of(
+                new Probe("AddressDao.findByCustomerId", false, em -> new AddressDao(em).findByCustomerId(s.customerId())),
+                new Probe("AddressDao.findByFingerprint", false,
+                        em -> new AddressDao(em).findByFingerprint(s.customerId(), AddressNormalizer.fingerprint("Calle Mayor 1", "Madrid", "ES"))),
+                new Probe("CustomerDao.findByEmail", false, em -> {
+                    // si el email ya está en la caché no llega ninguna consulta a la base de datos
+                    CustomerEmailCache.shared().invalidate(s.email());
+                    new CustomerDao(em).findByEmail(s.email());
+                }),
+                new Probe("CustomerDao.findByIdWithAddresses", false, em -> new CustomerDao(em).findByIdWithAddresses(s.customerId())),
+                new Probe("CustomerDao.findAll", true, em -> new CustomerDao(em).findAll()),
+                new Probe("CustomerDao.findPageAfter", false, em -> new CustomerDao(em).findPageAfter(s.customerId(), 20)),
+                new Probe("CustomerDao.findSummaries", false, em -> new CustomerDao(em).findSummaries(1, 20)),
+                new Probe("OrderDao.findByIdConDetalles", false, em -> new OrderDao(em).findByIdConDetalles(s.orderId())),
+                new Probe("OrderDao.findByIdsConDetalles", false, em -> new OrderDao(em).findByIdsConDetalles(s.orderIds())),
+                new Probe("OrderDao.findAggregatesByIds", false, em -> new OrderDao(em).findAggregatesByIds(s.orderIds())),
+                new Probe("OrderDao.findSummaries", false, em -> new OrderDao(em).findSummaries(1, 20)),
+                new Probe("OrderDao.findHistoryPageAfter", false, em -> {
+                    OrderDao dao = new OrderDao(em);
+                    List<OrderHistoryEntry> first = dao.findHistoryPageAfter(s.customerId(), null, 2);
+                    if (!first.isEmpty()) {
+                        dao.findHistoryPageAfter(s.customerId(), first.get(first.size() - 1), 2);
+                    }
+                }),
+                new Probe("OrderDao.updateShippingAddress", false,
+                        em -> new OrderDao(em).updateShippingAddress(s.orderId(), s.customerId(), s.addressId())),
+                new Probe("OrderDao.reassignShippingAddress", false,
+                        em -> new OrderDao(em).reassignShippingAddress(s.customerId(), s.addressId(), s.addressId())),
+                new Probe("ProductDao.findOptionalBySku", false, em -> new ProductDao(em).findOptionalBySku("SKU-000001")),
+                new Probe("ProductDao.findCatalogRowsChangedSince", false,
+                        em -> new ProductDao(em).findCatalogRowsChangedSince(now.minusSeconds(10))),
+                // los informes de un cuadro de mando piden pocos días: deben leer solo ese tramo de idx_orders_order_date
+                new Probe("ReportDao.findRevenueByDayAndCountry", false,
+                        em -> new ReportDao(em).findRevenueByDayAndCountry(lastWeek, now)),
+                new Probe("ReportDao.findCountsByDayAndStatus", false,
+                        em -> new ReportDao(em).findCountsByDayAndStatus(lastWeek, now)),
+                // con un catálogo pequeño el optimizador puede empezar por products entera; orders sigue yendo por rango
+                new Probe("ReportDao.findTopProducts", true,
+                        em -> new ReportDao(em).findTopProducts(lastWeek, now, 0, 10)));
+    }
+
+    private Samples loadSamples() {
+        try (Session session = sessionFactory.openSession()) {
+            List<Object[]> rows = session.createSelectionQuery(
+                            "SELECT o.id, o.customer.id, o.customer.email, o.shippingAddress.id FROM Order o " +
+                            "WHERE o.shippingAddress IS NOT NULL ORDER BY o.id", Object[].class)
+                    .setMaxResults(5)
+                    .getResultList();
+            if (rows.isEmpty()) {
+                throw new RuntimeException("Error al preparar el asesor de esquema: no hay pedidos con dirección de envío en la base de datos");
+            }
+            Object[] first = rows.get(0);
+            List<Integer> orderIds = rows.stream().map(row -> (Integer) row[0]).toList();
+            return new Samples((Integer) first[0], orderIds, (Integer) first[1], (String) first[2], (Integer) first[3]);
+        }
+    }
+
+    private List<QueryPlan> explain(Probe probe) {
+        ConnectionProvider connectionProvider = sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
+        try {
+            Connection connection = connectionProvider.getConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            try {
+                connection.setAutoCommit(false);
+                Map<String, CapturedStatement> captured = new LinkedHashMap<>();
+                try (Session session = sessionFactory.withOptions().connection(capturing(connection, captured)).openSession()) {
+                    // sin caché de segundo nivel ni de consultas: tiene que llegar todo a la base de datos
+                    session.setCacheMode(CacheMode.IGNORE);
+                    probe.work().accept(session);
+                }
+                String database = connection.getMetaData().getDatabaseProductName();
+                List<QueryPlan> plans = new ArrayList<>();
+                for (CapturedStatement statement : captured.values()) {
+                    List<String> fullScans = fullScans(connection, database, statement);
+                    plans.add(new QueryPlan(probe.name(), statement.sql(), fullScans, probe.fullScanExpected()));
+                }
+                return plans;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+                connectionProvider.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al analizar " + probe.name() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tablas que el plan de la sentencia recorre enteras
+     */
+    private static List<String> fullScans(Connection connection, String database, CapturedStatement statement) throws SQLException {
+        List<String> fullScans = new ArrayList<>();
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+            statement.bindTo(explain);
+            try (ResultSet plan = explain.executeQuery()) {
+                if (database.toLowerCase(Locale.ROOT).contains("mysql")) {
+                    // una fila por tabla; type = ALL es un recorrido completo
+                    while (plan.next()) {
+                        if ("ALL".equals(plan.getString("type")) && plan.getString("table") != null) {
+                            fullScans.add(plan.getString("table"));
+                        }
+                    }
+                } else if (database.toLowerCase(Locale.ROOT).contains("h2")) {
+                    while (plan.next()) {
+                        Matcher matcher = H2_TABLE_SCAN.matcher(plan.getString(1));
+                        while (matcher.find()) {
+                            fullScans.add(matcher.group(1));
+                        }
+                    }
+                } else {
+                    throw new SQLException("EXPLAIN no soportado para " + database);
+                }
+            }
+        }
+        return fullScans;
+    }
+
+    /**
+     * Envuelve la conexión para guardar cada SELECT/UPDATE/DELETE con los parámetros de su primera ejecución.
+     * Los COMMIT y cambios de autocommit se ignoran para poder deshacerlo todo al terminar.
+     */
+    private static Connection capturing(Connection connection, Map<String, CapturedStatement> captured) {
+        return (Connection) Proxy.newProxyInstance(SchemaAdvisor.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "commit", "setAutoCommit" -> {
+                            return null;
+                        }
+                        case "getAutoCommit" -> {
+                            return false;
+                        }
+                        case "prepareStatement" -> {
+                            PreparedStatement statement = (PreparedStatement) invoke(connection, method, args);
+                            String sql = (String) args[0];
+                            String verb = sql.stripLeading().toLowerCase(Locale.ROOT);
+                            if (verb.startsWith("select") || verb.startsWith("update") || verb.startsWith("delete")) {
+                                return capturing(statement, sql, captured);
+                            }
+                            return statement;
+                        }
+                        default -> {
+                            return invoke(connection, method, args);
+                        }
+                    }
+                });
+    }
+
+    private static PreparedStatement capturing(PreparedStatement statement, String sql, Map<String, CapturedStatement> captured) {
+        List<BindCall> binds = new ArrayList<>();
+        return (PreparedStatement) Proxy.newProxyInstance(SchemaAdvisor.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        binds.add(new BindCall(method, args));
+                    } else if (name.equals("clearParameters")) {
+                        binds.clear();
+                    } else if (name.startsWith("execute")) {
+                        captured.putIfAbsent(sql, new CapturedStatement(sql, List.copyOf(binds)));
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Plan de una sentencia generada por un método de DAO
+     * @param query Método de DAO que la generó
+     * @param sql SQL generado por Hibernate
+     * @param fullScans Tablas que se recorren enteras
+     * @param fullScanExpected Si el método lee la tabla entera a propósito
+     */
+    public record QueryPlan(String query, String sql, List<String> fullScans, boolean fullScanExpected) {
+
+        public boolean ok() {
+            return fullScans.isEmpty() || fullScanExpected;
+        }
+
+        public String describe() {
+            String verdict = fullScans.isEmpty() ? "OK"
+                    : fullScanExpected ? "OK (recorre " + fullScans + " a propósito)"
+                    : "RECORRIDO COMPLETO " + fullScans;
+            return String.format("%-36s %s%n    %s", query, verdict, sql);
+        }
+    }
+
+    private record Probe(String name, boolean fullScanExpected, Consumer<EntityManager> work) {
+    }
+
+    private record Samples(Integer orderId, List<Integer> orderIds, Integer customerId, String email, Integer addressId) {
+    }
+
+    private record BindCall(Method method, Object[] args) {
+    }
+
+    private record CapturedStatement(String sql, List<BindCall> binds) {
+
+        void bindTo(PreparedStatement statement) throws SQLException {
+            for (BindCall bind : binds) {
+                try {
+                    bind.method().invoke(statement, bind.args());
+                } catch (ReflectiveOperationException e) {
+                    throw new SQLException("No se pudo repetir " + bind.method().getName() + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package es.fpfempa.acd.persistence;
+
+import es.fpfempa.acd.metrics.ConnectionMetrics;
+import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Pool HikariCP de Hibernate que además mide cuánto se espera por cada conexión
+ */
+public class TimedHikariConnectionProvider extends HikariCPConnectionProvider {
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            ConnectionMetrics.recordAcquire(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package es.fpfempa.acd.services;
+
+import es.fpfempa.acd.dao.AddressDao;
+import es.fpfempa.acd.dao.DuplicateAddressGroup;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+
+import java.util.List;
+
+/**
+ * Proceso por lotes que junta las direcciones repetidas de cada cliente.
+ * Primero calcula la huella de las filas que no la tienen y después, para cada grupo con la misma huella,
+ * deja solo la dirección más antigua y mueve a ella los pedidos de las demás.
+ * Se puede lanzar tantas veces como se quiera: si no hay duplicados no cambia nada.
+ * Uso: java -cp ... es.fpfempa.acd.services.AddressDeduplicationJob
+ */
+public class AddressDeduplicationJob {
+
+    private final EntityManagerProvider emProvider;
+    private final int pageSize;
+    private final int groupsPerTransaction;
+
+    public AddressDeduplicationJob(EntityManagerProvider emProvider) {
+        this(emProvider, 500, 100);
+    }
+
+    /**
+     * @param pageSize Direcciones por transacción al calcular huellas
+     * @param groupsPerTransaction Grupos de duplicados que se juntan en cada transacción
+     */
+    public AddressDeduplicationJob(EntityManagerProvider emProvider, int pageSize, int groupsPerTransaction) {
+        if (pageSize < 1 || groupsPerTransaction < 1) {
+            throw new IllegalArgumentException("Los tamaños de página y de transacción deben ser mayores que 0");
+        }
+        this.emProvider = emProvider;
+        this.pageSize = pageSize;
+        this.groupsPerTransaction = groupsPerTransaction;
+    }
+
+    public static void main(String[] args) {
+        try (EntityManagerProvider emProvider = EntityManagerProvider.create("acdPU")) {
+            Result result = new AddressDeduplicationJob(emProvider).run();
+            System.out.println("Grupos de duplicados: " + result.groups() + ", direcciones borradas: " + result.deletedAddresses());
+        }
+    }
+
+    public Result run() {
+        return emProvider.withEntityManager(em -> {
+            AddressDao addressDao = new AddressDao(em);
+            Integer lastId = 0;
+            while (lastId != null) {
+                lastId = addressDao.fillMissingFingerprints(lastId, pageSize);
+            }
+
+            List<DuplicateAddressGroup> groups = addressDao.findDuplicateGroups();
+            int deleted = 0;
+            for (int from = 0; from < groups.size(); from += groupsPerTransaction) {
+                deleted += addressDao.mergeDuplicates(groups.subList(from, Math.min(groups.size(), from + groupsPerTransaction)));
+            }
+            return new Result(groups.size(), deleted);
+        });
+    }
+
+    /**
+     * @param groups Grupos de direcciones repetidas encontrados
+     * @param deletedAddresses Direcciones borradas al juntarlos
+     */
+    public record Result(int groups, int deletedAddresses) {
+    }
+}
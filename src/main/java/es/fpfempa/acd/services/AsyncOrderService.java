@@ -0,0 +1,113 @@
+package es.fpfempa.acd.services;
+
+import es.fpfempa.acd.dao.OrderLine;
+import es.fpfempa.acd.dao.OrderRequest;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Versión asíncrona de OrderService: cada llamada se ejecuta en su propio hilo virtual
+ * (con su propio EntityManager, porque OrderService abre uno por operación) y devuelve un CompletableFuture.
+ * Un semáforo limita las operaciones que usan la BD a la vez al tamaño del pool de conexiones:
+ * el resto espera aparcado en el semáforo, que para un hilo virtual no cuesta un hilo del sistema.
+ */
+public class AsyncOrderService implements AutoCloseable {
+
+    private final OrderService orderService;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public AsyncOrderService(EntityManagerProvider emProvider) {
+        this(new OrderService(emProvider), emProvider.getMaximumPoolSize());
+    }
+
+    /**
+     * @param orderService Servicio síncrono al que se delega
+     * @param maxConcurrentOperations Operaciones que pueden usar la BD a la vez (normalmente el tamaño del pool)
+     */
+    public AsyncOrderService(OrderService orderService, int maxConcurrentOperations) {
+        if (maxConcurrentOperations < 1) {
+            throw new IllegalArgumentException("Debe permitirse al menos una operación concurrente");
+        }
+        this.orderService = orderService;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.permits = new Semaphore(maxConcurrentOperations, true);
+    }
+
+    public CompletableFuture<Order> getOrderDetails(Integer orderId) {
+        return submit(() -> orderService.getOrderDetails(orderId));
+    }
+
+    public CompletableFuture<List<Address>> getCustomerAddresses(Customer customer) {
+        return submit(() -> orderService.getCustomerAddresses(customer));
+    }
+
+    public CompletableFuture<Address> createNewAddress(Customer customer, String line1, String city, String country) {
+        return submit(() -> orderService.createNewAddress(customer, line1, city, country));
+    }
+
+    public CompletableFuture<Void> changeShippingAddress(Order order, Address newAddress) {
+        return submit(() -> {
+            orderService.changeShippingAddress(order, newAddress);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Order> placeOrder(Integer customerId, Integer shippingAddressId, List<OrderLine> lines) {
+        return submit(() -> orderService.placeOrder(customerId, shippingAddressId, lines));
+    }
+
+    public CompletableFuture<Order> placeOrder(OrderRequest request) {
+        return submit(() -> orderService.placeOrder(request));
+    }
+
+    /**
+     * Operaciones que están esperando una conexión libre en este momento
+     */
+    public int getQueuedOperations() {
+        return permits.getQueueLength();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException("Operación interrumpida esperando una conexión", e);
+            }
+            try {
+                return work.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Deja de aceptar operaciones y espera a que terminen las que están en marcha
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package es.fpfempa.acd.services;
+
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.OrderPlacement;
+import es.fpfempa.acd.dao.OrderRequest;
+import es.fpfempa.acd.dao.OrdersNotPlacedException;
+import es.fpfempa.acd.dao.UpdateConflictException;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creación de pedidos con "group commit": los pedidos que llegan de muchos hilos a la vez se juntan en una cola
+ * y un único hilo los escribe por lotes con OrderDao.placeOrders, con un commit por lote en vez de uno por pedido
+ * (en MySQL cada commit espera al fsync del redo log, que es lo que más cuesta al crear pedidos sueltos).
+ * Mientras se escribe un lote se acumulan los siguientes, así que con poca carga cada lote lleva un solo pedido
+ * y nadie espera de más; maxDelay permite esperar un poco a que se llene cada lote.
+ * Cada pedido sigue siendo todo o nada: si uno no tiene stock se descarta sin afectar a los de su lote.
+ * Si falla el lote entero antes del commit (un bloqueo, un cliente que no existe...) sus pedidos se repiten uno a uno
+ * con OrderService.placeOrder, que ya tiene sus reintentos. Si falla el propio commit no se repite nada,
+ * porque los pedidos pueden haberse guardado: todos los del lote fallan con ese error.
+ */
+public class GroupCommitOrderPlacer implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(GroupCommitOrderPlacer.class.getName());
+
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    private final EntityManagerProvider emProvider;
+    private final OrderService orderService;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Submission> queue;
+    private final Thread writer;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong orders = new AtomicLong();
+    private volatile boolean closed;
+
+    public GroupCommitOrderPlacer(EntityManagerProvider emProvider) {
+        this(emProvider, new OrderService(emProvider), DEFAULT_MAX_BATCH, Duration.ZERO);
+    }
+
+    /**
+     * @param orderService Para repetir uno a uno los pedidos de un lote que falla entero
+     * @param maxBatch Pedidos como mucho en cada transacción; la cola admite 16 lotes y después submit espera
+     * @param maxDelay Cuánto esperar a que lleguen más pedidos antes de escribir un lote incompleto (0: nada)
+     */
+    public GroupCommitOrderPlacer(EntityManagerProvider emProvider, OrderService orderService, int maxBatch, Duration maxDelay) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+        }
+        this.emProvider = emProvider;
+        this.orderService = orderService;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(maxBatch * 16);
+        this.writer = new Thread(this::writeLoop, "acd-order-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Encola un pedido; si la cola está llena espera a que haya sitio
+     * @return Pedido creado, o falla con OutOfStockException, IllegalArgumentException o UpdateConflictException
+     *         como OrderService.placeOrder
+     */
+    public CompletableFuture<Order> submit(OrderRequest request) {
+        if (closed) {
+            throw new IllegalStateException("El creador de pedidos está cerrado");
+        }
+        Submission submission = new Submission(request, new CompletableFuture<>());
+        try {
+            queue.put(submission);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException("Interrumpido esperando sitio en la cola de pedidos", e);
+        }
+        return submission.future;
+    }
+
+    /**
+     * Crea un pedido y espera a que se confirme su lote
+     * @throws es.fpfempa.acd.dao.OutOfStockException si algún producto no tiene stock suficiente
+     */
+    public Order placeOrder(OrderRequest request) {
+        try {
+            return submit(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lotes escritos hasta ahora
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Pedidos procesados hasta ahora (creados o descartados)
+     */
+    public long getOrders() {
+        return orders.get();
+    }
+
+    private void writeLoop() {
+        List<Submission> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - batch.size());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch && maxDelayNanos > 0) {
+                    Submission next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // no se interrumpe desde aquí: close() espera a que se vacíe la cola
+                Thread.currentThread().interrupt();
+                return;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Submission> batch) {
+        batches.incrementAndGet();
+        orders.addAndGet(batch.size());
+        List<OrderRequest> requests = batch.stream().map(Submission::request).toList();
+        List<OrderPlacement> placements;
+        try {
+            placements = emProvider.withEntityManager(em -> new OrderDao(em).placeOrders(requests));
+        } catch (OrdersNotPlacedException | UpdateConflictException e) {
+            // no se guardó nada del lote
+            LOG.log(Level.WARNING, "Falló un lote de " + batch.size() + " pedidos, se repiten uno a uno: " + e.getMessage());
+            for (Submission submission : batch) {
+                try {
+                    submission.future.complete(orderService.placeOrder(submission.request));
+                } catch (RuntimeException failure) {
+                    submission.future.completeExceptionally(failure);
+                }
+            }
+            return;
+        } catch (RuntimeException e) {
+            LOG.log(Level.ERROR, "Falló un lote de " + batch.size() + " pedidos sin saber si se guardó, no se repite: " + e.getMessage());
+            batch.forEach(submission -> submission.future.completeExceptionally(e));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            OrderPlacement placement = placements.get(i);
+            if (placement.placed()) {
+                batch.get(i).future.complete(placement.order());
+            } else {
+                batch.get(i).future.completeExceptionally(placement.failure());
+            }
+        }
+    }
+
+    /**
+     * Deja de aceptar pedidos y espera a que se escriban los que ya estaban en la cola
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // los que se encolaron justo al cerrar, después de que el escritor terminara
+        Submission late;
+        while ((late = queue.poll()) != null) {
+            late.future.completeExceptionally(new IllegalStateException("El creador de pedidos está cerrado"));
+        }
+    }
+
+    private record Submission(OrderRequest request, CompletableFuture<Order> future) {
+    }
+}
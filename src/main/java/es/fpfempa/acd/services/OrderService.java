@@ -2,36 +2,85 @@ package es.fpfempa.acd.services;
 
 import es.fpfempa.acd.dao.AddressDao;
 import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.OrderHistoryEntry;
+import es.fpfempa.acd.dao.OrderLine;
+import es.fpfempa.acd.dao.OrderLookupResult;
+import es.fpfempa.acd.dao.OrderRequest;
+import es.fpfempa.acd.dao.OrderSummary;
+import es.fpfempa.acd.dao.OutOfStockException;
+import es.fpfempa.acd.dao.UpdateConflictException;
 import es.fpfempa.acd.entities.Address;
 import es.fpfempa.acd.entities.Customer;
 import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.hibernate.Hibernate;
 
-import jakarta.persistence.EntityManager;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * Cada método es una unidad de trabajo con su propio EntityManager, así que el servicio
+ * se puede usar desde varios hilos a la vez. Las entidades que devuelve están desconectadas.
+ */
 public class OrderService {
-    private OrderDao orderDao;
-    private AddressDao addressDao;
-    private EntityManager em;
+    private final EntityManagerProvider emProvider;
+    private final RetryPolicy retryPolicy;
 
-    public OrderService(EntityManager em) {
-        this.em = em;
-        this.orderDao = new OrderDao(em);
-        this.addressDao = new AddressDao(em);
+    public OrderService(EntityManagerProvider emProvider) {
+        this(emProvider, RetryPolicy.DEFAULT);
+    }
+
+    /**
+     * @param retryPolicy Reintentos cuando un cambio de dirección choca con otro cambio concurrente del mismo pedido,
+     *                    o cuando la creación de un pedido espera demasiado por el stock de otro
+     */
+    public OrderService(EntityManagerProvider emProvider, RetryPolicy retryPolicy) {
+        this.emProvider = emProvider;
+        this.retryPolicy = retryPolicy;
     }
 
     /**
      * Obtiene los detalles completos de un pedido (con customer y address cargados)
      */
     public Order getOrderDetails(Integer orderId) {
-        return orderDao.findByIdConDetalles(orderId);
+        return emProvider.withEntityManager(em -> new OrderDao(em).findByIdConDetalles(orderId));
+    }
+
+    /**
+     * Obtiene el pedido completo: líneas con productos y categorías, pago y envío además de cliente y dirección
+     */
+    public Order getFullOrder(Integer orderId) {
+        return emProvider.withEntityManager(em -> new OrderDao(em).findAggregateById(orderId));
+    }
+
+    /**
+     * Obtiene los detalles de varios pedidos a la vez (para listados), con pocas consultas en total
+     */
+    public OrderLookupResult getOrdersDetails(Collection<Integer> orderIds) {
+        return emProvider.withEntityManager(em -> new OrderDao(em).findByIdsConDetalles(orderIds));
+    }
+
+    /**
+     * Obtiene una página del listado de pedidos (solo los datos del resumen)
+     */
+    public List<OrderSummary> getOrderSummaries(int page, int pageSize) {
+        return emProvider.withEntityManager(em -> new OrderDao(em).findSummaries(page, pageSize));
+    }
+
+    /**
+     * Obtiene la página siguiente del historial de pedidos de un cliente (ver OrderDao.findHistoryPageAfter)
+     * @param last Último pedido de la página anterior, o null para la primera
+     */
+    public List<OrderHistoryEntry> getOrderHistory(Integer customerId, OrderHistoryEntry last, int pageSize) {
+        return emProvider.withEntityManager(em -> new OrderDao(em).findHistoryPageAfter(customerId, last, pageSize));
     }
 
     /**
      * Obtiene todas las direcciones existentes de un cliente
      */
     public List<Address> getCustomerAddresses(Customer customer) {
-        return addressDao.findByCustomer(customer);
+        return emProvider.withEntityManager(em -> new AddressDao(em).findByCustomer(customer));
     }
 
     /**
@@ -43,24 +92,103 @@ public class OrderService {
         nuevaAddress.setCity(city);
         nuevaAddress.setCountry(country);
         nuevaAddress.setCustomer(customer);
-        // Persistimos
-        addressDao.create(nuevaAddress);
-        // Mantener consistencia bidireccional en memoria
-        if (customer.getAddresses() != null) {
+        // Persistimos, salvo que el cliente ya tenga esa misma dirección: entonces se reutiliza
+        Address address = emProvider.withEntityManager(em -> new AddressDao(em).findOrCreate(nuevaAddress));
+        // Mantener consistencia bidireccional en memoria (solo si la colección ya estaba cargada)
+        if (address == nuevaAddress && customer.getAddresses() != null && Hibernate.isInitialized(customer.getAddresses())) {
             customer.getAddresses().add(nuevaAddress);
         }
-        return nuevaAddress;
+        return address;
     }
 
     /**
-     * Cambia la dirección de envío de un pedido y lo actualiza
+     * Cambia la dirección de envío de un pedido y lo actualiza, comprobando la versión (bloqueo optimista).
+     * Si otro usuario modificó el pedido a la vez, se vuelve a leer: si su dirección sigue siendo la que se leyó
+     * (el otro cambió otra cosa, p. ej. el estado) se reintenta con la versión nueva según la RetryPolicy;
+     * si la cambió otro, se lanza el conflicto en vez de pisar su cambio.
+     * El pedido recibido solo se modifica (dirección y versión) cuando el cambio se ha guardado.
+     * @throws UpdateConflictException si otro usuario cambió la dirección, o si sigue habiendo conflicto tras agotar los reintentos
      */
     public void changeShippingAddress(Order order, Address newAddress) {
-        try {
-            order.setShippingAddress(newAddress);
-            orderDao.update(order); // Maneja la transacción internamente
-        } catch (Exception e) {
-            throw new RuntimeException("Error al cambiar la dirección del pedido", e);
+        Integer readAddressId = addressId(order.getShippingAddress());
+        // lo que se quiere guardar va en una copia hasta que se confirme
+        Order change = new Order();
+        change.setId(order.getId());
+        change.setVersion(order.getVersion());
+        change.setShippingAddress(newAddress);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                emProvider.runWithEntityManager(em -> new OrderDao(em).update(change)); // Maneja la transacción internamente
+                break;
+            } catch (UpdateConflictException e) {
+                if (attempt >= retryPolicy.maxAttempts()) {
+                    throw e;
+                }
+                retryPolicy.sleepBeforeRetry(attempt);
+                Order current = emProvider.withEntityManager(em -> new OrderDao(em).findByIdConDetalles(order.getId()));
+                if (current == null) {
+                    throw new RuntimeException("Error al cambiar la dirección del pedido: ya no existe", e);
+                }
+                if (!Objects.equals(addressId(current.getShippingAddress()), readAddressId)) {
+                    throw e;
+                }
+                change.setVersion(current.getVersion());
+            } catch (Exception e) {
+                throw new RuntimeException("Error al cambiar la dirección del pedido", e);
+            }
+        }
+        order.setShippingAddress(newAddress);
+        order.setVersion(change.getVersion());
+    }
+
+    private static Integer addressId(Address address) {
+        return address != null ? address.getId() : null;
+    }
+
+    /**
+     * Cambia la dirección de envío con un solo UPDATE, sin cargar el pedido (una ida y vuelta a la BD)
+     * @return true si se cambió; false si el pedido o la dirección no existen o no son de ese cliente
+     */
+    public boolean changeShippingAddress(Integer orderId, Integer customerId, Integer addressId) {
+        return emProvider.withEntityManager(em -> new OrderDao(em).updateShippingAddress(orderId, customerId, addressId)) == 1;
+    }
+
+    /**
+     * Pasa a otra dirección todos los pedidos de un cliente que iban a una dirección suya
+     * @return Número de pedidos modificados
+     */
+    public int reassignShippingAddress(Integer customerId, Integer fromAddressId, Integer toAddressId) {
+        return emProvider.withEntityManager(em -> new OrderDao(em).reassignShippingAddress(customerId, fromAddressId, toAddressId));
+    }
+
+    /**
+     * Crea un pedido PENDING reservando el stock de todas sus líneas a la vez (ver placeOrder(OrderRequest))
+     * @throws OutOfStockException si algún producto no tiene stock suficiente
+     * @throws UpdateConflictException si sigue habiendo bloqueos tras agotar los reintentos
+     */
+    public Order placeOrder(Integer customerId, Integer shippingAddressId, List<OrderLine> lines) {
+        return placeOrder(new OrderRequest(customerId, shippingAddressId, lines));
+    }
+
+    /**
+     * Crea un pedido con sus líneas, pago y envío en una transacción, reservando el stock de todas sus líneas
+     * a la vez (ver OrderDao.placeOrders). El total sale de precio * unidades - descuento de cada línea.
+     * Si la BD aborta la transacción por un bloqueo, se repite entera según la RetryPolicy;
+     * la falta de stock no se reintenta. Para muchos pedidos concurrentes, GroupCommitOrderPlacer.
+     * @throws OutOfStockException si algún producto no tiene stock suficiente
+     * @throws IllegalArgumentException si la dirección no es del cliente o un descuento supera el importe de su línea
+     * @throws UpdateConflictException si sigue habiendo bloqueos tras agotar los reintentos
+     */
+    public Order placeOrder(OrderRequest request) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return emProvider.withEntityManager(em -> new OrderDao(em).placeOrder(request));
+            } catch (UpdateConflictException e) {
+                if (attempt >= retryPolicy.maxAttempts()) {
+                    throw e;
+                }
+                retryPolicy.sleepBeforeRetry(attempt);
+            }
         }
     }
 
@@ -68,7 +196,7 @@ public class OrderService {
      * Verifica que el pedido existe
      */
     public boolean orderExists(Integer orderId) {
-        Order order = orderDao.findById(orderId);
+        Order order = emProvider.withEntityManager(em -> new OrderDao(em).findById(orderId));
         return order != null;
     }
 }
@@ -0,0 +1,59 @@
+package es.fpfempa.acd.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import es.fpfempa.acd.dao.DailyRevenue;
+import es.fpfempa.acd.dao.DailyStatusCount;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Resultados de días ya terminados de ReportService, uno por día (UTC) e informe, compartidos por toda la aplicación.
+ * Un día vacío también se guarda (lista vacía) para no volver a consultarlo.
+ * Los pedidos de días pasados casi no cambian, pero puede pasar (cancelaciones, importaciones con fechas antiguas):
+ * por eso las entradas caducan y BulkImporter la vacía al importar pedidos.
+ * Tamaño y TTL: acd.reportCache.maxDays (3660 por informe), acd.reportCache.ttlMinutes (60).
+ */
+public final class ReportDayCache {
+
+    private static final ReportDayCache SHARED = new ReportDayCache(
+            Long.getLong("acd.reportCache.maxDays", 3660),
+            Duration.ofMinutes(Long.getLong("acd.reportCache.ttlMinutes", 60)));
+
+    final Cache<LocalDate, List<DailyRevenue>> revenue;
+    final Cache<LocalDate, List<DailyStatusCount>> statusCounts;
+
+    public ReportDayCache(long maximumDays, Duration ttl) {
+        this.revenue = Caffeine.newBuilder().maximumSize(maximumDays).expireAfterWrite(ttl).build();
+        this.statusCounts = Caffeine.newBuilder().maximumSize(maximumDays).expireAfterWrite(ttl).build();
+    }
+
+    /**
+     * Instancia compartida por toda la aplicación
+     */
+    public static ReportDayCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Olvida un día (p. ej. tras modificar un pedido antiguo)
+     */
+    public void invalidate(LocalDate day) {
+        revenue.invalidate(day);
+        statusCounts.invalidate(day);
+    }
+
+    public void invalidateAll() {
+        revenue.invalidateAll();
+        statusCounts.invalidateAll();
+    }
+
+    /**
+     * Días guardados de cada informe (aproximado)
+     */
+    public long size() {
+        return revenue.estimatedSize() + statusCounts.estimatedSize();
+    }
+}
@@ -0,0 +1,164 @@
+package es.fpfempa.acd.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import es.fpfempa.acd.dao.DailyRevenue;
+import es.fpfempa.acd.dao.DailyStatusCount;
+import es.fpfempa.acd.dao.ProductSales;
+import es.fpfempa.acd.dao.ReportDao;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Informes de ventas para el cuadro de mando: facturación por día y país, pedidos por estado y productos más vendidos.
+ * Las sumas las hace la BD (GROUP BY en ReportDao); aquí solo se juntan resultados ya agregados.
+ * Los días son días UTC y los rangos van de from (incluido) a to (excluido).
+ * Los informes por día guardan en ReportDayCache cada día terminado, así que repetir un informe solo consulta
+ * los días que faltan en la caché y los que aún no han terminado.
+ */
+public class ReportService {
+
+    // margen tras la medianoche antes de dar un día por cerrado, para los pedidos que aún se estén confirmando
+    private static final Duration CLOSE_DELAY = Duration.ofMinutes(10);
+
+    private final EntityManagerProvider emProvider;
+    private final ReportDayCache cache;
+    private final Clock clock;
+
+    public ReportService(EntityManagerProvider emProvider) {
+        this(emProvider, ReportDayCache.shared(), Clock.systemUTC());
+    }
+
+    public ReportService(EntityManagerProvider emProvider, ReportDayCache cache, Clock clock) {
+        this.emProvider = emProvider;
+        this.cache = cache;
+        this.clock = clock;
+    }
+
+    /**
+     * Facturación por día y país de envío, sin pedidos cancelados
+     * @return Filas ordenadas por día y país (los pedidos sin dirección, con país null, al final de cada día)
+     */
+    public List<DailyRevenue> revenueByDayAndCountry(LocalDate from, LocalDate to) {
+        return byDay(from, to, cache.revenue, DailyRevenue::day, ReportDao::findRevenueByDayAndCountry,
+                Comparator.comparing(DailyRevenue::country, Comparator.nullsLast(Comparator.naturalOrder())));
+    }
+
+    /**
+     * Número de pedidos e importe por estado en todo el rango (incluidos los cancelados)
+     * @return Totales ordenados por estado
+     */
+    public List<StatusTotals> countsByStatus(LocalDate from, LocalDate to) {
+        Map<String, StatusTotals> totals = new TreeMap<>();
+        for (DailyStatusCount day : byDay(from, to, cache.statusCounts, DailyStatusCount::day,
+                ReportDao::findCountsByDayAndStatus, Comparator.comparing(DailyStatusCount::status))) {
+            totals.merge(day.status(), new StatusTotals(day.status(), day.orders(), day.amount()),
+                    (a, b) -> new StatusTotals(a.status(), a.orders() + b.orders(), a.amount().add(b.amount())));
+        }
+        return new ArrayList<>(totals.values());
+    }
+
+    /**
+     * Página de productos más vendidos por unidades, sin pedidos cancelados.
+     * No se guarda en caché: el ranking de un rango no se puede sacar de los rankings de cada día.
+     * @param page Número de página, empezando en 0
+     * @param pageSize Productos por página
+     */
+    public List<ProductSales> topProducts(LocalDate from, LocalDate to, int page, int pageSize) {
+        checkRange(from, to);
+        if (page < 0 || pageSize < 1) {
+            throw new IllegalArgumentException("Página no válida: " + page + " de tamaño " + pageSize);
+        }
+        return emProvider.withEntityManager(em ->
+                new ReportDao(em).findTopProducts(startOf(from), startOf(to), page, pageSize));
+    }
+
+    /**
+     * Resultado de un informe por día: los días cerrados salen de la caché si están y el resto se consulta
+     * con una consulta por cada tramo seguido de días que falten
+     */
+    private <T> List<T> byDay(LocalDate from, LocalDate to, Cache<LocalDate, List<T>> dayCache,
+                              Function<T, LocalDate> dayOf, DayQuery<T> query, Comparator<T> order) {
+        checkRange(from, to);
+        // primer día sin cerrar: desde él no se lee ni se guarda nada en la caché
+        LocalDate firstOpenDay = LocalDate.ofInstant(clock.instant().minus(CLOSE_DELAY), ZoneOffset.UTC);
+        Map<LocalDate, List<T>> days = new TreeMap<>();
+        List<DayRange> missing = new ArrayList<>();
+        LocalDate missingFrom = null;
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            List<T> cached = day.isBefore(firstOpenDay) ? dayCache.getIfPresent(day) : null;
+            if (cached == null) {
+                missingFrom = missingFrom == null ? day : missingFrom;
+            } else {
+                days.put(day, cached);
+                if (missingFrom != null) {
+                    missing.add(new DayRange(missingFrom, day));
+                    missingFrom = null;
+                }
+            }
+        }
+        if (missingFrom != null) {
+            missing.add(new DayRange(missingFrom, to));
+        }
+
+        if (!missing.isEmpty()) {
+            emProvider.runWithEntityManager(em -> {
+                ReportDao reportDao = new ReportDao(em);
+                for (DayRange range : missing) {
+                    Map<LocalDate, List<T>> loaded = new HashMap<>();
+                    for (T row : query.find(reportDao, startOf(range.from()), startOf(range.to()))) {
+                        loaded.computeIfAbsent(dayOf.apply(row), day -> new ArrayList<>()).add(row);
+                    }
+                    for (LocalDate day = range.from(); day.isBefore(range.to()); day = day.plusDays(1)) {
+                        List<T> rows = loaded.getOrDefault(day, List.of()).stream().sorted(order).toList();
+                        if (day.isBefore(firstOpenDay)) {
+                            dayCache.put(day, rows);
+                        }
+                        days.put(day, rows);
+                    }
+                }
+            });
+        }
+
+        List<T> result = new ArrayList<>();
+        days.values().forEach(result::addAll);
+        return result;
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null || !to.isAfter(from)) {
+            throw new IllegalArgumentException("Rango de fechas no válido: " + from + " - " + to);
+        }
+    }
+
+    // una de las consultas por día de ReportDao
+    private interface DayQuery<T> {
+        List<T> find(ReportDao reportDao, Instant from, Instant to);
+    }
+
+    private record DayRange(LocalDate from, LocalDate to) {
+    }
+
+    /**
+     * Pedidos de un estado en un rango
+     * @param amount Suma de total_amount de esos pedidos
+     */
+    public record StatusTotals(String status, long orders, BigDecimal amount) {
+    }
+}
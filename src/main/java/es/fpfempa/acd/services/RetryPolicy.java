@@ -0,0 +1,35 @@
+package es.fpfempa.acd.services;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cuántas veces reintentar una operación que choca con otra concurrente y cuánto esperar entre intentos.
+ * La espera crece exponencialmente (initialBackoff, x2, x4... hasta maxBackoff) y se elige al azar
+ * dentro de ese margen para que los hilos que chocaron no vuelvan a chocar a la vez.
+ * @param maxAttempts Intentos en total, contando el primero
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(200));
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Debe haber al menos un intento");
+        }
+    }
+
+    /**
+     * Espera antes del siguiente intento
+     * @param failedAttempt Número del intento que acaba de fallar (1 = el primero)
+     */
+    public void sleepBeforeRetry(int failedAttempt) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(failedAttempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reintento interrumpido", e);
+        }
+    }
+}
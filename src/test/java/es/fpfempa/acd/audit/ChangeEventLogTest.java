@@ -0,0 +1,109 @@
+package es.fpfempa.acd.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeEventLogTest {
+
+    @Test
+    void fullQueueMakesAppendWaitInsteadOfDropping() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<ChangeEvent> written = new ArrayList<>();
+        ChangeEventSink slowSink = events -> {
+            await(release);
+            written.addAll(events);
+        };
+        ChangeEventLog log = new ChangeEventLog(slowSink, 4, 2, Duration.ofMillis(1), Duration.ofMillis(50));
+        Thread producer = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 20; i++) {
+                log.append(event(i));
+            }
+        });
+        // el destino no avanza: el productor se queda esperando con la cola llena
+        producer.join(300);
+        assertTrue(producer.isAlive());
+        assertTrue(log.getBlockedAppends() > 0);
+
+        release.countDown();
+        producer.join();
+        log.close();
+
+        assertEquals(20, written.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, written.get(i).entityId());
+        }
+    }
+
+    @Test
+    void closeRetriesUntilTheBatchIsWritten() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<ChangeEvent> written = new ArrayList<>();
+        ChangeEventSink flakySink = events -> {
+            if (attempts.incrementAndGet() <= 3) {
+                throw new IllegalStateException("destino no disponible");
+            }
+            written.addAll(events);
+        };
+        ChangeEventLog log = new ChangeEventLog(flakySink, 16, 16, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        for (int i = 0; i < 3; i++) {
+            log.append(event(i));
+        }
+
+        log.close();
+
+        assertEquals(3, written.size());
+        assertEquals(3, log.getFailedWrites());
+    }
+
+    @Test
+    void closeGivesUpWhenTheSinkKeepsFailing() {
+        AtomicInteger attempts = new AtomicInteger();
+        ChangeEventSink brokenSink = events -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("destino no disponible");
+        };
+        ChangeEventLog log = new ChangeEventLog(brokenSink, 16, 2, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        for (int i = 0; i < 5; i++) {
+            log.append(event(i));
+        }
+
+        long start = System.nanoTime();
+        log.close(Duration.ofMillis(500));
+
+        // el intento en curso termina y el resto va al log en vez de quedarse esperando
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(attempts.get() >= 1);
+        assertEquals(0, log.getPending());
+    }
+
+    @Test
+    void appendAfterCloseFails() {
+        ChangeEventLog log = new ChangeEventLog(events -> { }, 16, 16, Duration.ofMillis(10), Duration.ofSeconds(5));
+        log.close();
+
+        assertThrows(IllegalStateException.class, () -> log.append(event(1)));
+    }
+
+    private static ChangeEvent event(int id) {
+        return ChangeEvent.of("Order", id, "UPDATE", null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
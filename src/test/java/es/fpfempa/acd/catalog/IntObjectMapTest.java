@@ -0,0 +1,85 @@
+package es.fpfempa.acd.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * IntObjectMap comparado con un HashMap: borrados con desplazamiento hacia atrás y crecimiento del array
+ */
+class IntObjectMapTest {
+
+    @Test
+    void randomPutsAndRemovesMatchAHashMap() {
+        Random random = new Random(42);
+        // empieza pequeño para que crezca varias veces; claves en un rango corto para que choquen y se borren a menudo
+        IntObjectMap<String> map = new IntObjectMap<>(1);
+        Map<Integer, String> expected = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            int key = random.nextInt(-500, 500);
+            if (key == 0) {
+                continue;
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key), "remove " + key);
+            } else {
+                String value = "v" + step;
+                expected.put(key, value);
+                map.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            if (step % 500 == 0) {
+                assertSameContents(expected, map);
+            }
+        }
+        assertSameContents(expected, map);
+    }
+
+    @Test
+    void removingFromARunKeepsTheFollowingKeysReachable() {
+        IntObjectMap<Integer> map = new IntObjectMap<>(1000);
+        for (int key = 1; key <= 1000; key++) {
+            map.put(key, key);
+        }
+        // quitar una de cada tres deja huecos en medio de las secuencias de sondeo
+        for (int key = 1; key <= 1000; key += 3) {
+            assertEquals(key, map.remove(key));
+            assertNull(map.remove(key));
+        }
+        for (int key = 1; key <= 1000; key++) {
+            assertEquals(key % 3 == 1 ? null : Integer.valueOf(key), map.get(key), "get " + key);
+        }
+        assertEquals(666, map.size());
+    }
+
+    @Test
+    void copyIsIndependentAndKeyZeroIsRejected() {
+        IntObjectMap<String> map = new IntObjectMap<>(4);
+        map.put(1, "uno");
+        map.put(2, "dos");
+        IntObjectMap<String> copy = map.copy();
+        copy.remove(1);
+        copy.put(3, "tres");
+
+        assertEquals("uno", map.get(1));
+        assertNull(map.get(3));
+        assertEquals(2, map.size());
+        assertNull(copy.get(1));
+        assertEquals("tres", copy.get(3));
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "cero"));
+    }
+
+    private static void assertSameContents(Map<Integer, String> expected, IntObjectMap<String> map) {
+        for (int key = -500; key < 500; key++) {
+            if (key != 0) {
+                assertEquals(expected.get(key), map.get(key), "get " + key);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package es.fpfempa.acd.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomerEmailCacheTest {
+
+    private final CustomerEmailCache cache = new CustomerEmailCache(100, Duration.ofMinutes(10), Duration.ofSeconds(30));
+
+    @Test
+    void invalidateDuringALoadDropsTheLoadedId() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Optional<Integer>> found = new AtomicReference<>();
+        // la carga lee el ID antiguo y se queda esperando antes de devolverlo
+        Thread reader = Thread.ofPlatform().start(() -> found.set(cache.findId("ana@example.com", email -> {
+            loading.countDown();
+            await(release);
+            return Optional.of(1);
+        })));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // mientras tanto el cliente cambia de email: el invalidate no espera a la carga
+        Thread writer = Thread.ofPlatform().start(() -> cache.invalidate("ana@example.com"));
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(writer.isAlive());
+        release.countDown();
+        reader.join();
+
+        // quien cargó se queda con lo que leyó, pero no se guarda
+        assertEquals(Optional.of(1), found.get());
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(Optional.of(2), cache.findId("ana@example.com", email -> {
+            loads.incrementAndGet();
+            return Optional.of(2);
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void unknownEmailIsRememberedUntilInvalidated() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Optional.empty(), cache.findId("nadie@example.com", email -> {
+                loads.incrementAndGet();
+                return Optional.empty();
+            }));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.stats().negativeHits());
+
+        // se da de alta: el invalidate (con el email tal como se escribió) borra la entrada negativa
+        cache.invalidate(" Nadie@Example.com");
+        assertEquals(Optional.of(7), cache.findId("nadie@example.com", email -> {
+            loads.incrementAndGet();
+            return Optional.of(7);
+        }));
+        assertEquals(2, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
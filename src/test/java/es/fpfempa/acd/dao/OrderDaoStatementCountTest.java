@@ -0,0 +1,157 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.entities.OrderItem;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Número de sentencias SQL de las cargas de pedidos de OrderDao: si alguien reintroduce un N+1 estos tests fallan
+ */
+class OrderDaoStatementCountTest {
+
+    private static BenchmarkDatabase db;
+    private static Statistics statistics;
+
+    @BeforeAll
+    static void seed() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(100, 2, 4, 3));
+        statistics = db.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterAll
+    static void close() {
+        db.close();
+    }
+
+    @BeforeEach
+    void evictCache() {
+        // el segundo nivel puede ahorrar consultas a la navegación perezosa, así que se vacía antes de contar
+        db.getEntityManagerFactory().getCache().evictAll();
+    }
+
+    @Test
+    void findAggregateByIdLoadsTheWholeOrderWithTwoStatements() {
+        for (int i = 0; i < db.orderCount(); i += 17) {
+            Integer orderId = db.orderId(i);
+            long[] counts = countStatements(em -> List.of(new OrderDao(em).findAggregateById(orderId)),
+                    OrderDaoStatementCountTest::touchAggregate);
+            assertEquals(2, counts[0], "findAggregateById(" + orderId + ")");
+            assertEquals(0, counts[1], "navegación tras findAggregateById(" + orderId + ")");
+        }
+    }
+
+    @Test
+    void findAggregateByIdOfNullReturnsNullWithoutQuerying() {
+        EntityManager em = db.getEntityManagerFactory().createEntityManager();
+        try {
+            statistics.clear();
+            assertNull(new OrderDao(em).findAggregateById(null));
+            assertEquals(0, statistics.getPrepareStatementCount());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test
+    void findByIdConDetallesUsesOneStatement() {
+        for (int i = 0; i < db.orderCount(); i += 17) {
+            Integer orderId = db.orderId(i);
+            long[] counts = countStatements(em -> List.of(new OrderDao(em).findByIdConDetalles(orderId)),
+                    OrderDaoStatementCountTest::touchDetails);
+            assertEquals(1, counts[0], "findByIdConDetalles(" + orderId + ")");
+            assertEquals(0, counts[1], "navegación tras findByIdConDetalles(" + orderId + ")");
+        }
+    }
+
+    @Test
+    void findByIdsConDetallesUsesOneStatementPerChunk() {
+        List<Integer> orderIds = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            orderIds.add(db.orderId(i));
+        }
+        long[] counts = countStatements(em -> new OrderDao(em).findByIdsConDetalles(orderIds).orders(),
+                OrderDaoStatementCountTest::touchDetails);
+        assertEquals(1, counts[0], "findByIdsConDetalles de 200 pedidos");
+        assertEquals(0, counts[1], "navegación tras findByIdsConDetalles");
+
+        // más de MAX_IDS_PER_QUERY IDs (los que sobran no existen): una consulta por bloque
+        List<Integer> manyIds = new ArrayList<>(orderIds);
+        for (int i = 1; manyIds.size() <= OrderDao.MAX_IDS_PER_QUERY; i++) {
+            manyIds.add(-i);
+        }
+        counts = countStatements(em -> new OrderDao(em).findByIdsConDetalles(manyIds).orders(),
+                OrderDaoStatementCountTest::touchDetails);
+        assertEquals(2, counts[0], "findByIdsConDetalles de " + manyIds.size() + " IDs");
+        assertEquals(0, counts[1], "navegación tras findByIdsConDetalles");
+    }
+
+    // [sentencias de la carga, sentencias al recorrer después los pedidos]
+    private static long[] countStatements(Function<EntityManager, List<Order>> load, Consumer<Order> touch) {
+        EntityManager em = db.getEntityManagerFactory().createEntityManager();
+        try {
+            statistics.clear();
+            List<Order> orders = load.apply(em);
+            long loading = statistics.getPrepareStatementCount();
+            assertFalse(orders.isEmpty());
+            orders.forEach(order -> {
+                assertNotNull(order);
+                touch.accept(order);
+            });
+            return new long[]{loading, statistics.getPrepareStatementCount() - loading};
+        } finally {
+            em.close();
+        }
+    }
+
+    // lo que muestra Main de un pedido
+    private static void touchDetails(Order order) {
+        order.getCustomer().getEmail();
+        if (order.getShippingAddress() != null) {
+            order.getShippingAddress().getCity();
+        }
+        if (order.getPayment() != null) {
+            order.getPayment().getMethod();
+        }
+        if (order.getShipment() != null) {
+            order.getShipment().getTrackingNo();
+        }
+    }
+
+    // recorre lo mismo que pintaría la pantalla de un pedido completo
+    private static void touchAggregate(Order order) {
+        order.getCustomer().getFullName();
+        if (order.getEmployee() != null) {
+            order.getEmployee().getName();
+        }
+        if (order.getShippingAddress() != null) {
+            order.getShippingAddress().getCity();
+        }
+        if (order.getPayment() != null) {
+            order.getPayment().getMethod();
+        }
+        if (order.getShipment() != null) {
+            order.getShipment().getTrackingNo();
+        }
+        for (OrderItem item : order.getOrderItems()) {
+            item.getProduct().getSku();
+            item.getProduct().getCategories().size();
+        }
+    }
+}
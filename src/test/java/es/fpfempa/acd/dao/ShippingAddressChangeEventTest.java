@@ -0,0 +1,148 @@
+package es.fpfempa.acd.dao;
+
+import es.fpfempa.acd.audit.ChangeEvent;
+import es.fpfempa.acd.audit.ChangeEventLog;
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Eventos SHIPPING_ADDRESS de los cambios masivos de dirección: uno por pedido, con la dirección anterior
+ */
+class ShippingAddressChangeEventTest {
+
+    private static BenchmarkDatabase db;
+    private static EntityManagerProvider emProvider;
+    private static ChangeEventLog changeEventLog;
+    private static final Queue<ChangeEvent> events = new ConcurrentLinkedQueue<>();
+
+    @BeforeAll
+    static void seed() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(20, 3, 3, 1));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+        changeEventLog = ChangeEventLog.start(new ChangeEventLog(events::addAll, 1024, 100,
+                Duration.ofMillis(10), ChangeEventLog.DEFAULT_BLOCKED_WARNING));
+    }
+
+    @AfterAll
+    static void close() {
+        changeEventLog.close();
+        db.close();
+    }
+
+    @Test
+    void updateShippingAddressRecordsEachOrderWithItsPreviousAddress() {
+        Integer customerId = db.customerId(0);
+        List<Integer> orderIds = ordersOf(customerId);
+        List<Integer> addressIds = db.addressIdsOf(customerId);
+        Integer otherCustomerOrder = ordersOf(db.customerId(1)).get(0);
+        setAddress(orderIds.get(0), customerId, addressIds.get(0));
+        setAddress(orderIds.get(1), customerId, null);
+        setAddress(orderIds.get(2), customerId, addressIds.get(1));
+        recordedChanges();
+
+        int updated = emProvider.withEntityManager(em -> new OrderDao(em).updateShippingAddress(
+                List.of(orderIds.get(0), orderIds.get(1), orderIds.get(2), otherCustomerOrder), customerId, addressIds.get(1)));
+
+        assertEquals(3, updated);
+        // el pedido que ya iba a esa dirección no cambia y el de otro cliente no se toca
+        assertEquals(Map.of(orderIds.get(0), addressIds.get(0) + " -> " + addressIds.get(1),
+                orderIds.get(1), "-> " + addressIds.get(1)), recordedChanges());
+    }
+
+    @Test
+    void reassignShippingAddressRecordsEachOrder() {
+        Integer customerId = db.customerId(2);
+        List<Integer> orderIds = ordersOf(customerId);
+        List<Integer> addressIds = db.addressIdsOf(customerId);
+        setAddress(orderIds.get(0), customerId, addressIds.get(0));
+        setAddress(orderIds.get(1), customerId, addressIds.get(0));
+        setAddress(orderIds.get(2), customerId, addressIds.get(2));
+        recordedChanges();
+
+        int updated = emProvider.withEntityManager(em ->
+                new OrderDao(em).reassignShippingAddress(customerId, addressIds.get(0), addressIds.get(1)));
+
+        assertEquals(2, updated);
+        String change = addressIds.get(0) + " -> " + addressIds.get(1);
+        assertEquals(Map.of(orderIds.get(0), change, orderIds.get(1), change), recordedChanges());
+    }
+
+    @Test
+    void mergeDuplicatesRecordsEachMovedOrder() {
+        Integer customerId = db.customerId(3);
+        List<Integer> orderIds = ordersOf(customerId);
+        Integer keeperId = createAddress(customerId);
+        Integer duplicateId = createAddress(customerId);
+        setAddress(orderIds.get(0), customerId, duplicateId);
+        setAddress(orderIds.get(1), customerId, keeperId);
+        List<DuplicateAddressGroup> groups = emProvider.withEntityManager(em -> new AddressDao(em).findDuplicateGroups()).stream()
+                .filter(group -> group.customerId().equals(customerId))
+                .toList();
+        assertEquals(keeperId, groups.get(0).keeperId());
+        recordedChanges();
+
+        emProvider.runWithEntityManager(em -> new AddressDao(em).mergeDuplicates(groups));
+
+        assertEquals(Map.of(orderIds.get(0), duplicateId + " -> " + keeperId), recordedChanges());
+    }
+
+    private static List<Integer> ordersOf(Integer customerId) {
+        List<Integer> orderIds = new ArrayList<>();
+        for (int i = 0; i < db.orderCount(); i++) {
+            if (customerId.equals(db.customerIdOfOrder(db.orderId(i)))) {
+                orderIds.add(db.orderId(i));
+            }
+        }
+        assertTrue(orderIds.size() >= 3);
+        return orderIds;
+    }
+
+    private static void setAddress(Integer orderId, Integer customerId, Integer addressId) {
+        emProvider.runWithEntityManager(em -> new OrderDao(em).updateShippingAddress(orderId, customerId, addressId));
+    }
+
+    private static Integer createAddress(Integer customerId) {
+        Address address = new Address();
+        address.setLine1("Calle Mayor 1");
+        address.setCity("Zaragoza");
+        address.setCountry("ES");
+        address.setIsDefault(false);
+        emProvider.runWithEntityManager(em -> {
+            address.setCustomer(em.getReference(Customer.class, customerId));
+            new AddressDao(em).create(address);
+        });
+        return address.getId();
+    }
+
+    // pedido -> "anterior -> nueva" de los eventos SHIPPING_ADDRESS desde la última llamada (antes de la operación
+    // que se prueba se llama para descartar los de la preparación)
+    private static Map<Integer, String> recordedChanges() {
+        assertTrue(changeEventLog.flush(Duration.ofSeconds(5)));
+        Map<Integer, String> changes = new TreeMap<>();
+        ChangeEvent event;
+        while ((event = events.poll()) != null) {
+            if (event.action().equals("SHIPPING_ADDRESS")) {
+                assertEquals("Order", event.entityType());
+                assertNull(changes.put(event.entityId(), event.detail()), "dos eventos del pedido " + event.entityId());
+            }
+        }
+        return changes;
+    }
+}
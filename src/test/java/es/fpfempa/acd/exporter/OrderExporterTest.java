@@ -0,0 +1,109 @@
+package es.fpfempa.acd.exporter;
+
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Formato de la exportación: escapado de CSV y JSON y una línea NDJSON por pedido con todas sus líneas
+ */
+class OrderExporterTest {
+
+    private static final int ITEMS_PER_ORDER = 3;
+    // comas, comillas, salto de línea y tabulador: todo lo que hay que escapar en algún formato
+    private static final String AWKWARD_NAME = "Pérez, \"Ana\"\n2º\tizq";
+
+    private static BenchmarkDatabase db;
+    private static EntityManagerProvider emProvider;
+    private static Integer orderWithoutItems;
+
+    @BeforeAll
+    static void seed() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(3, 1, 2, ITEMS_PER_ORDER));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+        orderWithoutItems = db.orderId(db.orderCount() - 1);
+        emProvider.runWithEntityManager(em -> {
+            em.getTransaction().begin();
+            em.createQuery("UPDATE Customer c SET c.fullName = :name WHERE c.id = :id")
+                    .setParameter("name", AWKWARD_NAME)
+                    .setParameter("id", db.customerId(0))
+                    .executeUpdate();
+            em.createQuery("DELETE FROM OrderItem i WHERE i.order.id = :id")
+                    .setParameter("id", orderWithoutItems)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        });
+    }
+
+    @AfterAll
+    static void close() {
+        db.close();
+    }
+
+    @Test
+    void csvQuotesOnlyTheFieldsThatNeedIt() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportResult result = new OrderExporter(emProvider, 4).export(out, ExportFormat.CSV);
+        String csv = out.toString(StandardCharsets.UTF_8);
+
+        int expectedRows = (db.orderCount() - 1) * ITEMS_PER_ORDER + 1;
+        assertEquals(expectedRows, result.rows());
+        assertEquals(db.orderCount(), result.orders());
+        assertEquals(out.size(), result.bytes());
+        assertTrue(csv.startsWith("order_id,order_date,status,total_amount,customer_id,"));
+        assertTrue(csv.contains(",\"Pérez, \"\"Ana\"\"\n2º\tizq\","));
+        assertTrue(csv.contains(",Cliente Número 1,"));
+        // el pedido sin líneas sale una vez, con las columnas de la línea vacías
+        assertTrue(csv.contains("\n" + orderWithoutItems + ","));
+        assertTrue(csv.endsWith(",,,,,,\n"));
+
+        // cada registro empieza por el ID del pedido (el salto de línea del nombre no) y los de un pedido van seguidos
+        List<Integer> orderIds = new ArrayList<>();
+        Matcher record = Pattern.compile("^(\\d+),", Pattern.MULTILINE).matcher(csv);
+        while (record.find()) {
+            orderIds.add(Integer.valueOf(record.group(1)));
+        }
+        assertEquals(expectedRows, orderIds.size());
+        for (int i = 1; i < orderIds.size(); i++) {
+            assertTrue(orderIds.get(i - 1) <= orderIds.get(i));
+        }
+    }
+
+    @Test
+    void ndjsonWritesOneEscapedObjectPerOrder() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportResult result = new OrderExporter(emProvider, 4).export(out, ExportFormat.NDJSON);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+
+        assertEquals(db.orderCount(), result.orders());
+        assertEquals(db.orderCount(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            Integer orderId = db.orderId(i);
+            assertTrue(line.startsWith("{\"order_id\":" + orderId + ","), line);
+            assertTrue(line.endsWith("]}"), line);
+            int items = line.split("\"sku\":", -1).length - 1;
+            if (orderId.equals(orderWithoutItems)) {
+                assertEquals(0, items);
+                assertTrue(line.contains("\"items\":[]"));
+            } else {
+                assertEquals(ITEMS_PER_ORDER, items);
+            }
+            if (db.customerIdOfOrder(orderId).equals(db.customerId(0))) {
+                assertTrue(line.contains("\"name\":\"Pérez, \\\"Ana\\\"\\n2º\\tizq\""), line);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package es.fpfempa.acd.importer;
+
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.entities.ImportCheckpoint;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reanudar una importación: los bloques con punto de control se saltan y los demás se vuelven a procesar
+ */
+class BulkImporterResumeTest {
+
+    private static final int CUSTOMERS = 60;
+    private static final int CHUNK_BYTES = 256;
+
+    @TempDir
+    Path directory;
+
+    private BenchmarkDatabase db;
+    private EntityManagerProvider emProvider;
+    private Path customersCsv;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(0, 0, 0, 0));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+        StringBuilder text = new StringBuilder("email,full_name,created_at\n");
+        for (int i = 0; i < CUSTOMERS; i++) {
+            text.append("importado").append(i).append("@example.com,\"Cliente, ").append(i).append("\",2024-01-01T10:00:00Z\n");
+        }
+        customersCsv = Files.writeString(directory.resolve("customers.csv"), text);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void secondRunSkipsEveryCommittedChunk() {
+        ImportResult first = importer().importCustomers(customersCsv);
+        ImportResult second = importer().importCustomers(customersCsv);
+
+        assertEquals(CUSTOMERS, first.inserted());
+        assertEquals(0, first.chunksAlreadyDone());
+        assertEquals(first.job(), second.job());
+        assertEquals(first.chunks(), second.chunksAlreadyDone());
+        assertEquals(0, second.rowsRead());
+        assertEquals(0, second.inserted());
+        assertEquals(CUSTOMERS, customerCount());
+    }
+
+    @Test
+    void chunkWithoutCheckpointIsProcessedAgainWithoutDuplicates() {
+        ImportResult first = importer().importCustomers(customersCsv);
+        // como si la primera ejecución se hubiera cortado antes de confirmar el último bloque
+        ImportCheckpoint last = emProvider.withEntityManager(em -> em.createQuery(
+                        "SELECT c FROM ImportCheckpoint c WHERE c.job = :job", ImportCheckpoint.class)
+                .setParameter("job", first.job())
+                .getResultList()).stream()
+                .max(Comparator.comparing(ImportCheckpoint::getChunkOffset)).orElseThrow();
+        emProvider.runWithEntityManager(em -> {
+            em.getTransaction().begin();
+            em.remove(em.find(ImportCheckpoint.class, last.getId()));
+            em.getTransaction().commit();
+        });
+
+        ImportResult resumed = importer().importCustomers(customersCsv);
+
+        assertEquals(first.chunks() - 1, resumed.chunksAlreadyDone());
+        assertEquals(last.getRowCount().longValue(), resumed.rowsRead());
+        // las filas de ese bloque ya estaban: se saltan por el email
+        assertEquals(0, resumed.inserted());
+        assertEquals(last.getRowCount().longValue(), resumed.skipped());
+        assertEquals(CUSTOMERS, customerCount());
+        assertEquals(first.chunks(), emProvider.withEntityManager(em -> em.createQuery(
+                        "SELECT COUNT(c) FROM ImportCheckpoint c WHERE c.job = :job", Long.class)
+                .setParameter("job", first.job())
+                .getSingleResult()).intValue());
+    }
+
+    private BulkImporter importer() {
+        return new BulkImporter(emProvider, 2, CHUNK_BYTES, 20);
+    }
+
+    private long customerCount() {
+        return emProvider.withEntityManager(em -> em.createQuery("SELECT COUNT(c) FROM Customer c", Long.class)
+                .getSingleResult());
+    }
+}
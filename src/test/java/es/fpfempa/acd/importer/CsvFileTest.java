@@ -0,0 +1,81 @@
+package es.fpfempa.acd.importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bloques de CsvFile: terminan siempre en fin de línea y entre todos tienen cada fila una sola vez
+ */
+class CsvFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void chunksEndOnLineBoundariesForAnyChunkSize() throws IOException {
+        StringBuilder text = new StringBuilder("email,full_name\n");
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // líneas de distinta longitud, con comas entre comillas y algún fin de línea \r\n
+            String email = "cliente" + i + "@example.com";
+            emails.add(email);
+            text.append(email).append(",\"Apellido, ").append("x".repeat(i % 7)).append('"')
+                    .append(i % 5 == 0 ? "\r\n" : "\n");
+        }
+        Path path = write("clientes.csv", text.toString());
+
+        try (CsvFile file = new CsvFile(path)) {
+            byte[] bytes = Files.readAllBytes(path);
+            for (int chunkBytes = 1; chunkBytes <= bytes.length + 1; chunkBytes++) {
+                List<CsvFile.Chunk> chunks = file.chunks(chunkBytes);
+                List<String> read = new ArrayList<>();
+                long expectedOffset = "email,full_name\n".length();
+                for (CsvFile.Chunk chunk : chunks) {
+                    // seguidos, sin huecos ni solapes, y cada uno acaba justo después de un salto de línea
+                    assertEquals(expectedOffset, chunk.offset(), "chunkBytes=" + chunkBytes);
+                    expectedOffset = chunk.offset() + chunk.length();
+                    assertEquals('\n', bytes[(int) expectedOffset - 1], "chunkBytes=" + chunkBytes);
+                    for (CsvFile.Row row : file.read(chunk)) {
+                        read.add(row.field(file.column("email")));
+                    }
+                }
+                assertEquals(bytes.length, expectedOffset);
+                assertEquals(emails, read, "chunkBytes=" + chunkBytes);
+            }
+        }
+    }
+
+    @Test
+    void lastLineWithoutNewlineAndBlankLinesAreHandled() throws IOException {
+        Path path = write("clientes.csv", "\uFEFFEmail,Full_Name\r\na@example.com,\"Ana \"\"la\"\" Pérez\"\n\nb@example.com,Bea");
+
+        try (CsvFile file = new CsvFile(path)) {
+            assertEquals(0, file.column("email"));
+            assertEquals(1, file.column("full_name"));
+            List<CsvFile.Row> rows = new ArrayList<>();
+            for (CsvFile.Chunk chunk : file.chunks(4)) {
+                rows.addAll(file.read(chunk));
+            }
+            assertEquals(2, rows.size());
+            assertArrayEquals(new String[]{"a@example.com", "Ana \"la\" Pérez"}, rows.get(0).fields());
+            assertArrayEquals(new String[]{"b@example.com", "Bea"}, rows.get(1).fields());
+            // la posición de cada fila es la de su primer byte en el fichero
+            byte[] bytes = Files.readAllBytes(path);
+            assertEquals('b', bytes[(int) rows.get(1).offset()]);
+        }
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(directory.resolve(name), text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package es.fpfempa.acd.services;
+
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.dao.OrderDao;
+import es.fpfempa.acd.dao.UpdateConflictException;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Cambio de dirección de un pedido que otro usuario ha modificado entre la lectura y el guardado
+ */
+class OrderServiceTest {
+
+    private static BenchmarkDatabase db;
+    private static EntityManagerProvider emProvider;
+    private static OrderService orderService;
+
+    @BeforeAll
+    static void seed() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(20, 3, 2, 1));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+        orderService = new OrderService(emProvider, new RetryPolicy(3, Duration.ZERO, Duration.ZERO));
+    }
+
+    @AfterAll
+    static void close() {
+        db.close();
+    }
+
+    @Test
+    void changeRetriesWhenTheOtherUserChangedSomethingElse() {
+        Integer orderId = db.orderId(0);
+        Order order = orderService.getOrderDetails(orderId);
+        Address newAddress = otherAddress(order, addressId(order));
+
+        // otro usuario cambia el estado: sube la versión pero no toca la dirección
+        emProvider.runWithEntityManager(em -> {
+            em.getTransaction().begin();
+            em.find(Order.class, orderId).setStatus("PROCESSING");
+            em.getTransaction().commit();
+        });
+
+        orderService.changeShippingAddress(order, newAddress);
+
+        Order stored = orderService.getOrderDetails(orderId);
+        assertEquals(newAddress.getId(), addressId(stored));
+        assertEquals("PROCESSING", stored.getStatus());
+        assertEquals(stored.getVersion(), order.getVersion());
+        assertEquals(newAddress.getId(), addressId(order));
+    }
+
+    @Test
+    void changeDoesNotOverwriteAnotherAddressChange() {
+        Integer orderId = db.orderId(1);
+        Order order = orderService.getOrderDetails(orderId);
+        Integer readAddressId = addressId(order);
+        Long readVersion = order.getVersion();
+
+        // otro usuario cambia la dirección antes de que se guarde la nuestra
+        Order other = orderService.getOrderDetails(orderId);
+        Address otherAddress = otherAddress(other, readAddressId);
+        emProvider.runWithEntityManager(em -> {
+            other.setShippingAddress(otherAddress);
+            new OrderDao(em).update(other);
+        });
+        Address newAddress = otherAddress(order, otherAddress.getId());
+        assertNotEquals(readAddressId, newAddress.getId());
+
+        assertThrows(UpdateConflictException.class, () -> orderService.changeShippingAddress(order, newAddress));
+
+        assertEquals(otherAddress.getId(), addressId(orderService.getOrderDetails(orderId)));
+        assertEquals(readAddressId, addressId(order));
+        assertEquals(readVersion, order.getVersion());
+    }
+
+    // una dirección del mismo cliente distinta de la indicada
+    private static Address otherAddress(Order order, Integer excludedId) {
+        List<Address> addresses = orderService.getCustomerAddresses(order.getCustomer());
+        return addresses.stream()
+                .filter(a -> !a.getId().equals(excludedId))
+                .filter(a -> !a.getId().equals(addressId(order)))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static Integer addressId(Order order) {
+        return order.getShippingAddress() != null ? order.getShippingAddress().getId() : null;
+    }
+}
@@ -0,0 +1,116 @@
+package es.fpfempa.acd.services;
+
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.dao.DailyRevenue;
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Informes por día de ReportService: los días cerrados que están en la caché se juntan con los tramos
+ * que faltan, que se consultan a la BD. Para saber de dónde sale cada día, después del primer informe
+ * se añaden pedidos a todos los días: solo los que no estaban en la caché los reflejan.
+ */
+class ReportServiceTest {
+
+    private static BenchmarkDatabase db;
+    private static EntityManagerProvider emProvider;
+
+    @BeforeAll
+    static void seed() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(1, 1, 0, 0));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+    }
+
+    @AfterAll
+    static void close() {
+        db.close();
+    }
+
+    @Test
+    void cachedDaysAreMergedWithTheQueriedGaps() {
+        ReportDayCache cache = new ReportDayCache(100, Duration.ofHours(1));
+        ReportService reports = new ReportService(emProvider, cache, Clock.fixed(Instant.parse("2024-03-20T12:00:00Z"), ZoneOffset.UTC));
+        LocalDate from = LocalDate.of(2024, 3, 1);
+        LocalDate to = LocalDate.of(2024, 3, 10);
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            addOrder(day, "10.00");
+        }
+        assertEquals(9, revenueByDay(reports.revenueByDayAndCountry(from, to)).size());
+
+        // huecos al principio, en medio (dos días seguidos) y al final del rango
+        List<LocalDate> forgotten = List.of(from, from.plusDays(3), from.plusDays(4), to.minusDays(1));
+        forgotten.forEach(cache::invalidate);
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            addOrder(day, "5.00");
+        }
+
+        Map<LocalDate, BigDecimal> revenue = revenueByDay(reports.revenueByDayAndCountry(from, to));
+        assertEquals(from.datesUntil(to).toList(), List.copyOf(revenue.keySet()));
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            assertEquals(new BigDecimal(forgotten.contains(day) ? "15.00" : "10.00"), revenue.get(day), day.toString());
+        }
+    }
+
+    @Test
+    void emptyClosedDaysAreCachedButOpenDaysAreAlwaysQueried() {
+        ReportDayCache cache = new ReportDayCache(100, Duration.ofHours(1));
+        // pocos minutos después de medianoche: el día anterior aún no se da por cerrado
+        ReportService reports = new ReportService(emProvider, cache, Clock.fixed(Instant.parse("2024-05-03T00:05:00Z"), ZoneOffset.UTC));
+        LocalDate closed = LocalDate.of(2024, 5, 1);
+        LocalDate open = LocalDate.of(2024, 5, 2);
+        addOrder(open, "10.00");
+        assertEquals(Map.of(open, new BigDecimal("10.00")),
+                revenueByDay(reports.revenueByDayAndCountry(closed, open.plusDays(1))));
+
+        addOrder(closed, "7.00");
+        addOrder(open, "5.00");
+
+        Map<LocalDate, BigDecimal> revenue = revenueByDay(reports.revenueByDayAndCountry(closed, open.plusDays(1)));
+        // el día cerrado sigue vacío porque se guardó así; el abierto se vuelve a consultar
+        assertEquals(Map.of(open, new BigDecimal("15.00")), revenue);
+        assertEquals(1, cache.size());
+    }
+
+    private static void addOrder(LocalDate day, String amount) {
+        Integer customerId = db.customerId(0);
+        Integer addressId = db.addressIdsOf(customerId).get(0);
+        emProvider.runWithEntityManager(em -> {
+            em.getTransaction().begin();
+            Order order = new Order();
+            order.setCustomer(em.getReference(Customer.class, customerId));
+            order.setShippingAddress(em.getReference(Address.class, addressId));
+            order.setOrderDate(day.atTime(12, 0).toInstant(ZoneOffset.UTC));
+            order.setStatus("PAID");
+            order.setTotalAmount(new BigDecimal(amount));
+            em.persist(order);
+            em.getTransaction().commit();
+        });
+    }
+
+    // el cliente tiene una sola dirección: una fila por día
+    private static Map<LocalDate, BigDecimal> revenueByDay(List<DailyRevenue> rows) {
+        Map<LocalDate, BigDecimal> revenue = new LinkedHashMap<>();
+        for (DailyRevenue row : rows) {
+            assertNull(revenue.put(row.day(), row.revenue()), "día repetido: " + row.day());
+        }
+        return revenue;
+    }
+}
@@ -0,0 +1,199 @@
+package es.fpfempa.acd.services;
+
+import es.fpfempa.acd.bench.BenchmarkDatabase;
+import es.fpfempa.acd.dao.OrderLine;
+import es.fpfempa.acd.dao.OrderRequest;
+import es.fpfempa.acd.dao.OutOfStockException;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.entities.Product;
+import es.fpfempa.acd.persistence.EntityManagerProvider;
+import jakarta.persistence.Cache;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reserva de stock al crear pedidos (OrderService.placeOrder y GroupCommitOrderPlacer).
+ * Muchos hilos compran a la vez unos pocos productos con poco stock hasta agotarlos y al final se comprueba
+ * que no se ha vendido ninguna unidad de más: para cada producto, stock inicial - stock final = unidades en las líneas
+ * de los pedidos creados, y el stock nunca queda negativo. También que el total de cada pedido es la suma de sus líneas
+ * (precio * unidades - descuento) y que su pago, si lo tiene, es por ese total.
+ */
+class StockReservationTest {
+
+    private static final int THREADS = 8;
+    private static final int HOT_PRODUCTS = 3;
+    private static final int INITIAL_STOCK = 60;
+    // un hilo para cuando ha visto tantos pedidos seguidos sin stock
+    private static final int STOP_AFTER_OUT_OF_STOCK = 20;
+
+    private static BenchmarkDatabase db;
+    private static EntityManagerProvider emProvider;
+    private static OrderService orderService;
+
+    @BeforeAll
+    static void seed() {
+        db = new BenchmarkDatabase(BenchmarkDatabase.Dataset.of(200, 1, 1, 1));
+        emProvider = new EntityManagerProvider(db.getEntityManagerFactory());
+        orderService = new OrderService(emProvider);
+    }
+
+    @AfterAll
+    static void close() {
+        db.close();
+    }
+
+    @Test
+    void placeOrderRefreshesOnlyTheReservedProductsInTheCache() {
+        List<Integer> productIds = prepareProducts(0, 2, 10);
+        Integer sold = productIds.get(0);
+        Integer untouched = productIds.get(1);
+        Cache cache = db.getEntityManagerFactory().getCache();
+        productIds.forEach(id -> emProvider.runWithEntityManager(em -> em.find(Product.class, id)));
+        assertTrue(cache.contains(Product.class, sold));
+        assertTrue(cache.contains(Product.class, untouched));
+
+        orderService.placeOrder(db.customerId(0), null, List.of(new OrderLine(sold, 3)));
+
+        // el producto vendido se lee con su stock nuevo (de la caché o de la BD); el otro sigue en la caché
+        assertTrue(cache.contains(Product.class, untouched));
+        assertEquals(7, emProvider.withEntityManager(em -> em.find(Product.class, sold)).getStock());
+    }
+
+    @Test
+    void placeOrderNeverOversells() throws Exception {
+        List<Integer> productIds = prepareProducts(10, HOT_PRODUCTS, INITIAL_STOCK);
+        sellOutAndCheck(productIds, (random, lines) ->
+                orderService.placeOrder(db.customerId(random.nextInt(db.customerCount())), null, lines));
+    }
+
+    @Test
+    void groupCommitNeverOversells() throws Exception {
+        List<Integer> productIds = prepareProducts(20, HOT_PRODUCTS, INITIAL_STOCK);
+        try (GroupCommitOrderPlacer placer = new GroupCommitOrderPlacer(emProvider)) {
+            // con pago, envío y descuentos a veces
+            sellOutAndCheck(productIds, (random, lines) -> {
+                List<OrderLine> discounted = lines.stream()
+                        .map(line -> new OrderLine(line.productId(), line.quantity(),
+                                random.nextBoolean() ? new BigDecimal("0.50") : BigDecimal.ZERO))
+                        .toList();
+                int stage = random.nextInt(3);
+                return placer.placeOrder(new OrderRequest(db.customerId(random.nextInt(db.customerCount())), null, discounted,
+                        stage > 0 ? new OrderRequest.PaymentInfo("CARD", "COMPLETED") : null,
+                        stage > 1 ? new OrderRequest.ShipmentInfo("SEUR", "TRK" + random.nextInt(1_000_000)) : null));
+            });
+        }
+    }
+
+    // Compra desde THREADS hilos hasta agotar los productos y comprueba las cuentas
+    private static void sellOutAndCheck(List<Integer> productIds, PlaceOrder placeOrder) throws Exception {
+        Queue<Integer> orderIds = new ConcurrentLinkedQueue<>();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Map<Integer, AtomicLong> sold = new ConcurrentHashMap<>();
+        productIds.forEach(id -> sold.put(id, new AtomicLong()));
+        AtomicLong totalSold = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int outOfStockInARow = 0;
+                    // el segundo límite solo se alcanza si se vende más de lo que había: así el test falla en vez de no acabar
+                    while (outOfStockInARow < STOP_AFTER_OUT_OF_STOCK && totalSold.get() <= (long) INITIAL_STOCK * productIds.size()) {
+                        // varias líneas en cualquier orden, a veces repitiendo producto
+                        List<OrderLine> lines = new ArrayList<>();
+                        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                            lines.add(new OrderLine(productIds.get(random.nextInt(productIds.size())), 1 + random.nextInt(3)));
+                        }
+                        try {
+                            Order order = placeOrder.place(random, lines);
+                            lines.forEach(line -> {
+                                sold.get(line.productId()).addAndGet(line.quantity());
+                                totalSold.addAndGet(line.quantity());
+                            });
+                            orderIds.add(order.getId());
+                            outOfStockInARow = 0;
+                        } catch (OutOfStockException e) {
+                            outOfStockInARow++;
+                        } catch (RuntimeException e) {
+                            failures.add(e);
+                            return;
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(failures.isEmpty(), () -> "Pedidos que fallaron por algo que no es falta de stock: " + failures);
+        assertFalse(orderIds.isEmpty());
+
+        List<Integer> placed = List.copyOf(orderIds);
+        long badTotals = emProvider.withEntityManager(em -> em.createQuery(
+                        "SELECT COUNT(o) FROM Order o LEFT JOIN o.payment pay WHERE o.id IN :orderIds AND (o.totalAmount <> " +
+                        "(SELECT SUM(i.unitPrice * i.quantity - i.discount) FROM OrderItem i WHERE i.order = o) " +
+                        "OR pay.amount <> o.totalAmount)", Long.class)
+                .setParameter("orderIds", placed)
+                .getSingleResult());
+        assertEquals(0, badTotals, "pedidos con el total o el pago mal");
+        for (Integer productId : productIds) {
+            Object[] row = emProvider.withEntityManager(em -> em.createQuery(
+                            "SELECT p.stock, (SELECT COALESCE(SUM(i.quantity), 0) FROM OrderItem i " +
+                            "WHERE i.product.id = p.id AND i.order.id IN :orderIds) FROM Product p WHERE p.id = :id", Object[].class)
+                    .setParameter("orderIds", placed)
+                    .setParameter("id", productId)
+                    .getSingleResult());
+            int stock = ((Number) row[0]).intValue();
+            long inItems = ((Number) row[1]).longValue();
+            assertTrue(stock >= 0, "stock final del producto " + productId + ": " + stock);
+            assertEquals(INITIAL_STOCK - stock, inItems, "unidades en pedidos del producto " + productId);
+            assertEquals(sold.get(productId).get(), inItems, "unidades vendidas según los hilos del producto " + productId);
+        }
+    }
+
+    // crea un pedido con esas líneas (random es el del hilo que lo pide)
+    @FunctionalInterface
+    private interface PlaceOrder {
+        Order place(ThreadLocalRandom random, List<OrderLine> lines);
+    }
+
+    // count productos por orden de ID a partir de la posición first (cada test usa los suyos), activos y con el stock indicado
+    private static List<Integer> prepareProducts(int first, int count, int stock) {
+        List<Integer> productIds = emProvider.withEntityManager(em -> em.createQuery(
+                        "SELECT p.id FROM Product p ORDER BY p.id", Integer.class)
+                .setFirstResult(first)
+                .setMaxResults(count)
+                .getResultList());
+        assertEquals(count, productIds.size());
+        emProvider.runWithEntityManager(em -> {
+            em.getTransaction().begin();
+            em.createQuery("UPDATE Product p SET p.stock = :stock, p.active = true WHERE p.id IN :ids")
+                    .setParameter("stock", stock)
+                    .setParameter("ids", productIds)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        });
+        return productIds;
+    }
+}
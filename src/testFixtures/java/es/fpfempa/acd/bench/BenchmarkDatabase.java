@@ -0,0 +1,268 @@
+package es.fpfempa.acd.bench;
+
+import es.fpfempa.acd.entities.Address;
+import es.fpfempa.acd.entities.Category;
+import es.fpfempa.acd.entities.Customer;
+import es.fpfempa.acd.entities.Employee;
+import es.fpfempa.acd.entities.Order;
+import es.fpfempa.acd.entities.OrderItem;
+import es.fpfempa.acd.entities.Payment;
+import es.fpfempa.acd.entities.Product;
+import es.fpfempa.acd.entities.Shipment;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base de datos H2 en memoria (modo MySQL) con un juego de datos sembrado para los benchmarks.
+ * Usa la misma unidad de persistencia "acdPU" que la aplicación, sobrescribiendo solo la conexión.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    private static final String[] CITIES = {"Madrid", "Barcelona", "Valencia", "Sevilla", "Lyon", "Porto", "Berlin", "Roma"};
+    private static final String[] COUNTRIES = {"ES", "ES", "ES", "ES", "FR", "PT", "DE", "IT"};
+    private static final String[] ORDER_STATUSES = {"PENDING", "PAID", "SHIPPED", "DELIVERED", "CANCELLED"};
+    private static final String[] PAYMENT_METHODS = {"CARD", "PAYPAL", "TRANSFER"};
+    private static final String[] CARRIERS = {"SEUR", "MRW", "CORREOS", "DHL"};
+    private static final AtomicInteger DATABASE_SEQ = new AtomicInteger();
+
+    private final EntityManagerFactory emf;
+    private final List<Integer> customerIds = new ArrayList<>();
+    private final List<String> customerEmails = new ArrayList<>();
+    private final List<Integer> orderIds = new ArrayList<>();
+    // direcciones de cada cliente, para poder elegir una dirección válida al cambiar la de un pedido
+    private final Map<Integer, List<Integer>> addressIdsByCustomer = new HashMap<>();
+    private final Map<Integer, Integer> customerIdByOrder = new HashMap<>();
+
+    /**
+     * Crea una base de datos nueva y la siembra con el tamaño indicado
+     * @param dataset Tamaño del juego de datos
+     */
+    public BenchmarkDatabase(Dataset dataset) {
+        this(dataset, Map.of());
+    }
+
+    /**
+     * Igual que BenchmarkDatabase(Dataset) cambiando además otras propiedades de la unidad de persistencia
+     * @param dataset Tamaño del juego de datos
+     * @param overrides Propiedades de Hibernate que se quieren distintas a las de persistence.xml
+     */
+    public BenchmarkDatabase(Dataset dataset, Map<String, Object> overrides) {
+        Map<String, Object> props = connectionProperties();
+        props.putAll(overrides);
+        this.emf = Persistence.createEntityManagerFactory("acdPU", props);
+        seed(dataset);
+    }
+
+    /**
+     * Propiedades que sustituyen a las de persistence.xml: H2 en memoria y esquema recreado.
+     * Cada instancia usa su propia base para que los benchmarks no se contaminen entre sí.
+     */
+    public static Map<String, Object> connectionProperties() {
+        int seq = DATABASE_SEQ.incrementAndGet();
+        Map<String, Object> props = new HashMap<>();
+        props.put("jakarta.persistence.jdbc.driver", "org.h2.Driver");
+        props.put("jakarta.persistence.jdbc.url", "jdbc:h2:mem:acd_bench_" + seq
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1"
+                + ";INIT=CREATE SCHEMA IF NOT EXISTS acd_shop_db");
+        props.put("jakarta.persistence.jdbc.user", "sa");
+        props.put("jakarta.persistence.jdbc.password", "");
+        // nombre de pool único para que no choquen los MBeans de dos bases abiertas a la vez
+        props.put("hibernate.hikari.poolName", "acdBench" + seq);
+        props.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        props.put("hibernate.hbm2ddl.auto", "create-drop");
+        return props;
+    }
+
+    private void seed(Dataset dataset) {
+        Random random = new Random(42);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+
+            List<Category> categories = new ArrayList<>();
+            for (int i = 0; i < dataset.categories(); i++) {
+                Category category = new Category();
+                category.setName("Categoría " + i);
+                em.persist(category);
+                categories.add(category);
+            }
+
+            List<Product> products = new ArrayList<>();
+            for (int i = 0; i < dataset.products(); i++) {
+                Product product = new Product();
+                product.setSku(String.format("SKU-%06d", i));
+                product.setName("Producto " + i);
+                product.setPrice(BigDecimal.valueOf(100 + random.nextInt(20000), 2));
+                product.setStock(random.nextInt(1000));
+                product.setActive(random.nextInt(10) != 0);
+                product.getCategories().add(categories.get(random.nextInt(categories.size())));
+                product.getCategories().add(categories.get(random.nextInt(categories.size())));
+                em.persist(product);
+                products.add(product);
+            }
+
+            List<Employee> employees = new ArrayList<>();
+            for (int i = 0; i < dataset.employees(); i++) {
+                Employee employee = new Employee();
+                employee.setName("Empleado " + i);
+                employee.setRole(i == 0 ? "MANAGER" : "AGENT");
+                em.persist(employee);
+                employees.add(employee);
+            }
+            em.flush();
+            em.clear();
+
+            Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+            for (int c = 0; c < dataset.customers(); c++) {
+                Customer customer = new Customer();
+                customer.setEmail("cliente" + c + "@example.com");
+                customer.setFullName("Cliente Número " + c);
+                customer.setCreatedAt(now.minus(random.nextInt(1000), ChronoUnit.DAYS));
+                em.persist(customer);
+
+                List<Address> addresses = new ArrayList<>();
+                for (int a = 0; a < dataset.addressesPerCustomer(); a++) {
+                    int cityIdx = random.nextInt(CITIES.length);
+                    Address address = new Address();
+                    address.setCustomer(customer);
+                    address.setLine1("Calle " + (1 + random.nextInt(300)) + ", " + (1 + random.nextInt(50)));
+                    address.setCity(CITIES[cityIdx]);
+                    address.setCountry(COUNTRIES[cityIdx]);
+                    address.setIsDefault(a == 0);
+                    em.persist(address);
+                    addresses.add(address);
+                }
+
+                List<Order> orders = new ArrayList<>();
+                for (int o = 0; o < dataset.ordersPerCustomer(); o++) {
+                    Order order = new Order();
+                    order.setCustomer(customer);
+                    order.setEmployee(em.getReference(Employee.class, employees.get(random.nextInt(employees.size())).getId()));
+                    order.setShippingAddress(addresses.isEmpty() ? null : addresses.get(random.nextInt(addresses.size())));
+                    order.setOrderDate(now.minus(random.nextInt(365 * 24), ChronoUnit.HOURS));
+                    order.setStatus(ORDER_STATUSES[random.nextInt(ORDER_STATUSES.length)]);
+
+                    BigDecimal total = BigDecimal.ZERO;
+                    List<OrderItem> items = new ArrayList<>();
+                    for (int i = 0; i < dataset.itemsPerOrder(); i++) {
+                        Product product = products.get(random.nextInt(products.size()));
+                        OrderItem item = new OrderItem();
+                        item.setOrder(order);
+                        item.setProduct(em.getReference(Product.class, product.getId()));
+                        item.setQuantity(1 + random.nextInt(5));
+                        item.setUnitPrice(product.getPrice());
+                        item.setDiscount(BigDecimal.ZERO.setScale(2, RoundingMode.UNNECESSARY));
+                        total = total.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+                        items.add(item);
+                    }
+                    order.setTotalAmount(total);
+                    em.persist(order);
+                    items.forEach(em::persist);
+
+                    if (!"PENDING".equals(order.getStatus()) && !"CANCELLED".equals(order.getStatus())) {
+                        Payment payment = new Payment();
+                        payment.setOrder(order);
+                        payment.setMethod(PAYMENT_METHODS[random.nextInt(PAYMENT_METHODS.length)]);
+                        payment.setAmount(total);
+                        payment.setPaidAt(order.getOrderDate().plus(1, ChronoUnit.HOURS));
+                        payment.setStatus("COMPLETED");
+                        em.persist(payment);
+                    }
+                    if ("SHIPPED".equals(order.getStatus()) || "DELIVERED".equals(order.getStatus())) {
+                        Shipment shipment = new Shipment();
+                        shipment.setOrder(order);
+                        shipment.setCarrier(CARRIERS[random.nextInt(CARRIERS.length)]);
+                        shipment.setTrackingNo("TRK" + (1_000_000 + random.nextInt(9_000_000)));
+                        shipment.setShippedAt(order.getOrderDate().plus(1, ChronoUnit.DAYS));
+                        shipment.setStatus(order.getStatus());
+                        em.persist(shipment);
+                    }
+                    orders.add(order);
+                }
+
+                // flush + clear periódico para que la siembra no acumule todo en el contexto de persistencia
+                if (c % 100 == 99) {
+                    em.flush();
+                    em.clear();
+                }
+
+                customerIds.add(customer.getId());
+                customerEmails.add(customer.getEmail());
+                addressIdsByCustomer.put(customer.getId(), addresses.stream().map(Address::getId).toList());
+                for (Order order : orders) {
+                    orderIds.add(order.getId());
+                    customerIdByOrder.put(order.getId(), customer.getId());
+                }
+            }
+            em.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    public int customerCount() {
+        return customerIds.size();
+    }
+
+    public int orderCount() {
+        return orderIds.size();
+    }
+
+    public Integer customerId(int index) {
+        return customerIds.get(index);
+    }
+
+    public String customerEmail(int index) {
+        return customerEmails.get(index);
+    }
+
+    public Integer orderId(int index) {
+        return orderIds.get(index);
+    }
+
+    public Integer customerIdOfOrder(Integer orderId) {
+        return customerIdByOrder.get(orderId);
+    }
+
+    public List<Integer> addressIdsOf(Integer customerId) {
+        return addressIdsByCustomer.getOrDefault(customerId, List.of());
+    }
+
+    @Override
+    public void close() {
+        emf.close();
+    }
+
+    /**
+     * Tamaño del juego de datos sembrado
+     */
+    public record Dataset(int customers, int addressesPerCustomer, int ordersPerCustomer, int itemsPerOrder,
+                          int products, int categories, int employees) {
+
+        public static Dataset of(int customers, int addressesPerCustomer, int ordersPerCustomer, int itemsPerOrder) {
+            return new Dataset(customers, addressesPerCustomer, ordersPerCustomer, itemsPerOrder,
+                    Math.max(50, customers / 10), 20, 10);
+        }
+    }
+}